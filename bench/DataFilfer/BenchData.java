@@ -0,0 +1,99 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+
+/**
+ * Inputs shared by the benchmarks, all produced by {@link HouseDataGenerator} with a fixed seed
+ * so runs are comparable between commits. The template is {@code train.csv} in the working
+ * directory unless {@code -Dbench.template=...} says otherwise.
+ *
+ * @author antonio
+ */
+public final class BenchData {
+
+    public static final long SEED = 42L;
+    public static final double DUPLICATES = 0.01;
+
+    private BenchData() {
+    }
+
+    public static Path template() {
+        return new Path(System.getProperty("bench.template", "train.csv"));
+    }
+
+    public static HouseDataGenerator generator() throws IOException {
+        return new HouseDataGenerator(HouseDataGenerator.readTemplates(new Configuration(), template()), SEED, DUPLICATES);
+    }
+
+    /**
+     * The job's own configuration, from its {@code createJob}. A {@code .fingerprint} suffix on
+     * the name turns on {@link FingerprintDedup#MODE}, {@code .binary} reads or writes the binary
+     * record format.
+     */
+    public static Job createJob(String name, Configuration conf, String... paths) throws IOException {
+        int dot = name.indexOf('.');
+        String job = dot < 0 ? name : name.substring(0, dot);
+        String variant = dot < 0 ? "" : name.substring(dot + 1);
+        if (variant.equals("fingerprint")) {
+            conf.setBoolean(FingerprintDedup.MODE, true);
+        } else if (variant.equals("binary")) {
+            conf.set(CleaningPipeline.OUTPUT, "binary");
+            conf.set(Linear.INPUT, "binary");
+            conf.set(DataQuality.INPUT, "binary");
+        }
+        try {
+            return (Job) Class.forName(BenchData.class.getPackage().getName() + "." + job)
+                    .getMethod("createJob", Configuration.class, String[].class).invoke(null, conf, paths);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException("No job " + name, e);
+        }
+    }
+
+    /** The first {@code rows} generated raw rows. */
+    public static Text[] rawRows(int rows) throws IOException {
+        HouseDataGenerator generator = generator();
+        Text[] lines = new Text[rows];
+        StringBuilder line = new StringBuilder(256);
+        for (int i = 0; i < rows; i++) {
+            line.setLength(0);
+            generator.row(i, line);
+            lines[i] = new Text(line.toString());
+        }
+        return lines;
+    }
+
+    /** Raw rows in the numeric layout {@link Linear} reads ({@link HouseRecordWritable#toVector}). */
+    public static Text[] numericRows(Text[] raw) {
+        CsvTokenizer tokens = new CsvTokenizer();
+        HouseRecordWritable record = new HouseRecordWritable();
+        double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        Text[] rows = new Text[raw.length];
+        int n = 0;
+        for (Text line : raw) {
+            try {
+                record.setRaw(tokens.reset(line)).toVector(vector);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                continue;
+            }
+            StringBuilder row = new StringBuilder();
+            for (int i = 0; i < vector.length; i++) {
+                row.append(i > 0 ? "," : "").append(vector[i]);
+            }
+            rows[n++] = new Text(row.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+        return Arrays.copyOf(rows, n);
+    }
+}
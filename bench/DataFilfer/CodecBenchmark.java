@@ -0,0 +1,113 @@
+package DataFilfer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Runs one job once per codec through the local job runner, with the input compressed and
+ * {@code compression.codec} set to that codec, and prints a table of what each codec costs
+ * and saves:
+ * <ul>
+ * <li>input: bytes of the compressed input and the number of map tasks it was split into,</li>
+ * <li>shuffled: map output bytes as materialized for the shuffle, after compression,</li>
+ * <li>written: bytes of the job output,</li>
+ * <li>compress / job: wall time to compress the input and to run the job.</li>
+ * </ul>
+ * Codecs that cannot run here (no native library) are reported and skipped; a codec marked
+ * {@code *} could only compress the output, and its map output used {@code default}. Text jobs only;
+ * the job is {@code -D bench.job=CleaningPipeline} unless set.
+ *
+ * @author antonio
+ */
+public class CodecBenchmark {
+
+    public static final String JOB = "bench.job";
+
+    private static long bytes(FileSystem fs, Path dir) throws Exception {
+        long total = 0;
+        for (FileStatus status : fs.listStatus(dir)) {
+            String name = status.getPath().getName();
+            if (!name.startsWith("_") && !name.startsWith(".")) {
+                total += status.isDirectory() ? bytes(fs, status.getPath()) : status.getLen();
+            }
+        }
+        return total;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: codecs [-D bench.job=<job>] <input.csv> <work> [<codec>...]");
+            System.exit(2);
+        }
+        conf.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, 50);
+        FileSystem fs = FileSystem.getLocal(conf);
+        Path input = new Path(otherArgs[0]);
+        Path work = new Path(otherArgs[1]);
+        String[] codecs = otherArgs.length > 2
+                ? Arrays.copyOfRange(otherArgs, 2, otherArgs.length)
+                : new String[] {Compression.NONE, "default", "gzip", "bzip2", "lz4", "snappy", "zstd"};
+        String job = conf.get(JOB, "CleaningPipeline");
+
+        System.out.printf("%-10s %14s %6s %14s %14s %12s %10s%n",
+                "codec", "input", "maps", "shuffled", "written", "compress ms", "job ms");
+        for (String name : codecs) {
+            Path dir = new Path(work, name);
+            fs.delete(dir, true);
+            Path compressed = new Path(dir, "input");
+            long started = System.nanoTime();
+            if (name.equals(Compression.NONE)) {
+                compressed = input;
+            } else {
+                CompressionCodec codec;
+                try {
+                    codec = Compression.codec(conf, name);
+                } catch (IllegalArgumentException e) {
+                    System.out.printf("%-10s unavailable: %s%n", name, e.getMessage());
+                    continue;
+                }
+                Path file = new Path(compressed, input.getName() + codec.getDefaultExtension());
+                InputStream in = fs.open(input);
+                OutputStream out = codec.createOutputStream(fs.create(file));
+                IOUtils.copyBytes(in, out, 1 << 16, true);
+            }
+            long compressing = System.nanoTime() - started;
+
+            Configuration jobConf = new Configuration(conf);
+            jobConf.set(Compression.CODEC, name);
+            String label = name;
+            Job run;
+            try {
+                run = BenchData.createJob(job, jobConf, compressed.toString(), new Path(dir, "output").toString());
+            } catch (IllegalArgumentException e) {
+                // e.g. gzip without native zlib: the output can be gzip, the map output cannot
+                jobConf.set(Compression.MAP_CODEC, "default");
+                label = name + "*";
+                run = BenchData.createJob(job, jobConf, compressed.toString(), new Path(dir, "output").toString());
+            }
+            int maps = ReflectionUtils.newInstance(run.getInputFormatClass(), jobConf).getSplits(run).size();
+            started = System.nanoTime();
+            if (!run.waitForCompletion(false)) {
+                System.out.printf("%-10s job failed%n", label);
+                continue;
+            }
+            long running = System.nanoTime() - started;
+            System.out.printf("%-10s %14d %6d %14d %14d %12d %10d%n", label, bytes(fs, compressed), maps,
+                    run.getCounters().findCounter(TaskCounter.MAP_OUTPUT_MATERIALIZED_BYTES).getValue(),
+                    bytes(fs, new Path(dir, "output")), compressing / 1000000, running / 1000000);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package DataFilfer;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.DoubleBuffer;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Fits {@code linear.target} on {@code linear.features} over a {@link ColumnStore} and prints,
+ * per way of fitting, the best and mean wall time of the repeats, rows per second and the
+ * collections and collection time the fits caused:
+ * <ul>
+ * <li>gram / qr: {@link ColumnStore#gram} and {@link ColumnStore#qr} on {@code columns.threads},</li>
+ * <li>heap: the rows copied into one {@code double[]} per row on the heap first, then added to
+ * {@link NormalEquations} row by row, which is how a fit over an in-memory dataset looked
+ * before; the copy is timed separately, and a store larger than the heap is reported as such.</li>
+ * </ul>
+ *
+ * @author antonio
+ */
+public class FitBenchmark {
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long collectionMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static void print(String name, long rows, long[] nanos, long gcs, long gcMillis, double rSquared) {
+        long best = Long.MAX_VALUE;
+        long total = 0;
+        for (long n : nanos) {
+            best = Math.min(best, n);
+            total += n;
+        }
+        System.out.printf("%-6s %10.1f %10.1f %12.0f %6d %8d   %.10f%n", name, best / 1e6, total / 1e6 / nanos.length,
+                rows / (best / 1e9), gcs, gcMillis, rSquared);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 1 || otherArgs.length > 2) {
+            System.err.println("Usage: fit [-D columns.threads=<n>] <store> [<repeats>]");
+            System.exit(2);
+        }
+        ColumnStore store = ColumnStore.open(conf, new Path(otherArgs[0]));
+        int repeats = otherArgs.length > 1 ? Integer.parseInt(otherArgs[1]) : 5;
+        int[] features = Linear.featureColumns(conf);
+        int target = conf.getInt(Linear.TARGET, 9);
+        int threads = conf.getInt(ColumnStore.THREADS, Runtime.getRuntime().availableProcessors());
+        long rows = store.getRows();
+        System.out.printf("%d rows, %d MB of columns, %d MB max heap, %d threads%n", rows,
+                rows * store.getColumns() * 8 >> 20, Runtime.getRuntime().maxMemory() >> 20, threads);
+        System.out.printf("%-6s %10s %10s %12s %6s %8s   %s%n", "fit", "best ms", "mean ms", "rows/s", "gcs", "gc ms", "R^2");
+
+        // warm up both
+        store.gram(features, target, threads);
+        store.qr(features, target, threads);
+
+        long[] nanos = new long[repeats];
+        long gcs = collections();
+        long gcMillis = collectionMillis();
+        NormalEquations sums = null;
+        for (int r = 0; r < repeats; r++) {
+            long started = System.nanoTime();
+            sums = store.gram(features, target, threads);
+            nanos[r] = System.nanoTime() - started;
+        }
+        print("gram", rows, nanos, collections() - gcs, collectionMillis() - gcMillis, sums.rSquared(sums.solve()));
+
+        gcs = collections();
+        gcMillis = collectionMillis();
+        QrFactor factor = null;
+        for (int r = 0; r < repeats; r++) {
+            long started = System.nanoTime();
+            factor = store.qr(features, target, threads);
+            nanos[r] = System.nanoTime() - started;
+        }
+        print("qr", rows, nanos, collections() - gcs, collectionMillis() - gcMillis, factor.rSquared(factor.solve()));
+
+        gcs = collections();
+        gcMillis = collectionMillis();
+        long started = System.nanoTime();
+        double[][] heap;
+        try {
+            heap = new double[(int) rows][];
+            int row = 0;
+            for (int g = 0; g < store.getGroupCount(); g++) {
+                DoubleBuffer[] columns = new DoubleBuffer[store.getColumns()];
+                for (int c = 0; c < columns.length; c++) {
+                    columns[c] = store.column(g, c);
+                }
+                while (columns[0].hasRemaining()) {
+                    double[] values = new double[columns.length];
+                    for (int c = 0; c < columns.length; c++) {
+                        values[c] = columns[c].get();
+                    }
+                    heap[row++] = values;
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            System.out.printf("heap   does not fit: %s%n", e.getMessage());
+            return;
+        }
+        System.out.printf("heap   copy %.1f ms, %d gcs, %d gc ms%n", (System.nanoTime() - started) / 1e6,
+                collections() - gcs, collectionMillis() - gcMillis);
+        gcs = collections();
+        gcMillis = collectionMillis();
+        double[] x = new double[features.length];
+        for (int r = 0; r < repeats; r++) {
+            started = System.nanoTime();
+            sums = new NormalEquations(features.length);
+            for (double[] values : heap) {
+                for (int f = 0; f < features.length; f++) {
+                    x[f] = values[features[f]];
+                }
+                sums.add(x, values[target]);
+            }
+            nanos[r] = System.nanoTime() - started;
+        }
+        print("heap", rows, nanos, collections() - gcs, collectionMillis() - gcMillis, sums.rSquared(sums.solve()));
+    }
+}
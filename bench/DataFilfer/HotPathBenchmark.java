@@ -0,0 +1,131 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time per row of the steps the mappers are made of, without the task around them: splitting
+ * the line, parsing the numeric fields, FeatureRemover's unit conversion, the duplicate keys
+ * and Linear's accumulation of one row into the normal equations.
+ *
+ * @author antonio
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(HotPathBenchmark.ROWS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HotPathBenchmark {
+
+    static final int ROWS = 4096;
+
+    private static final int[] NUMERIC = {1, 2, 3, 5, 6, 7, 9, 10, 11};
+
+    private Text[] rows;
+    private double[][] vectors;
+    private final CsvTokenizer tokens = new CsvTokenizer();
+    private final Text out = new Text();
+    private final ProjectionPlan plan = ProjectionPlan.compile(new Configuration(false));
+    private final RecordFingerprint fingerprint = new RecordFingerprint();
+    private final HouseRecordWritable record = new HouseRecordWritable();
+    private final double[] x = new double[HouseRecordWritable.VECTOR_SIZE - 1];
+    private final NormalEquations sums = new NormalEquations(HouseRecordWritable.VECTOR_SIZE - 1);
+
+    @Setup
+    public void setup() throws IOException {
+        rows = BenchData.rawRows(ROWS);
+        vectors = new double[ROWS][HouseRecordWritable.VECTOR_SIZE];
+        for (int i = 0; i < ROWS; i++) {
+            try {
+                record.setRaw(tokens.reset(rows[i])).toVector(vectors[i]);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                vectors[i] = vectors[0];
+            }
+        }
+    }
+
+    @Benchmark
+    public int tokenize() {
+        int fields = 0;
+        for (Text row : rows) {
+            fields += tokens.reset(row).size();
+        }
+        return fields;
+    }
+
+    @Benchmark
+    public double parseNumeric() {
+        double sum = 0;
+        for (Text row : rows) {
+            tokens.reset(row);
+            for (int field : NUMERIC) {
+                sum += tokens.parseDouble(field);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int featureRemover() {
+        int bytes = 0;
+        for (Text row : rows) {
+            plan.project(tokens.reset(row), out);
+            bytes += out.getLength();
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public int checkerKey() {
+        int hash = 0;
+        for (Text row : rows) {
+            tokens.reset(row);
+            out.set(tokens.bytes(), 0, tokens.end(11));
+            hash += out.hashCode();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public long fingerprintKey() {
+        long hash = 0;
+        for (Text row : rows) {
+            tokens.reset(row);
+            hash += fingerprint.set(tokens.bytes(), 0, tokens.end(11)).getLow();
+        }
+        return hash;
+    }
+
+    @Benchmark
+    public void parseRecord(Blackhole sink) {
+        for (Text row : rows) {
+            sink.consume(record.setRaw(tokens.reset(row)));
+        }
+    }
+
+    @Benchmark
+    public long accumulate() {
+        for (double[] vector : vectors) {
+            System.arraycopy(vector, 0, x, 0, x.length);
+            sums.add(x, vector[x.length]);
+        }
+        return sums.getN();
+    }
+}
@@ -0,0 +1,274 @@
+package DataFilfer;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Writes synthetic train.csv-shaped data of any size. Every row starts from a random row of a
+ * template file (train.csv), so the categorical columns, the address and the joint distribution
+ * keep their shape; SQUARE_FT and the price get multiplicative noise and the coordinates a
+ * small jitter, so the rows are distinct. With probability {@code generator.duplicates} a row
+ * is instead an exact copy of an earlier row.
+ * <p>
+ * Row {@code i} depends only on the seed and {@code i}, so the output is the same whatever the
+ * number of parts, and the parts are written in parallel.
+ *
+ * @author antonio
+ */
+public class HouseDataGenerator {
+
+    public static final String ROWS = "generator.rows";
+    /** Fraction of rows that repeat an earlier row. */
+    public static final String DUPLICATES = "generator.duplicates";
+    public static final String SEED = "generator.seed";
+    /** Number of part files, written in parallel. */
+    public static final String PARTS = "generator.parts";
+    /** Write the train.csv header at the top of the first part. */
+    public static final String HEADER = "generator.header";
+
+    private static final String TRAIN_HEADER = "POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,"
+            + "RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)";
+    private static final long GOLDEN = 0x9e3779b97f4a7c15L;
+
+    private final Template[] templates;
+    private final long seed;
+    private final double duplicates;
+
+    public HouseDataGenerator(List<String> templateRows, long seed, double duplicates) {
+        this.templates = new Template[templateRows.size()];
+        for (int i = 0; i < templates.length; i++) {
+            templates[i] = new Template(templateRows.get(i));
+        }
+        this.seed = seed;
+        this.duplicates = duplicates;
+    }
+
+    /** Reads the data rows of a train.csv-like file, skipping its header. */
+    public static List<String> readTemplates(Configuration conf, Path path) throws IOException {
+        List<String> rows = new ArrayList<String>();
+        FileSystem fs = path.getFileSystem(conf);
+        BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(path), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!line.startsWith("POSTED_BY")) {
+                    rows.add(line);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return rows;
+    }
+
+    /** One parsed template row; rows that do not parse are repeated verbatim. */
+    static class Template {
+        final String raw;
+        final String head;
+        final String middle;
+        final double squareFeet;
+        final double longitude;
+        final double latitude;
+        final double price;
+        final boolean parsed;
+
+        Template(String raw) {
+            this.raw = raw;
+            CsvTokenizer tokens = new CsvTokenizer().reset(new Text(raw));
+            String head = null;
+            String middle = null;
+            double squareFeet = 0;
+            double longitude = 0;
+            double latitude = 0;
+            double price = 0;
+            boolean parsed = false;
+            try {
+                // POSTED_BY..BHK_OR_RK, then READY_TO_MOVE,RESALE,ADDRESS
+                head = raw.substring(0, tokens.end(4) + 1);
+                middle = raw.substring(tokens.start(6), tokens.end(8) + 1);
+                squareFeet = tokens.parseDouble(5);
+                longitude = tokens.parseDouble(9);
+                latitude = tokens.parseDouble(10);
+                price = tokens.parseDouble(11);
+                parsed = tokens.size() == 12;
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                parsed = false;
+            }
+            this.head = head;
+            this.middle = middle;
+            this.squareFeet = squareFeet;
+            this.longitude = longitude;
+            this.latitude = latitude;
+            this.price = price;
+            this.parsed = parsed;
+        }
+    }
+
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /** SplitMix64 stream of one row. */
+    private static final class Stream {
+        private long state;
+
+        Stream(long seed, long row, long salt) {
+            state = mix(seed ^ mix(row * GOLDEN + salt));
+        }
+
+        long nextLong() {
+            return mix(state += GOLDEN);
+        }
+
+        double nextDouble() {
+            return (nextLong() >>> 11) * 0x1.0p-53;
+        }
+
+        double nextGaussian() {
+            double u = 1.0 - nextDouble();
+            return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * nextDouble());
+        }
+    }
+
+    /** Appends row {@code i} (no line terminator). */
+    public void row(long i, StringBuilder out) {
+        base(origin(i), out);
+    }
+
+    /**
+     * The row whose {@link #base} row {@code i} is: itself, or for a duplicate, the row the
+     * earlier row it copies was written from, following copies of copies back to a row that
+     * was not one.
+     */
+    private long origin(long i) {
+        while (i > 0) {
+            Stream choice = new Stream(seed, i, 1);
+            if (choice.nextDouble() >= duplicates) {
+                break;
+            }
+            i = (long) (choice.nextDouble() * i);
+        }
+        return i;
+    }
+
+    private void base(long i, StringBuilder out) {
+        Stream random = new Stream(seed, i, 2);
+        Template t = templates[(int) Long.remainderUnsigned(random.nextLong(), templates.length)];
+        if (!t.parsed) {
+            out.append(t.raw);
+            return;
+        }
+        out.append(t.head);
+        appendFixed(out, t.squareFeet * Math.exp(0.1 * random.nextGaussian()), 6);
+        out.append(',').append(t.middle);
+        appendFixed(out, t.longitude + 0.001 * random.nextGaussian(), 6);
+        out.append(',');
+        appendFixed(out, t.latitude + 0.001 * random.nextGaussian(), 6);
+        out.append(',');
+        appendFixed(out, t.price * Math.exp(0.1 * random.nextGaussian()), 3);
+    }
+
+    /** Fixed-point with up to {@code decimals} digits, trailing zeros dropped but one kept, as in train.csv. */
+    static void appendFixed(StringBuilder out, double value, int decimals) {
+        long scale = 1;
+        for (int d = 0; d < decimals; d++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(Math.abs(value) * scale);
+        if (value < 0 && scaled != 0) {
+            out.append('-');
+        }
+        out.append(scaled / scale).append('.');
+        long fraction = scaled % scale;
+        int digits = decimals;
+        while (digits > 1 && fraction % 10 == 0) {
+            fraction /= 10;
+            digits--;
+        }
+        String f = Long.toString(fraction);
+        for (int pad = f.length(); pad < digits; pad++) {
+            out.append('0');
+        }
+        out.append(f);
+    }
+
+    /** Writes rows {@code [from, to)} to {@code out}, one per line. */
+    public void write(long from, long to, boolean header, OutputStream out) throws IOException {
+        StringBuilder line = new StringBuilder(256);
+        if (header) {
+            out.write(TRAIN_HEADER.getBytes(StandardCharsets.UTF_8));
+            out.write('\n');
+        }
+        for (long i = from; i < to; i++) {
+            line.setLength(0);
+            row(i, line);
+            line.append('\n');
+            out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /** Generates the configured rows from {@code template} into part files under {@code output}. */
+    public static void generate(Configuration conf, Path template, final Path output) throws Exception {
+        final long rows = conf.getLong(ROWS, 10000000L);
+        final int parts = conf.getInt(PARTS, Runtime.getRuntime().availableProcessors());
+        final boolean header = conf.getBoolean(HEADER, false);
+        final HouseDataGenerator generator = new HouseDataGenerator(readTemplates(conf, template),
+                conf.getLong(SEED, 42L), conf.getDouble(DUPLICATES, 0.01));
+        final FileSystem fs = output.getFileSystem(conf);
+        if (!fs.mkdirs(output)) {
+            throw new IOException("Cannot create " + output);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parts, Runtime.getRuntime().availableProcessors()));
+        try {
+            List<Future<?>> written = new ArrayList<Future<?>>();
+            for (int p = 0; p < parts; p++) {
+                final int part = p;
+                written.add(pool.submit(new Callable<Void>() {
+                    public Void call() throws IOException {
+                        OutputStream out = new BufferedOutputStream(
+                                fs.create(new Path(output, String.format("part-%05d.csv", part))), 1 << 20);
+                        try {
+                            generator.write(rows * part / parts, rows * (part + 1) / parts, header && part == 0, out);
+                        } finally {
+                            out.close();
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> f : written) {
+                f.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length != 2) {
+            System.err.println("Usage: generator [-D generator.rows=N] [-D generator.duplicates=F] [-D generator.seed=S] <train.csv> <out>");
+            System.exit(2);
+        }
+        generate(conf, new Path(otherArgs[0]), new Path(otherArgs[1]));
+    }
+}
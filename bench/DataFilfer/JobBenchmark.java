@@ -0,0 +1,111 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Job;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Wall time of whole jobs on generated input, through Hadoop's local job runner or through
+ * {@link LocalEngine}. Each trial generates {@code rows} rows into a temporary directory; the
+ * jobs that read the binary format ({@code .binary}) get the binary pipeline output of those
+ * rows, made once per trial.
+ *
+ * @author antonio
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JobBenchmark {
+
+    @Param({"CleaningPipeline", "CleaningPipeline.binary", "DublicateChecker", "DublicateChecker.fingerprint",
+            "DublicateRemover", "DublicateRemover.fingerprint", "DublicateCounter", "EmptyFeatues", "FeatureRemover",
+            "NumberOfReplicatedLines", "DataQuality", "DataQuality.binary", "Linear.binary"})
+    public String job;
+
+    @Param({"hadoop", "engine"})
+    public String runner;
+
+    @Param({"1000000"})
+    public long rows;
+
+    private Configuration conf;
+    private FileSystem fs;
+    private Path work;
+    private Path input;
+    private Path output;
+
+    @Setup(Level.Trial)
+    public void generate() throws Exception {
+        conf = new Configuration();
+        conf.set("mapreduce.framework.name", "local");
+        // the default 5 s completion poll would dominate every local run
+        conf.setInt(Job.COMPLETION_POLL_INTERVAL_KEY, 50);
+        fs = FileSystem.getLocal(conf);
+        work = new Path(Files.createTempDirectory("job-bench").toUri());
+        input = new Path(work, "input");
+        output = new Path(work, "output");
+        Configuration generator = new Configuration(conf);
+        generator.setLong(HouseDataGenerator.ROWS, rows);
+        generator.setLong(HouseDataGenerator.SEED, BenchData.SEED);
+        generator.setDouble(HouseDataGenerator.DUPLICATES, BenchData.DUPLICATES);
+        HouseDataGenerator.generate(generator, BenchData.template(), input);
+        if (job.endsWith(".binary") && !job.startsWith("CleaningPipeline")) {
+            Path binary = new Path(work, "binary");
+            if (!run(BenchData.createJob("CleaningPipeline.binary", new Configuration(conf), input.toString(), binary.toString()))) {
+                throw new IOException("Cannot make the binary input");
+            }
+            input = binary;
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clean() throws IOException {
+        fs.delete(output, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        fs.delete(work, true);
+    }
+
+    private boolean run(Job job) throws Exception {
+        if (runner.equals("engine")) {
+            LocalEngine engine = new LocalEngine(Runtime.getRuntime().availableProcessors());
+            try {
+                return engine.run(job);
+            } finally {
+                engine.close();
+            }
+        }
+        return job.waitForCompletion(false);
+    }
+
+    @Benchmark
+    public boolean run() throws Exception {
+        if (!run(BenchData.createJob(job, new Configuration(conf), input.toString(), output.toString()))) {
+            throw new IOException(job + " failed");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,65 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time per input row of each job's mapper, setup and cleanup included, with the job's own
+ * configuration and the map output thrown away. The rows are {@link BenchData#rawRows}, about
+ * 1% of them duplicates; {@code Linear} gets the same rows in its numeric layout.
+ *
+ * @author antonio
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(MapperBenchmark.ROWS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapperBenchmark {
+
+    static final int ROWS = 20000;
+
+    @Param({"CleaningPipeline", "DublicateChecker", "DublicateChecker.fingerprint", "DublicateRemover",
+            "DublicateRemover.fingerprint", "EmptyFeatues", "FeatureRemover", "DataQuality", "Linear"})
+    public String job;
+
+    private MapperHarness harness;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        Text[] rows = BenchData.rawRows(ROWS);
+        if (job.startsWith("Linear")) {
+            rows = BenchData.numericRows(rows);
+        }
+        Job configured = BenchData.createJob(job, new Configuration(), "in", "out");
+        try {
+            harness = new MapperHarness(configured.getConfiguration(), configured.getMapperClass(), rows);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Benchmark
+    public long map() throws IOException, InterruptedException {
+        return harness.run();
+    }
+}
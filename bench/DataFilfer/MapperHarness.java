@@ -0,0 +1,109 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Runs a mapper over an in-memory batch of lines the way a map task does (setup, map per line,
+ * cleanup) and throws its output away, so a benchmark measures the mapper and nothing else.
+ * Side outputs such as the pipeline's {@code empty-m-*} go to a temporary directory, which is
+ * emptied before each run.
+ *
+ * @author antonio
+ */
+public class MapperHarness {
+
+    private final Configuration conf;
+    private final Class<? extends Mapper<?, ?, ?, ?>> mapperClass;
+    private final Text[] lines;
+    private final TaskAttemptID attempt = new TaskAttemptID("bench", 1, TaskType.MAP, 0, 0);
+    private final FileSystem fs;
+    private final Path output;
+    private long written;
+
+    public MapperHarness(Configuration conf, Class<? extends Mapper<?, ?, ?, ?>> mapperClass, Text[] lines) throws IOException {
+        this.conf = new Configuration(conf);
+        this.fs = FileSystem.getLocal(this.conf);
+        this.output = new Path(Files.createTempDirectory("mapper-harness").toUri());
+        fs.deleteOnExit(output);
+        this.conf.set(FileOutputFormat.OUTDIR, output.toString());
+        this.mapperClass = mapperClass;
+        this.lines = lines;
+    }
+
+    /** Maps every line once; returns the number of records written so far. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public long run() throws IOException, InterruptedException {
+        fs.delete(new Path(output, FileOutputCommitter.PENDING_DIR_NAME), true);
+        Mapper mapper = ReflectionUtils.newInstance(mapperClass, conf);
+        MapContextImpl context = new MapContextImpl(conf, attempt, new LinesReader(lines), new DiscardingWriter(),
+                null, new LocalEngine.TaskReporter(), null);
+        mapper.run(new WrappedMapper().getMapContext(context));
+        return written;
+    }
+
+    static class LinesReader extends RecordReader<LongWritable, Text> {
+        private final Text[] lines;
+        private final LongWritable key = new LongWritable();
+        private int next;
+        private long offset;
+
+        LinesReader(Text[] lines) {
+            this.lines = lines;
+        }
+
+        public void initialize(InputSplit split, TaskAttemptContext context) {
+        }
+
+        public boolean nextKeyValue() {
+            if (next == lines.length) {
+                return false;
+            }
+            key.set(offset);
+            offset += lines[next++].getLength() + 1;
+            return true;
+        }
+
+        public LongWritable getCurrentKey() {
+            return key;
+        }
+
+        public Text getCurrentValue() {
+            return lines[next - 1];
+        }
+
+        public float getProgress() {
+            return next / (float) lines.length;
+        }
+
+        public void close() {
+        }
+    }
+
+    class DiscardingWriter extends RecordWriter<Object, Object> {
+        public void write(Object key, Object value) {
+            written++;
+        }
+
+        public void close(TaskAttemptContext context) {
+        }
+    }
+}
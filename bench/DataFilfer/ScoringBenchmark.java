@@ -0,0 +1,100 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Latency of one {@link LinearScorer} batch, sampled so JMH reports p50/p99/p99.9 per batch:
+ * {@code columns} scores features already in the batch, {@code records} also copies them out
+ * of parsed records, and {@code rows} parses raw rows first, i.e. the whole in-process path.
+ * The model is fitted on the generated rows themselves.
+ *
+ * @author antonio
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScoringBenchmark {
+
+    @Param({"1024", "65536"})
+    public int batch;
+
+    private final CsvTokenizer tokens = new CsvTokenizer();
+    private Text[] rows;
+    private HouseRecordWritable[] records;
+    private LinearScorer.Batch columns;
+    private LinearScorer.Batch scratch;
+    private double[] out;
+
+    @Setup
+    public void setup() throws IOException {
+        rows = BenchData.rawRows(batch);
+        records = new HouseRecordWritable[batch];
+        NormalEquations sums = new NormalEquations(9);
+        double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        double[] x = new double[9];
+        int[] features = {0, 1, 2, 3, 4, 5, 6, 7, 8};
+        for (int i = 0; i < batch; i++) {
+            records[i] = new HouseRecordWritable();
+            try {
+                records[i].setRaw(tokens.reset(rows[i])).toVector(vector);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                records[i] = records[0];
+                rows[i] = rows[0];
+                continue;
+            }
+            System.arraycopy(vector, 0, x, 0, x.length);
+            sums.add(x, vector[9]);
+        }
+        LinearScorer scorer = new LinearScorer(new LinearModel(features, 9, sums.solve(), sums.getN(), 0));
+        columns = new LinearScorer.Batch(scorer, batch);
+        for (HouseRecordWritable record : records) {
+            columns.add(record);
+        }
+        scratch = new LinearScorer.Batch(scorer, batch);
+        out = new double[batch];
+    }
+
+    @Benchmark
+    public double[] columns() {
+        columns.score(out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] records() {
+        scratch.clear();
+        for (HouseRecordWritable record : records) {
+            scratch.add(record);
+        }
+        scratch.score(out);
+        return out;
+    }
+
+    @Benchmark
+    public double[] rows() {
+        scratch.clear();
+        HouseRecordWritable record = records[0];
+        for (Text row : rows) {
+            scratch.add(record.setRaw(tokens.reset(row)));
+        }
+        scratch.score(out);
+        return out;
+    }
+}
@@ -0,0 +1,121 @@
+package DataFilfer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Appends generated rows to a file in a landing directory at a fixed rate while a
+ * {@link StreamingCleaner} tails it, then prints what got through and how late:
+ * <ul>
+ * <li>ingest: from a row's append to the cleaner reading it, sampled every millisecond,</li>
+ * <li>publish: from the cleaner reading a row to its micro-batch being published.</li>
+ * </ul>
+ * Rows are appended every 10 ms; a rate of 0 appends as fast as the cleaner keeps up with,
+ * which measures throughput.
+ *
+ * @author antonio
+ */
+public class StreamingBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length != 3) {
+            System.err.println("Usage: streaming [-D stream.linger.ms=<ms>] <work> <rows/s> <seconds>");
+            System.exit(2);
+        }
+        Path work = new Path(otherArgs[0]);
+        long rate = Long.parseLong(otherArgs[1]);
+        long seconds = Long.parseLong(otherArgs[2]);
+        FileSystem.getLocal(conf).delete(work, true);
+        File landing = new File(otherArgs[0], "landing");
+        if (!landing.mkdirs()) {
+            throw new IllegalArgumentException("Cannot create " + landing);
+        }
+        conf.setLong(StreamingCleaner.REPORT_MS, Math.max(1000, seconds * 250));
+
+        ProjectionPlan plan = ProjectionPlan.compile(conf);
+        final StreamingCleaner cleaner = new StreamingCleaner(conf,
+                new StreamingCleaner.DirectorySource(landing.toPath()),
+                new StreamingCleaner.DirectorySink(conf, new Path(work, "out"), plan.getHeader()));
+        final Exception[] failure = new Exception[1];
+        Thread running = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    cleaner.run();
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }
+        }, "stream-writer");
+        running.start();
+
+        HouseDataGenerator generator = BenchData.generator();
+        StringBuilder chunk = new StringBuilder(1 << 16);
+        QuantileSketch ingest = new QuantileSketch();
+        long[] appendedAt = new long[1 << 16];
+        long[] appendedRows = new long[appendedAt.length];
+        int oldest = 0;
+        int chunks = 0;
+        long appended = 0;
+        long started = System.nanoTime();
+        long end = started + seconds * 1000000000L;
+        long nextAppend = started;
+        OutputStream out = new FileOutputStream(new File(landing, "feed.csv"));
+        try {
+            out.write((plan.getHeader() + "\n").getBytes(StandardCharsets.UTF_8));
+            while (System.nanoTime() < end && failure[0] == null) {
+                long now = System.nanoTime();
+                boolean caughtUp = oldest == chunks;
+                if (rate > 0 ? now >= nextAppend : caughtUp) {
+                    long rows = rate > 0 ? rate * (now - started) / 1000000000L - appended : 10000;
+                    chunk.setLength(0);
+                    for (long i = 0; i < rows; i++) {
+                        generator.row(appended + i, chunk);
+                        chunk.append('\n');
+                    }
+                    out.write(chunk.toString().getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    appended += rows;
+                    appendedAt[chunks % appendedAt.length] = System.nanoTime();
+                    appendedRows[chunks % appendedAt.length] = appended;
+                    chunks++;
+                    nextAppend += 10000000L;
+                }
+                long read = cleaner.getMetrics().getRowsRead();
+                now = System.nanoTime();
+                for (; oldest < chunks && appendedRows[oldest % appendedAt.length] <= read; oldest++) {
+                    ingest.add((now - appendedAt[oldest % appendedAt.length]) / 1e6);
+                }
+                Thread.sleep(1);
+            }
+        } finally {
+            out.close();
+        }
+        while (cleaner.getMetrics().getRowsRead() < appended && failure[0] == null) {
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - started;
+        cleaner.stop();
+        running.join();
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+
+        StreamingCleaner.Metrics metrics = cleaner.getMetrics();
+        System.out.printf("appended   %d rows in %.1f s (%.0f rows/s)%n", appended, elapsed / 1e9, appended / (elapsed / 1e9));
+        System.out.printf("published  %d rows in %d micro-batches, %d duplicates, %d malformed%n",
+                metrics.getRowsPublished(), metrics.getMicroBatches(), metrics.getDuplicates(), metrics.getMalformed());
+        System.out.printf("ingest     p50 %.1f ms  p99 %.1f ms%n",
+                ingest.getN() == 0 ? 0 : ingest.quantile(0.5), ingest.getN() == 0 ? 0 : ingest.quantile(0.99));
+        System.out.printf("publish    p50 %.1f ms  p99 %.1f ms  max %.1f ms%n", metrics.getLatencyMillis(0.5),
+                metrics.getLatencyMillis(0.99), metrics.getMaxLatencyMillis());
+    }
+}
@@ -0,0 +1,93 @@
+package DataFilfer;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Checks that {@link CsvTokenizer} splits rows the way the regex the mappers used before it
+ * does: on rows with awkward quoting, on every short row of commas, quotes and letters, and on
+ * every line of the files given ({@code TokenizerCheck [<file>...]}). Prints the rows where the
+ * two differ and exits with 1 if there is any.
+ *
+ * @author antonio
+ */
+public class TokenizerCheck {
+
+    private static final String REGEX = ",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)";
+
+    private static final String[] ROWS = {
+            "", ",", ",,", "a", "a,b", "a,b,", ",a", "\"a,b\",c", "a,\"b,c\"", "\"\"", "\"a\"\"b\",c",
+            "a,b\"c,d", "\"a,b,c", "a,b,c\"", "\"a\",\"b", "a\"b\"c,d", "\"a,\"b,c\",d", "\u00e9,\"\u00fc,\u00f6\"",
+            "Owner,0,0,2,BHK,1300.236407,1,1,\"Ksfc Layout,Bangalore\",12.96991,77.59796,55"
+    };
+
+    private static final char[] ALPHABET = {'a', ',', '"', ' '};
+
+    private final CsvTokenizer tokens = new CsvTokenizer();
+    private final Text text = new Text();
+    private long rows;
+    private long mismatches;
+
+    private void check(String row) {
+        rows++;
+        String[] expected = row.split(REGEX, -1);
+        text.set(row);
+        tokens.reset(text);
+        String[] actual = new String[tokens.size()];
+        for (int i = 0; i < actual.length; i++) {
+            actual[i] = tokens.toString(i);
+        }
+        if (!Arrays.equals(expected, actual)) {
+            mismatches++;
+            System.out.printf("%s%n  regex     %s%n  tokenizer %s%n", row, Arrays.toString(expected), Arrays.toString(actual));
+        }
+    }
+
+    /** Every row of up to {@code length} characters of {@link #ALPHABET}. */
+    private void checkAll(char[] row, int length) {
+        check(new String(row, 0, length));
+        if (length < row.length) {
+            for (char c : ALPHABET) {
+                row[length] = c;
+                checkAll(row, length + 1);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        TokenizerCheck checker = new TokenizerCheck();
+        for (String row : ROWS) {
+            checker.check(row);
+        }
+        checker.checkAll(new char[8], 0);
+        Random random = new Random(42);
+        for (int r = 0; r < 100000; r++) {
+            char[] row = new char[random.nextInt(40)];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = ALPHABET[random.nextInt(ALPHABET.length)];
+            }
+            checker.check(new String(row));
+        }
+        for (String file : args) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), StandardCharsets.UTF_8));
+            try {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    checker.check(line);
+                }
+            } finally {
+                in.close();
+            }
+        }
+        System.out.printf("%d rows, %d mismatches%n", checker.rows, checker.mismatches);
+        System.exit(checker.mismatches == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,98 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Listings of one {@link GeoCells} cell, mergeable across splits: the count, the mean price per
+ * square metre, a {@link QuantileSketch} of it for the median (exact up to a few hundred
+ * listings) and the BHK mix, with 5 and more bedrooms in the last bucket.
+ *
+ * @author antonio
+ */
+public class CellStats implements Writable {
+
+    /** Buckets of the BHK mix: 1, 2, 3, 4 and 5+. */
+    public static final int BHK_BUCKETS = 5;
+
+    private long count;
+    private double sum;
+    private final long[] bhk = new long[BHK_BUCKETS];
+    private final QuantileSketch pricePerM2 = new QuantileSketch();
+
+    public void add(double pricePerSquareMetre, int bedrooms) {
+        count++;
+        sum += pricePerSquareMetre;
+        bhk[Math.min(Math.max(bedrooms, 1), BHK_BUCKETS) - 1]++;
+        pricePerM2.add(pricePerSquareMetre);
+    }
+
+    public void merge(CellStats other) {
+        count += other.count;
+        sum += other.sum;
+        for (int i = 0; i < BHK_BUCKETS; i++) {
+            bhk[i] += other.bhk[i];
+        }
+        pricePerM2.merge(other.pricePerM2);
+    }
+
+    public void clear() {
+        count = 0;
+        sum = 0;
+        Arrays.fill(bhk, 0);
+        pricePerM2.clear();
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public double getMean() {
+        return count > 0 ? sum / count : Double.NaN;
+    }
+
+    public double getMedian() {
+        return pricePerM2.quantile(0.5);
+    }
+
+    /** Listings with {@code bedrooms} BHK, or 5 and more for 5. */
+    public long getBhk(int bedrooms) {
+        return bhk[bedrooms - 1];
+    }
+
+    /** {@code count,mean,median,bhk_1,...,bhk_5+}, as in {@link GeoCells#HEADER}. */
+    public void appendTo(StringBuilder out) {
+        out.append(count).append(',').append(getMean()).append(',').append(getMedian());
+        for (long n : bhk) {
+            out.append(',').append(n);
+        }
+    }
+
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        appendTo(s);
+        return s.toString();
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(count);
+        out.writeDouble(sum);
+        for (long n : bhk) {
+            out.writeLong(n);
+        }
+        pricePerM2.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        count = in.readLong();
+        sum = in.readDouble();
+        for (int i = 0; i < BHK_BUCKETS; i++) {
+            bhk[i] = in.readLong();
+        }
+        pricePerM2.readFields(in);
+    }
+}
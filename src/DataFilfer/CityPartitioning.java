@@ -0,0 +1,402 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.input.CombineTextInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.LazyOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+
+/**
+ * The Hive-style {@code city=<name>/} output layout and the partition pruning that reads it.
+ * <p>
+ * The city is the last comma-separated part of {@code ADDRESS}, e.g. {@code Bangalore} for
+ * {@code "Ksfc Layout,Bangalore"}. {@link CleaningPipeline} with {@code -D partition.by.city=true}
+ * writes each reducer's rows for a city to {@code city=<name>/part-r-*}; characters that are not
+ * safe in a path are escaped as {@code %XX} like Hive does, and a blank city goes to
+ * {@code city=__HIVE_DEFAULT_PARTITION__}. {@link CityPartitioner} sends each city to one
+ * reducer, so a reducer keeps only its own cities' files open, except that a city with more than
+ * one reducer's share of the rows is spread over as many reducers as that share needs. The cities
+ * are placed on reducers, largest first and least loaded first, from a sample of the input taken
+ * when the job is submitted ({@code partition.city.sample.rows}); cities the sample missed are
+ * placed by hash.
+ * Rows are placed by their city and their own hash, so identical rows still meet in one reducer.
+ * <p>
+ * Jobs add their inputs through {@link #addInputPaths}: a partitioned directory is read as its
+ * city directories, only those named in {@code -D input.cities=Bangalore,Mumbai} when that is
+ * set, so a per-city job reads only that city's files. The many small files of the layout are
+ * packed into block-sized splits rather than read one map task each.
+ *
+ * @author antonio
+ */
+public final class CityPartitioning {
+
+    /** Write the cleaned output as city directories. */
+    public static final String ENABLED = "partition.by.city";
+    /** Rows sampled across the input splits to find the large cities. */
+    public static final String SAMPLE_ROWS = "partition.city.sample.rows";
+    /** Set by {@link #configure}: {@code <escaped city>:<reducer>[.<reducer>...]} for each sampled city. */
+    public static final String REDUCERS = "partition.city.reducers";
+    /** Cities to read, by name; unset, every city of a partitioned input is read. */
+    public static final String CITIES = "input.cities";
+
+    public static final String PREFIX = "city=";
+    public static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+    /** Base name of the part files inside a city directory. */
+    public static final String PART = "part";
+
+    private static final String ADDRESS = "ADDRESS";
+    private static final String UNSAFE = "\"#%'*/:=?\\{[]^,";
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private CityPartitioning() {
+    }
+
+    public static boolean isEnabled(Configuration conf) {
+        return conf.getBoolean(ENABLED, false);
+    }
+
+    /** Index of {@code ADDRESS} in the {@link ProjectionPlan#INPUT} columns. */
+    public static int addressField(Configuration conf) {
+        String[] input = conf.getTrimmedStrings(ProjectionPlan.INPUT, ProjectionPlan.RAW_INPUT.split(","));
+        int field = Arrays.asList(input).indexOf(ADDRESS);
+        if (field < 0) {
+            throw new IllegalArgumentException("No " + ADDRESS + " column in " + ProjectionPlan.INPUT);
+        }
+        return field;
+    }
+
+    /**
+     * Sets {@code out} to the city of the row's address field: the text after its last comma,
+     * without quotes or surrounding blanks. Throws ArrayIndexOutOfBoundsException if the row has
+     * no such field.
+     */
+    public static void city(CsvTokenizer row, int field, Text out) {
+        byte[] bytes = row.bytes();
+        int start = row.start(field);
+        int end = row.end(field);
+        for (int i = end - 1; i >= start; i--) {
+            if (bytes[i] == ',') {
+                start = i + 1;
+                break;
+            }
+        }
+        while (start < end && (bytes[start] == '"' || (bytes[start] & 0xff) <= ' ')) {
+            start++;
+        }
+        while (end > start && (bytes[end - 1] == '"' || (bytes[end - 1] & 0xff) <= ' ')) {
+            end--;
+        }
+        out.set(bytes, start, end - start);
+    }
+
+    /** The directory name of a city, {@code city=<escaped name>}. */
+    public static String directory(String city) {
+        return PREFIX + escape(city);
+    }
+
+    static String escape(String city) {
+        if (city.isEmpty()) {
+            return DEFAULT_PARTITION;
+        }
+        StringBuilder name = new StringBuilder(city.length() + 8);
+        for (int i = 0; i < city.length(); i++) {
+            char c = city.charAt(i);
+            if (c < ' ' || c == 0x7f || UNSAFE.indexOf(c) >= 0) {
+                name.append('%').append(HEX[(c >> 4) & 0xf]).append(HEX[c & 0xf]);
+            } else {
+                name.append(c);
+            }
+        }
+        return name.toString();
+    }
+
+    static String unescape(String name) {
+        if (name.equals(DEFAULT_PARTITION)) {
+            return "";
+        }
+        StringBuilder city = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c == '%' && i + 2 < name.length()) {
+                city.append((char) Integer.parseInt(name.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                city.append(c);
+            }
+        }
+        return city.toString();
+    }
+
+    /** The {@link MultipleOutputs} base path of each row's city directory, cached per city. */
+    static class CityPaths {
+        private final Map<Text, String> paths = new HashMap<Text, String>();
+        private final Text city = new Text();
+        private final int field;
+
+        CityPaths(Configuration conf) {
+            field = addressField(conf);
+        }
+
+        /** Throws ArrayIndexOutOfBoundsException if the row has no address. */
+        String get(CsvTokenizer row) {
+            city(row, field, city);
+            String path = paths.get(city);
+            if (path == null) {
+                path = directory(city.toString()) + "/" + PART;
+                paths.put(new Text(city), path);
+            }
+            return path;
+        }
+    }
+
+    /**
+     * Sends a city listed in {@link #REDUCERS} to its reducers, one of them chosen by the hash of
+     * the row, and any other city to the reducer of its hash. Keys are raw rows.
+     */
+    public static class CityPartitioner extends Partitioner<Text, Object> implements Configurable {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final Text city = new Text();
+        private final Map<Text, int[]> assigned = new HashMap<Text, int[]>();
+        private Configuration conf;
+        private int field;
+
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            field = addressField(conf);
+            assigned.clear();
+            for (String assignment : conf.getTrimmedStrings(REDUCERS)) {
+                int colon = assignment.lastIndexOf(':');
+                String[] names = assignment.substring(colon + 1).split("\\.");
+                int[] reducers = new int[names.length];
+                for (int i = 0; i < names.length; i++) {
+                    reducers[i] = Integer.parseInt(names[i]);
+                }
+                assigned.put(new Text(unescape(assignment.substring(0, colon))), reducers);
+            }
+        }
+
+        public Configuration getConf() {
+            return conf;
+        }
+
+        public int getPartition(Text key, Object value, int numPartitions) {
+            try {
+                city(tokens.reset(key), field, city);
+            } catch (ArrayIndexOutOfBoundsException e) {
+                // malformed, dropped by the reducer wherever it goes
+                return (key.hashCode() & Integer.MAX_VALUE) % numPartitions;
+            }
+            int[] reducers = assigned.get(city);
+            if (reducers == null) {
+                return (city.hashCode() & Integer.MAX_VALUE) % numPartitions;
+            }
+            return reducers[(key.hashCode() & Integer.MAX_VALUE) % reducers.length] % numPartitions;
+        }
+    }
+
+    /**
+     * Sets up the city layout on a {@link CleaningPipeline} job whose reducers, input and output
+     * format are already configured: the partitioner, a lazy output format so reducers create
+     * only city files, and, with several reducers, the placement of the cities of a sample of
+     * the input.
+     */
+    public static void configure(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        addressField(conf);
+        try {
+            LazyOutputFormat.setOutputFormatClass(job, job.getOutputFormatClass());
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot load the output format", e);
+        }
+        job.setPartitionerClass(CityPartitioner.class);
+        int reducers = job.getNumReduceTasks();
+        if (reducers > 1) {
+            List<String> assignments = new ArrayList<String>();
+            for (Map.Entry<String, int[]> assignment : assign(sample(job), reducers).entrySet()) {
+                StringBuilder entry = new StringBuilder(escape(assignment.getKey())).append(':');
+                for (int r = 0; r < assignment.getValue().length; r++) {
+                    entry.append(r == 0 ? "" : ".").append(assignment.getValue()[r]);
+                }
+                assignments.add(entry.toString());
+            }
+            conf.setStrings(REDUCERS, assignments.toArray(new String[assignments.size()]));
+        }
+    }
+
+    /**
+     * Places the sampled cities, largest first, each on the least loaded reducers: one, or as
+     * many as it needs to stay within one reducer's share of the rows.
+     */
+    static Map<String, int[]> assign(final Map<String, Long> counts, int reducers) {
+        List<String> cities = new ArrayList<String>(counts.keySet());
+        Collections.sort(cities, new Comparator<String>() {
+            public int compare(String a, String b) {
+                int bySize = Long.compare(counts.get(b), counts.get(a));
+                return bySize != 0 ? bySize : a.compareTo(b);
+            }
+        });
+        long rows = 0;
+        for (long count : counts.values()) {
+            rows += count;
+        }
+        final double[] loads = new double[reducers];
+        Integer[] order = new Integer[reducers];
+        Map<String, int[]> assigned = new TreeMap<String, int[]>();
+        for (String city : cities) {
+            long count = counts.get(city);
+            int spread = (int) Math.max(1, Math.min(reducers, (count * reducers + rows - 1) / rows));
+            for (int r = 0; r < reducers; r++) {
+                order[r] = r;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    int byLoad = Double.compare(loads[a], loads[b]);
+                    return byLoad != 0 ? byLoad : a.compareTo(b);
+                }
+            });
+            int[] chosen = new int[spread];
+            for (int i = 0; i < spread; i++) {
+                chosen[i] = order[i];
+                loads[order[i]] += (double) count / spread;
+            }
+            Arrays.sort(chosen);
+            assigned.put(city, chosen);
+        }
+        return assigned;
+    }
+
+    /** Rows per city in the first rows of each input split, {@link #SAMPLE_ROWS} in all. */
+    static Map<String, Long> sample(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        TextInputFormat format = new TextInputFormat();
+        List<InputSplit> splits = format.getSplits(job);
+        Map<String, Long> counts = new HashMap<String, Long>();
+        if (splits.isEmpty()) {
+            return counts;
+        }
+        ProjectionPlan plan = ProjectionPlan.compile(conf);
+        int field = addressField(conf);
+        long perSplit = Math.max(1, conf.getLong(SAMPLE_ROWS, 100000) / splits.size());
+        CsvTokenizer tokens = new CsvTokenizer();
+        Text city = new Text();
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        for (InputSplit split : splits) {
+            RecordReader<LongWritable, Text> reader = format.createRecordReader(split, context);
+            try {
+                reader.initialize(split, context);
+                for (long n = 0; n < perSplit && reader.nextKeyValue(); n++) {
+                    tokens.reset(reader.getCurrentValue());
+                    if (reader.getCurrentKey().get() == 0 && plan.isHeader(tokens)) {
+                        continue;
+                    }
+                    try {
+                        city(tokens, field, city);
+                    } catch (ArrayIndexOutOfBoundsException e) {
+                        continue;
+                    }
+                    String name = city.toString();
+                    Long count = counts.get(name);
+                    counts.put(name, count == null ? 1 : count + 1);
+                }
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted while sampling " + split, e);
+            } finally {
+                reader.close();
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Adds {@code paths}, the input paths followed by the output path, to the job. A directory
+     * with {@code city=} subdirectories is added as those subdirectories, limited to
+     * {@link #CITIES} when set. Throws IOException when cities are requested and an input is not
+     * partitioned, or when none of its directories is one of the cities.
+     */
+    public static void addInputPaths(Job job, String[] paths) throws IOException {
+        Configuration conf = job.getConfiguration();
+        String[] requested = conf.getTrimmedStrings(CITIES);
+        Set<String> cities = requested.length == 0 ? null : new HashSet<String>(Arrays.asList(requested));
+        boolean partitioned = false;
+        for (int i = 0; i < paths.length - 1; ++i) {
+            Path path = new Path(paths[i]);
+            FileSystem fs = path.getFileSystem(conf);
+            FileStatus[] partitions = fs.exists(path) && fs.getFileStatus(path).isDirectory()
+                    ? fs.globStatus(new Path(path, PREFIX + "*")) : null;
+            if (partitions == null || partitions.length == 0) {
+                if (cities != null) {
+                    throw new IOException(path + " is not partitioned by city, cannot read only " + CITIES + "="
+                            + conf.get(CITIES));
+                }
+                FileInputFormat.addInputPath(job, path);
+                continue;
+            }
+            int added = 0;
+            for (FileStatus partition : partitions) {
+                String city = unescape(partition.getPath().getName().substring(PREFIX.length()));
+                if (partition.isDirectory() && (cities == null || cities.contains(city))) {
+                    FileInputFormat.addInputPath(job, partition.getPath());
+                    added++;
+                }
+            }
+            if (added == 0) {
+                throw new IOException("No city of " + conf.get(CITIES) + " in " + path);
+            }
+            partitioned = true;
+        }
+        if (partitioned) {
+            combineSplits(job);
+        }
+    }
+
+    /**
+     * A layout of one file per city and reducer would otherwise cost a map task per file, most
+     * of them small; the job's input format is replaced by one that packs files into splits of
+     * up to {@link FileInputFormat#SPLIT_MAXSIZE}, one block by default.
+     */
+    private static void combineSplits(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        Class<?> format;
+        try {
+            format = job.getInputFormatClass();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot load the input format", e);
+        }
+        if (format == TextInputFormat.class) {
+            job.setInputFormatClass(CombineTextInputFormat.class);
+        } else if (format == HouseRecordInputFormat.class) {
+            job.setInputFormatClass(HouseRecordInputFormat.Combined.class);
+        } else {
+            return;
+        }
+        if (conf.getLong(FileInputFormat.SPLIT_MAXSIZE, 0) <= 0) {
+            FileInputFormat.setMaxInputSplitSize(job, conf.getLong("dfs.blocksize", 128L * 1024 * 1024));
+        }
+    }
+}
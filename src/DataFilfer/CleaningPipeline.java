@@ -0,0 +1,244 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Runs the whole cleaning chain as a single MapReduce job:
+ * {@link DublicateRemover} (the shuffle), {@link FeatureRemover} (in the reducer),
+ * {@link FeatureTitle} (header of the first part file) and {@link EmptyFeatues}
+ * (side output {@code empty-m-*}, keyed by the byte offset of the row).
+ * Nothing is written to HDFS between the stages.
+ * With {@code -D pipeline.output=binary} the cleaned rows are written as
+ * {@link HouseRecordWritable}s through {@link HouseRecordOutputFormat} instead of CSV;
+ * {@link HouseRecordExport} turns them back into CSV for the notebook.
+ * With {@code -D partition.by.city=true} the rows go to {@code city=<name>/} directories instead,
+ * over any number of reducers ({@code -D mapreduce.job.reduces}); see {@link CityPartitioning}.
+ *
+ * @author antonio
+ */
+public class CleaningPipeline {
+
+    public static final String EMPTY_OUTPUT = "empty";
+    public static final String OUTPUT = "pipeline.output";
+
+    public enum Counters { HEADER_ROWS, EMPTY_CELLS, MALFORMED_ROWS }
+
+    public static class FilterMapper extends Mapper<LongWritable, Text, Text, NullWritable> {
+        private MultipleOutputs<Text, NullWritable> outputs;
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final Text row = new Text();
+        private final Text column = new Text();
+        private ProjectionPlan plan;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            outputs = new MultipleOutputs<Text, NullWritable>(context);
+            plan = ProjectionPlan.compile(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
+            metrics.next();
+            tokens.reset(value);
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            if (key.get() == 0 && plan.isHeader(tokens)) {
+                context.getCounter(Counters.HEADER_ROWS).increment(1);
+                return;
+            }
+            boolean empty = false;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.isBlank(i)) {
+                    row.set(String.valueOf(key.get()));
+                    column.set(String.valueOf(i));
+                    outputs.write(EMPTY_OUTPUT, row, column);
+                    context.getCounter(Counters.EMPTY_CELLS).increment(1);
+                    empty = true;
+                }
+            }
+            if (empty) {
+                metrics.emptyCells();
+            }
+            context.write(value, NullWritable.get());
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            outputs.close();
+            metrics.close();
+        }
+    }
+
+    /** Map-side dedup: identical rows leave the mapper once. */
+    public static class DedupCombiner extends Reducer<Text, NullWritable, Text, NullWritable> {
+        public void reduce(Text key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+            context.write(key, NullWritable.get());
+        }
+    }
+
+    /** Writes the projected rows; by city, each city file starts with its own header. */
+    public static class CleanReducer extends Reducer<Text, NullWritable, Text, NullWritable> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final Text out = new Text();
+        private final Set<String> started = new HashSet<String>();
+        private ProjectionPlan plan;
+        private CityPartitioning.CityPaths cityPaths;
+        private MultipleOutputs<Text, NullWritable> cities;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            plan = ProjectionPlan.compile(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+            if (CityPartitioning.isEnabled(context.getConfiguration())) {
+                cityPaths = new CityPartitioning.CityPaths(context.getConfiguration());
+                cities = new MultipleOutputs<Text, NullWritable>(context);
+            } else if (context.getTaskAttemptID().getTaskID().getId() == 0) {
+                out.set(plan.getHeader());
+                context.write(out, NullWritable.get());
+            }
+        }
+
+        public void reduce(Text key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            String path = null;
+            try {
+                tokens.reset(key);
+                metrics.phase(TaskMetrics.Phase.PARSE);
+                plan.project(tokens, out);
+                if (cities != null) {
+                    path = cityPaths.get(tokens);
+                }
+                metrics.phase(TaskMetrics.Phase.CONVERT);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.MALFORMED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            if (path == null) {
+                context.write(out, NullWritable.get());
+            } else {
+                if (started.add(path)) {
+                    cities.write(new Text(plan.getHeader()), NullWritable.get(), path);
+                }
+                cities.write(out, NullWritable.get(), path);
+            }
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (cities != null) {
+                cities.close();
+            }
+            metrics.close();
+        }
+    }
+
+    /** Like {@link CleanReducer} but emits typed records; no header, the schema is the class. */
+    public static class BinaryCleanReducer extends Reducer<Text, NullWritable, NullWritable, HouseRecordWritable> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final HouseRecordWritable record = new HouseRecordWritable();
+        private CityPartitioning.CityPaths cityPaths;
+        private MultipleOutputs<NullWritable, HouseRecordWritable> cities;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+            if (CityPartitioning.isEnabled(context.getConfiguration())) {
+                cityPaths = new CityPartitioning.CityPaths(context.getConfiguration());
+                cities = new MultipleOutputs<NullWritable, HouseRecordWritable>(context);
+            }
+        }
+
+        public void reduce(Text key, Iterable<NullWritable> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            String path = null;
+            try {
+                tokens.reset(key);
+                metrics.phase(TaskMetrics.Phase.PARSE);
+                record.setRaw(tokens);
+                if (cities != null) {
+                    path = cityPaths.get(tokens);
+                }
+                metrics.phase(TaskMetrics.Phase.CONVERT);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.MALFORMED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            if (path == null) {
+                context.write(NullWritable.get(), record);
+            } else {
+                cities.write(NullWritable.get(), record, path);
+            }
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (cities != null) {
+                cities.close();
+            }
+            metrics.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: pipeline <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        Job job = Job.getInstance(conf, "Cleaning pipeline");
+        job.setJarByClass(CleaningPipeline.class);
+        ProjectionPlan.compile(conf);
+        job.setMapperClass(FilterMapper.class);
+        job.setCombinerClass(DedupCombiner.class);
+        boolean byCity = CityPartitioning.isEnabled(conf);
+        if (!byCity) {
+            // one part file, the one with the header
+            job.setNumReduceTasks(1);
+        }
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(NullWritable.class);
+        if ("binary".equals(conf.get(OUTPUT))) {
+            job.setReducerClass(BinaryCleanReducer.class);
+            job.setOutputKeyClass(NullWritable.class);
+            job.setOutputValueClass(HouseRecordWritable.class);
+            job.setOutputFormatClass(HouseRecordOutputFormat.class);
+        } else {
+            job.setReducerClass(CleanReducer.class);
+            job.setOutputKeyClass(Text.class);
+            job.setOutputValueClass(NullWritable.class);
+        }
+        MultipleOutputs.addNamedOutput(job, EMPTY_OUTPUT, TextOutputFormat.class, Text.class, Text.class);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        if (byCity) {
+            CityPartitioning.configure(job);
+        }
+        Compression.configure(job);
+        return job;
+    }
+}
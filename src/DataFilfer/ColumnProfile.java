@@ -0,0 +1,170 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Data-quality summary of one column, built in a single pass and mergeable across splits:
+ * cell/empty/parse-failure counts, Welford mean and variance with min/max, a
+ * {@link QuantileSketch} of the numeric values and a {@link HyperLogLog} of the distinct
+ * non-empty cells.
+ *
+ * @author antonio
+ */
+public class ColumnProfile implements Writable {
+
+    private long cells;
+    private long empty;
+    private long parseFailures;
+    private long numeric;
+    private double mean;
+    private double m2;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+    private final QuantileSketch quantiles = new QuantileSketch();
+    private final HyperLogLog distinct = new HyperLogLog();
+
+    public void addEmpty() {
+        cells++;
+        empty++;
+    }
+
+    /** A non-empty cell, by the hash of its bytes. */
+    public void addCell(long hash) {
+        cells++;
+        distinct.add(hash);
+    }
+
+    public void addParseFailure() {
+        parseFailures++;
+    }
+
+    public void addValue(double value) {
+        numeric++;
+        double delta = value - mean;
+        mean += delta / numeric;
+        m2 += delta * (value - mean);
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        quantiles.add(value);
+    }
+
+    public void merge(ColumnProfile other) {
+        cells += other.cells;
+        empty += other.empty;
+        parseFailures += other.parseFailures;
+        if (other.numeric > 0) {
+            // Chan et al. pairwise update of mean and M2
+            long total = numeric + other.numeric;
+            double delta = other.mean - mean;
+            mean += delta * other.numeric / total;
+            m2 += other.m2 + delta * delta * ((double) numeric * other.numeric / total);
+            numeric = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            quantiles.merge(other.quantiles);
+        }
+        distinct.merge(other.distinct);
+    }
+
+    public void clear() {
+        cells = empty = parseFailures = numeric = 0;
+        mean = m2 = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+        quantiles.clear();
+        distinct.clear();
+    }
+
+    public long getCells() {
+        return cells;
+    }
+
+    public long getEmpty() {
+        return empty;
+    }
+
+    public long getParseFailures() {
+        return parseFailures;
+    }
+
+    public long getNumeric() {
+        return numeric;
+    }
+
+    public double getMean() {
+        return numeric > 0 ? mean : Double.NaN;
+    }
+
+    /** Sample variance. */
+    public double getVariance() {
+        return numeric > 1 ? m2 / (numeric - 1) : Double.NaN;
+    }
+
+    public double getMin() {
+        return numeric > 0 ? min : Double.NaN;
+    }
+
+    public double getMax() {
+        return numeric > 0 ? max : Double.NaN;
+    }
+
+    public double quantile(double q) {
+        return quantiles.quantile(q);
+    }
+
+    public long getDistinct() {
+        return distinct.estimate();
+    }
+
+    /** One line: {@code cells=.. empty=.. ...}; numeric fields only when the column had numbers. */
+    public String toReport() {
+        StringBuilder s = new StringBuilder();
+        s.append("cells=").append(cells)
+                .append(" empty=").append(empty)
+                .append(" parse_failures=").append(parseFailures)
+                .append(" distinct~").append(getDistinct());
+        if (numeric > 0) {
+            s.append(" numeric=").append(numeric)
+                    .append(" min=").append(getMin())
+                    .append(" max=").append(getMax())
+                    .append(" mean=").append(getMean())
+                    .append(" variance=").append(getVariance())
+                    .append(" p01~").append(quantile(0.01))
+                    .append(" p25~").append(quantile(0.25))
+                    .append(" p50~").append(quantile(0.5))
+                    .append(" p75~").append(quantile(0.75))
+                    .append(" p99~").append(quantile(0.99));
+        }
+        return s.toString();
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(cells);
+        out.writeLong(empty);
+        out.writeLong(parseFailures);
+        out.writeLong(numeric);
+        out.writeDouble(mean);
+        out.writeDouble(m2);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        quantiles.write(out);
+        distinct.write(out);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        cells = in.readLong();
+        empty = in.readLong();
+        parseFailures = in.readLong();
+        numeric = in.readLong();
+        mean = in.readDouble();
+        m2 = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+        quantiles.readFields(in);
+        distinct.readFields(in);
+    }
+}
@@ -0,0 +1,505 @@
+package DataFilfer;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * The numeric columns of the cleaned output in local files, as columns of doubles, for
+ * fitting models in one JVM on more rows than fit on the heap.
+ * <p>
+ * {@code columns load <in>... <store>} reads the cleaned output, CSV rows in the
+ * {@link FeatureTitle#HEADER} layout or {@link HouseRecordWritable}s with
+ * {@code -D linear.input=binary}, city directories included, and writes one segment file per
+ * input split, the splits being read in parallel. Rows are turned into
+ * {@link HouseRecordWritable#toVector} columns, so the column indices of
+ * {@code linear.features} and {@code linear.target} apply. A segment is a run of row groups of
+ * {@code columns.group.rows} (65536) rows, each holding its rows column after column as
+ * little-endian doubles; rows that do not parse, such as the header, are skipped and counted.
+ * {@code _columns}, written last, lists the segments.
+ * <p>
+ * {@link #open} memory-maps the segments and hands each column of a row group out as a
+ * {@link DoubleBuffer}, so the data lives in the page cache rather than on the heap and a fit
+ * allocates nothing per row. {@link #gram} and {@link #qr} scan the row groups on
+ * {@code columns.threads} threads, copying a block of {@value #BLOCK} rows of the columns they
+ * use into arrays that stay in cache and adding the block to a per-thread
+ * {@link NormalEquations} or {@link QrFactor}; the partials are merged at the end. The result
+ * is what {@link Linear} and {@link CrossValidation} solve, so
+ * {@code columns fit <store> <out>} writes the output of a {@link Linear} job, {@code _model}
+ * included; {@code -D columns.solver=qr} fits through the QR factor instead of X'X.
+ *
+ * @author antonio
+ */
+public class ColumnStore {
+
+    public static final String GROUP_ROWS = "columns.group.rows";
+    public static final String THREADS = "columns.threads";
+    /** {@code gram} (default) to solve the normal equations, {@code qr} to solve through {@link QrFactor}. */
+    public static final String SOLVER = "columns.solver";
+
+    /** File name of the segment list in a store. */
+    public static final String FILE = "_columns";
+
+    private static final int VERSION = 1;
+    private static final int COLUMNS = HouseRecordWritable.VECTOR_SIZE;
+    /** Rows copied out of each column at a time by a fit. */
+    private static final int BLOCK = 1024;
+    /** Bytes mapped at a time; a segment is mapped in windows of whole row groups. */
+    private static final long WINDOW = 1L << 30;
+
+    private final int columns;
+    private final long rows;
+    private final long skippedRows;
+    /** Each column of each row group. */
+    private final DoubleBuffer[][] groups;
+
+    private ColumnStore(int columns, long rows, long skippedRows, DoubleBuffer[][] groups) {
+        this.columns = columns;
+        this.rows = rows;
+        this.skippedRows = skippedRows;
+        this.groups = groups;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    /** Input rows that did not parse when the store was loaded. */
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    public int getGroupCount() {
+        return groups.length;
+    }
+
+    /** Column {@code column} of row group {@code group}; a view of its own, positioned at the first row. */
+    public DoubleBuffer column(int group, int column) {
+        return groups[group][column].duplicate();
+    }
+
+    private static File localFile(Configuration conf, Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        if (!(fs instanceof LocalFileSystem)) {
+            throw new IllegalArgumentException("A column store must be on the local file system: " + path);
+        }
+        return ((LocalFileSystem) fs).pathToFile(path);
+    }
+
+    private static String segment(int index) {
+        return String.format("segment-%05d", index);
+    }
+
+    /** Loads the inputs into a new store; {@code paths} are the input paths followed by the store. */
+    public static ColumnStore load(Configuration conf, String[] paths) throws IOException {
+        Path store = new Path(paths[paths.length - 1]);
+        final File dir = localFile(conf, store);
+        final int groupRows = conf.getInt(GROUP_ROWS, 65536);
+        if (groupRows <= 0 || (long) groupRows * COLUMNS * 8 > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(GROUP_ROWS + " must be between 1 and "
+                    + Integer.MAX_VALUE / (COLUMNS * 8) + ": " + groupRows);
+        }
+        if (dir.exists()) {
+            throw new IOException("Output directory " + store + " already exists");
+        }
+        if (!dir.mkdirs()) {
+            throw new IOException("Cannot create " + store);
+        }
+
+        Job job = Job.getInstance(conf, "Column store");
+        final boolean binary = "binary".equals(conf.get(Linear.INPUT));
+        if (binary) {
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        }
+        CityPartitioning.addInputPaths(job, paths);
+        final Configuration jobConf = job.getConfiguration();
+        final InputFormat<?, ?> format;
+        final List<InputSplit> splits;
+        try {
+            format = ReflectionUtils.newInstance(job.getInputFormatClass(), jobConf);
+            splits = format.getSplits(job);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing the input", e);
+        }
+
+        List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+        for (int s = 0; s < splits.size(); s++) {
+            final InputSplit split = splits.get(s);
+            final File file = new File(dir, segment(s));
+            tasks.add(new Callable<long[]>() {
+                public long[] call() throws Exception {
+                    return loadSplit(format, split, jobConf, binary, file, groupRows);
+                }
+            });
+        }
+        List<long[]> loaded = run(tasks, conf.getInt(THREADS, Runtime.getRuntime().availableProcessors()), "Loading");
+        long skipped = 0;
+        for (long[] counts : loaded) {
+            skipped += counts[1];
+        }
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(dir, FILE))));
+        try {
+            out.writeInt(VERSION);
+            out.writeInt(COLUMNS);
+            out.writeInt(groupRows);
+            out.writeLong(skipped);
+            out.writeInt(loaded.size());
+            for (long[] counts : loaded) {
+                out.writeLong(counts[0]);
+            }
+        } finally {
+            out.close();
+        }
+        return open(conf, store);
+    }
+
+    /** Writes the rows of one split as a segment; returns the rows written and skipped. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static long[] loadSplit(InputFormat format, InputSplit split, Configuration conf, boolean binary,
+                                    File file, int groupRows) throws IOException, InterruptedException {
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, new TaskAttemptID());
+        RecordReader reader = MappedLineRecordReader.canRead(format, split, conf)
+                ? new MappedLineRecordReader() : format.createRecordReader(split, context);
+        ByteBuffer group = ByteBuffer.allocateDirect(COLUMNS * groupRows * 8).order(ByteOrder.LITTLE_ENDIAN);
+        CsvTokenizer tokens = new CsvTokenizer();
+        HouseRecordWritable record = new HouseRecordWritable();
+        double[] vector = new double[COLUMNS];
+        long rows = 0;
+        long skipped = 0;
+        int filled = 0;
+        FileChannel out = new FileOutputStream(file).getChannel();
+        try {
+            reader.initialize(split, context);
+            while (reader.nextKeyValue()) {
+                if (binary) {
+                    ((HouseRecordWritable) reader.getCurrentValue()).toVector(vector);
+                } else {
+                    try {
+                        record.setCleaned(tokens.reset((Text) reader.getCurrentValue())).toVector(vector);
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        skipped++;
+                        continue;
+                    }
+                }
+                for (int c = 0; c < COLUMNS; c++) {
+                    group.putDouble((c * groupRows + filled) << 3, vector[c]);
+                }
+                if (++filled == groupRows) {
+                    writeGroup(out, group, groupRows, filled);
+                    rows += filled;
+                    filled = 0;
+                }
+            }
+            writeGroup(out, group, groupRows, filled);
+            rows += filled;
+        } finally {
+            out.close();
+            reader.close();
+        }
+        return new long[] {rows, skipped};
+    }
+
+    /** Writes the first {@code filled} rows of each column, so only the last group of a segment is short. */
+    private static void writeGroup(FileChannel out, ByteBuffer group, int groupRows, int filled) throws IOException {
+        for (int c = 0; c < COLUMNS && filled > 0; c++) {
+            group.limit((c * groupRows + filled) << 3);
+            group.position((c * groupRows) << 3);
+            while (group.hasRemaining()) {
+                out.write(group);
+            }
+        }
+        group.clear();
+    }
+
+    /** Maps the segments of a store written by {@link #load}. */
+    public static ColumnStore open(Configuration conf, Path store) throws IOException {
+        File dir = localFile(conf, store);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(dir, FILE))));
+        int columns;
+        int groupRows;
+        long skipped;
+        long[] segmentRows;
+        try {
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported column store version " + version);
+            }
+            columns = in.readInt();
+            groupRows = in.readInt();
+            skipped = in.readLong();
+            segmentRows = new long[in.readInt()];
+            for (int s = 0; s < segmentRows.length; s++) {
+                segmentRows[s] = in.readLong();
+            }
+        } finally {
+            in.close();
+        }
+
+        List<DoubleBuffer[]> groups = new ArrayList<DoubleBuffer[]>();
+        long rows = 0;
+        long groupBytes = (long) columns * groupRows * 8;
+        long perWindow = Math.max(1, WINDOW / groupBytes);
+        for (int s = 0; s < segmentRows.length; s++) {
+            File file = new File(dir, segment(s));
+            long full = segmentRows[s] / groupRows;
+            int last = (int) (segmentRows[s] % groupRows);
+            long count = full + (last > 0 ? 1 : 0);
+            FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+            try {
+                if (channel.size() != segmentRows[s] * columns * 8) {
+                    throw new IOException(file + " has " + channel.size() + " bytes, expected "
+                            + segmentRows[s] * columns * 8);
+                }
+                for (long first = 0; first < count; first += perWindow) {
+                    long offset = first * groupBytes;
+                    MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                            Math.min(perWindow * groupBytes, channel.size() - offset));
+                    for (long g = first; g < Math.min(count, first + perWindow); g++) {
+                        int size = g < full ? groupRows : last;
+                        int start = (int) ((g - first) * groupBytes);
+                        DoubleBuffer[] group = new DoubleBuffer[columns];
+                        for (int c = 0; c < columns; c++) {
+                            ByteBuffer bytes = window.duplicate();
+                            bytes.limit(start + (c + 1) * size * 8);
+                            bytes.position(start + c * size * 8);
+                            group[c] = bytes.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+                        }
+                        groups.add(group);
+                    }
+                }
+            } finally {
+                // the mappings stay valid
+                channel.close();
+            }
+            rows += segmentRows[s];
+        }
+        return new ColumnStore(columns, rows, skipped, groups.toArray(new DoubleBuffer[groups.size()][]));
+    }
+
+    /** What a fit adds the blocks of rows up in; one per thread, merged at the end. */
+    private abstract static class Fit<S> {
+        abstract S create();
+
+        abstract void add(S sums, double[][] x, double[] y, int count);
+
+        abstract void merge(S into, S other);
+    }
+
+    /** The normal equations of column {@code target} on the {@code features} columns, over every row. */
+    public NormalEquations gram(final int[] features, int target, int threads) throws IOException {
+        return scan(features, target, threads, new Fit<NormalEquations>() {
+            NormalEquations create() {
+                return new NormalEquations(features.length);
+            }
+
+            void add(NormalEquations sums, double[][] x, double[] y, int count) {
+                sums.add(x, y, count);
+            }
+
+            void merge(NormalEquations into, NormalEquations other) {
+                into.merge(other);
+            }
+        });
+    }
+
+    /** The R factor of [1 X y], X being the {@code features} columns and y column {@code target}, over every row. */
+    public QrFactor qr(final int[] features, int target, int threads) throws IOException {
+        return scan(features, target, threads, new Fit<QrFactor>() {
+            QrFactor create() {
+                return new QrFactor(features.length);
+            }
+
+            void add(QrFactor sums, double[][] x, double[] y, int count) {
+                sums.add(x, y, count);
+            }
+
+            void merge(QrFactor into, QrFactor other) {
+                into.merge(other);
+            }
+        });
+    }
+
+    /**
+     * Adds every row to {@code fit}. Each thread takes a contiguous range of row groups, so the
+     * sums, and the rounding, only depend on the number of threads.
+     */
+    private <S> S scan(final int[] features, final int target, int threads, final Fit<S> fit) throws IOException {
+        for (int column : features) {
+            checkColumn(column);
+        }
+        checkColumn(target);
+        int parts = Math.max(1, Math.min(threads, groups.length));
+        List<Callable<S>> tasks = new ArrayList<Callable<S>>();
+        for (int t = 0; t < parts; t++) {
+            final int from = (int) ((long) groups.length * t / parts);
+            final int to = (int) ((long) groups.length * (t + 1) / parts);
+            tasks.add(new Callable<S>() {
+                public S call() {
+                    S sums = fit.create();
+                    double[][] x = new double[features.length][BLOCK];
+                    double[] y = new double[BLOCK];
+                    DoubleBuffer[] xs = new DoubleBuffer[features.length];
+                    for (int g = from; g < to; g++) {
+                        for (int f = 0; f < features.length; f++) {
+                            xs[f] = column(g, features[f]);
+                        }
+                        DoubleBuffer ys = column(g, target);
+                        while (ys.hasRemaining()) {
+                            int count = Math.min(BLOCK, ys.remaining());
+                            for (int f = 0; f < features.length; f++) {
+                                xs[f].get(x[f], 0, count);
+                            }
+                            ys.get(y, 0, count);
+                            fit.add(sums, x, y, count);
+                        }
+                    }
+                    return sums;
+                }
+            });
+        }
+        List<S> partials = run(tasks, parts, "Fitting");
+        S sums = partials.get(0);
+        for (int t = 1; t < partials.size(); t++) {
+            fit.merge(sums, partials.get(t));
+        }
+        return sums;
+    }
+
+    private void checkColumn(int column) {
+        if (column < 0 || column >= columns) {
+            throw new IllegalArgumentException("Column " + column + " is not in the store, which has " + columns);
+        }
+    }
+
+    private static <T> List<T> run(List<Callable<T>> tasks, int threads, String what) throws IOException {
+        List<T> results = new ArrayList<T>(tasks.size());
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            for (Future<T> done : pool.invokeAll(tasks)) {
+                results.add(done.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while " + what.toLowerCase(), e);
+        } catch (ExecutionException e) {
+            throw new IOException(what + " failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        return results;
+    }
+
+    /**
+     * Fits {@code linear.target} on {@code linear.features} over the whole store and writes what
+     * the {@link Linear} reducer writes, {@code _model} included, to {@code output}.
+     */
+    public static LinearModel fit(Configuration conf, ColumnStore store, Path output) throws IOException {
+        int[] features = Linear.featureColumns(conf);
+        int target = conf.getInt(Linear.TARGET, 9);
+        int threads = conf.getInt(THREADS, Runtime.getRuntime().availableProcessors());
+        String solver = conf.get(SOLVER, "gram");
+        double[] beta;
+        double rSquared;
+        double adjusted;
+        long rows;
+        if (solver.equals("gram")) {
+            NormalEquations sums = store.gram(features, target, threads);
+            beta = sums.solve();
+            rSquared = sums.rSquared(beta);
+            adjusted = sums.adjustedRSquared(beta);
+            rows = sums.getN();
+        } else if (solver.equals("qr")) {
+            QrFactor factor = store.qr(features, target, threads);
+            beta = factor.solve();
+            rSquared = factor.rSquared(beta);
+            adjusted = factor.adjustedRSquared(beta);
+            rows = factor.getN();
+        } else {
+            throw new IllegalArgumentException(SOLVER + " must be gram or qr: " + solver);
+        }
+
+        FileSystem fs = output.getFileSystem(conf);
+        if (fs.exists(output)) {
+            throw new IOException("Output directory " + output + " already exists");
+        }
+        StringBuilder betas = new StringBuilder();
+        for (int i = 0; i < beta.length; i++) {
+            if (i > 0) {
+                betas.append(", ");
+            }
+            betas.append(beta[i]);
+        }
+        Writer out = new OutputStreamWriter(fs.create(new Path(output, "part-r-00000")), StandardCharsets.UTF_8);
+        try {
+            out.write("estimateRegressionParameters\t" + betas + "\n");
+            out.write("length\t" + beta.length + "\n");
+            out.write("AdjustedRSquared\t" + adjusted + "\n");
+            out.write("RSquared\t" + rSquared + "\n");
+        } finally {
+            out.close();
+        }
+        LinearModel model = new LinearModel(features, target, beta, rows, rSquared);
+        model.save(conf, new Path(output, LinearModel.FILE));
+        return model;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length >= 3 && otherArgs[0].equals("load")) {
+            ColumnStore store = load(conf, Arrays.copyOfRange(otherArgs, 1, otherArgs.length));
+            System.out.println(store.getRows() + " rows in " + store.getGroupCount() + " row groups, "
+                    + store.getSkippedRows() + " skipped");
+        } else if (otherArgs.length == 3 && otherArgs[0].equals("fit")) {
+            LinearModel model = fit(conf, open(conf, new Path(otherArgs[1])), new Path(otherArgs[2]));
+            System.out.println(model.getRows() + " rows, R^2 " + model.getRSquared());
+        } else {
+            System.err.println("Usage: columns load <in> [<in>...] <store> | columns fit <store> <out>");
+            System.exit(2);
+        }
+    }
+}
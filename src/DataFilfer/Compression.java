@@ -0,0 +1,98 @@
+package DataFilfer;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/**
+ * The compression option every driver shares. {@code -D compression.codec=<codec>} compresses
+ * the map output and the job output with one codec, {@code compression.map.codec} overrides it
+ * for the map output only, and {@code none} turns compression off; unset, the job keeps its
+ * defaults. Codecs are looked up by alias ({@code default}, {@code gzip}, {@code bzip2},
+ * {@code lz4}, {@code snappy}, and {@code zstd} on Hadoop versions that have it) or by class
+ * name, e.g. {@code com.hadoop.compression.lzo.LzopCodec} with hadoop-lzo on the classpath.
+ * <p>
+ * Compressed text input needs no option: it is recognised by file extension, and
+ * {@code .bz2} files are split like plain ones. Indexed LZO files split only through their own
+ * input format, which {@code compression.text.input.format} puts in place of
+ * {@link TextInputFormat}.
+ *
+ * @author antonio
+ */
+public final class Compression {
+
+    /** Codec of the map output and the job output. */
+    public static final String CODEC = "compression.codec";
+    /** Codec of the map output, when it differs from {@link #CODEC}. */
+    public static final String MAP_CODEC = "compression.map.codec";
+    /** Input format class used instead of {@link TextInputFormat}, e.g. for indexed LZO. */
+    public static final String TEXT_INPUT_FORMAT = "compression.text.input.format";
+
+    public static final String NONE = "none";
+
+    private Compression() {
+    }
+
+    /**
+     * The codec called {@code name}; throws IllegalArgumentException if there is none or it
+     * cannot compress here, e.g. a codec that needs the native library when it is not loaded.
+     */
+    public static CompressionCodec codec(Configuration conf, String name) {
+        CompressionCodec codec = new CompressionCodecFactory(conf).getCodecByName(name);
+        if (codec == null) {
+            throw new IllegalArgumentException("Unknown codec " + name + ", not one of "
+                    + CompressionCodecFactory.getCodecClasses(conf));
+        }
+        try {
+            codec.getCompressorType();
+        } catch (RuntimeException | UnsatisfiedLinkError e) {
+            throw new IllegalArgumentException("Codec " + name + " is not usable: " + e.getMessage(), e);
+        }
+        return codec;
+    }
+
+    /** Applies the options to a configured job; called last in each {@code createJob}. */
+    public static void configure(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        String output = conf.getTrimmed(CODEC);
+        String map = conf.getTrimmed(MAP_CODEC, output);
+        if (map != null) {
+            boolean compress = !map.equals(NONE);
+            conf.setBoolean(MRJobConfig.MAP_OUTPUT_COMPRESS, compress);
+            if (compress) {
+                CompressionCodec codec = codec(conf, map);
+                // spills take a pooled compressor; without one they are written raw and fail to read back
+                if (codec.getCompressorType() == null) {
+                    throw new IllegalArgumentException("Codec " + map + " cannot compress map output without the native library, set "
+                            + MAP_CODEC);
+                }
+                conf.setClass(MRJobConfig.MAP_OUTPUT_COMPRESS_CODEC, codec.getClass(), CompressionCodec.class);
+            }
+        }
+        if (output != null) {
+            boolean compress = !output.equals(NONE);
+            FileOutputFormat.setCompressOutput(job, compress);
+            if (compress) {
+                FileOutputFormat.setOutputCompressorClass(job, codec(conf, output).getClass());
+                // for SequenceFile outputs; text outputs compress as one stream anyway
+                conf.set(FileOutputFormat.COMPRESS_TYPE, SequenceFile.CompressionType.BLOCK.name());
+            }
+        }
+        String format = conf.getTrimmed(TEXT_INPUT_FORMAT);
+        try {
+            if (format != null && job.getInputFormatClass() == TextInputFormat.class) {
+                job.setInputFormatClass(conf.getClassByName(format).asSubclass(InputFormat.class));
+            }
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Cannot load " + TEXT_INPUT_FORMAT + " " + format, e);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Model selection for {@link Linear} in one pass over the data: k-fold cross-validated RMSE and
+ * R^2 of every feature subset ({@code cv.subsets}) at every ridge strength ({@code cv.lambdas}).
+ * <p>
+ * Each row goes to a fold by the hash of the whole row (of its bytes, or of all its values for
+ * binary input), so the folds do not depend on the subsets asked for, and repeated rows land in
+ * the same fold and cannot leak from training into validation; {@code cv.seed} reshuffles them. The mappers keep one {@link NormalEquations}
+ * per fold over the union of the requested features; a subset's sums are a sub-matrix of
+ * those, so adding subsets costs nothing in the scan. The single reducer merges the folds and
+ * solves every (subset, lambda, fold) on {@code cv.threads} threads: trained on the other
+ * folds, scored on the held-out one. The output is one line per (subset, lambda), best first.
+ * Input is the same as {@link Linear}'s, including {@code linear.input} and
+ * {@code linear.target}; feature indices are in the same layout.
+ *
+ * @author antonio
+ */
+public class CrossValidation {
+
+    public static final String FOLDS = "cv.folds";
+    /** Feature subsets separated by {@code ;}, each a comma separated list of column indices. */
+    public static final String SUBSETS = "cv.subsets";
+    /** Ridge strengths, on the standardised features; 0 is OLS. */
+    public static final String LAMBDAS = "cv.lambdas";
+    public static final String SEED = "cv.seed";
+    public static final String THREADS = "cv.threads";
+
+    public static final String HEADER = "FEATURES,LAMBDA,ROWS,CV_RMSE,CV_R2,TRAIN_R2";
+
+    public enum Counters { ROWS, SKIPPED_ROWS }
+
+    /** The requested subsets, as columns. */
+    static int[][] subsets(Configuration conf) {
+        String value = conf.get(SUBSETS);
+        if (value == null) {
+            return new int[][] {Linear.featureColumns(conf)};
+        }
+        String[] lists = value.split(";");
+        int[][] subsets = new int[lists.length][];
+        for (int s = 0; s < lists.length; s++) {
+            String[] columns = lists[s].trim().split("\\s*,\\s*");
+            subsets[s] = new int[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                subsets[s][c] = Integer.parseInt(columns[c]);
+            }
+        }
+        return subsets;
+    }
+
+    /** The sorted union of the columns of all subsets; what the mappers accumulate. */
+    static int[] union(int[][] subsets) {
+        boolean[] used = new boolean[HouseRecordWritable.VECTOR_SIZE];
+        for (int[] subset : subsets) {
+            for (int column : subset) {
+                if (column >= used.length) {
+                    used = Arrays.copyOf(used, column + 1);
+                }
+                used[column] = true;
+            }
+        }
+        int[] union = new int[used.length];
+        int size = 0;
+        for (int column = 0; column < used.length; column++) {
+            if (used[column]) {
+                union[size++] = column;
+            }
+        }
+        return Arrays.copyOf(union, size);
+    }
+
+    static double[] lambdas(Configuration conf) {
+        String[] values = conf.getTrimmedStrings(LAMBDAS, "0");
+        double[] lambdas = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            lambdas[i] = Double.parseDouble(values[i]);
+            if (lambdas[i] < 0) {
+                throw new IllegalArgumentException(LAMBDAS + " must not be negative: " + values[i]);
+            }
+        }
+        return lambdas;
+    }
+
+    /** Per-fold sums of the rows of one split; shared by both mappers. */
+    static class FoldSums {
+        final NormalEquations[] folds;
+        final int[] columns;
+        final int target;
+        final double[] x;
+        final long seed;
+
+        FoldSums(Configuration conf) {
+            int k = conf.getInt(FOLDS, 5);
+            columns = union(subsets(conf));
+            target = conf.getInt(Linear.TARGET, 9);
+            seed = conf.getLong(SEED, 0);
+            x = new double[columns.length];
+            folds = new NormalEquations[k];
+            for (int f = 0; f < k; f++) {
+                folds[f] = new NormalEquations(columns.length);
+            }
+        }
+
+        /** Adds {@code x} with target {@code y} to the fold the hash of the whole row picks. */
+        void add(long row, double y) {
+            long hash = Murmur3.hash64(row ^ seed);
+            folds[(int) ((hash >>> 1) % folds.length)].add(x, y);
+        }
+
+        void write(Mapper<?, ?, IntWritable, NormalEquations>.Context context) throws IOException, InterruptedException {
+            IntWritable fold = new IntWritable();
+            for (int f = 0; f < folds.length; f++) {
+                if (folds[f].getN() > 0) {
+                    fold.set(f);
+                    context.write(fold, folds[f]);
+                }
+            }
+        }
+    }
+
+    public static class CsvMapper extends Mapper<LongWritable, Text, IntWritable, NormalEquations> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final long[] hash = new long[2];
+        private FoldSums sums;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            sums = new FoldSums(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            tokens.reset(value);
+            double y;
+            try {
+                for (int c = 0; c < sums.columns.length; c++) {
+                    sums.x[c] = tokens.parseDouble(sums.columns[c]);
+                }
+                y = tokens.parseDouble(sums.target);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.SKIPPED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            Murmur3.hash128(value.getBytes(), 0, value.getLength(), 0, hash);
+            sums.add(hash[1], y);
+            context.getCounter(Counters.ROWS).increment(1);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            sums.write(context);
+            metrics.close();
+        }
+    }
+
+    public static class RecordMapper extends Mapper<NullWritable, HouseRecordWritable, IntWritable, NormalEquations> {
+        private final double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        private FoldSums sums;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            sums = new FoldSums(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            value.toVector(vector);
+            for (int c = 0; c < sums.columns.length; c++) {
+                sums.x[c] = vector[sums.columns[c]];
+            }
+            long hash = 0;
+            for (double v : vector) {
+                hash = Murmur3.hash64(hash ^ Double.doubleToLongBits(v));
+            }
+            sums.add(hash, vector[sums.target]);
+            context.getCounter(Counters.ROWS).increment(1);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            sums.write(context);
+            metrics.close();
+        }
+    }
+
+    public static class MergeCombiner extends Reducer<IntWritable, NormalEquations, IntWritable, NormalEquations> {
+        private final NormalEquations sums = new NormalEquations();
+
+        public void reduce(IntWritable key, Iterable<NormalEquations> values, Context context) throws IOException, InterruptedException {
+            sums.reset(0);
+            for (NormalEquations partial : values) {
+                sums.merge(partial);
+            }
+            context.write(key, sums);
+        }
+    }
+
+    /** The cross-validated score of one (subset, lambda). */
+    static class Score {
+        final int[] subset;
+        final double lambda;
+        long rows;
+        double residuals;
+        double total;
+        double trainRSquared;
+
+        Score(int[] subset, double lambda) {
+            this.subset = subset;
+            this.lambda = lambda;
+        }
+
+        double rmse() {
+            return Math.sqrt(residuals / rows);
+        }
+
+        double rSquared() {
+            return 1 - residuals / total;
+        }
+    }
+
+    public static class SweepReducer extends Reducer<IntWritable, NormalEquations, Text, Text> {
+        private final Text empty = new Text("");
+        private NormalEquations[] folds;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            folds = new NormalEquations[context.getConfiguration().getInt(FOLDS, 5)];
+            metrics = new TaskMetrics(context);
+        }
+
+        public void reduce(IntWritable key, Iterable<NormalEquations> values, Context context) {
+            metrics.next();
+            NormalEquations sums = new NormalEquations();
+            for (NormalEquations partial : values) {
+                sums.merge(partial);
+            }
+            folds[key.get()] = sums;
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            List<Score> scores = sweep(folds, subsets(conf), lambdas(conf),
+                    conf.getInt(THREADS, Runtime.getRuntime().availableProcessors()));
+            context.write(new Text(HEADER), empty);
+            for (Score score : scores) {
+                StringBuilder line = new StringBuilder();
+                for (int c = 0; c < score.subset.length; c++) {
+                    line.append(c > 0 ? " " : "").append(score.subset[c]);
+                }
+                line.append(',').append(score.lambda).append(',').append(score.rows).append(',').append(score.rmse())
+                        .append(',').append(score.rSquared()).append(',').append(score.trainRSquared);
+                context.write(new Text(line.toString()), empty);
+                metrics.output();
+            }
+            metrics.close();
+        }
+    }
+
+    /**
+     * Fits every (subset, lambda) on each fold's complement and scores it on the fold, in
+     * parallel; returns the scores by increasing cross-validated RMSE. Folds with no rows
+     * are left out.
+     */
+    static List<Score> sweep(NormalEquations[] folds, int[][] subsets, double[] lambdas, int threads) throws IOException {
+        int[] union = union(subsets);
+        final List<NormalEquations> used = new ArrayList<NormalEquations>();
+        NormalEquations all = new NormalEquations(union.length);
+        for (NormalEquations fold : folds) {
+            if (fold != null && fold.getN() > 0) {
+                used.add(fold);
+                all.merge(fold);
+            }
+        }
+        if (used.size() < 2) {
+            throw new IOException("Cross-validation needs rows in at least 2 folds, got " + used.size());
+        }
+        final List<Score> scores = new ArrayList<Score>();
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int[] subset : subsets) {
+            final int[] columns = new int[subset.length];
+            for (int c = 0; c < subset.length; c++) {
+                columns[c] = Arrays.binarySearch(union, subset[c]);
+            }
+            final NormalEquations everything = all.subset(columns);
+            for (final double lambda : lambdas) {
+                final Score score = new Score(subset, lambda);
+                scores.add(score);
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        score.trainRSquared = everything.rSquared(everything.solve(lambda));
+                        return null;
+                    }
+                });
+                for (final NormalEquations fold : used) {
+                    tasks.add(new Callable<Void>() {
+                        public Void call() {
+                            NormalEquations train = new NormalEquations(columns.length);
+                            for (NormalEquations other : used) {
+                                if (other != fold) {
+                                    train.merge(other.subset(columns));
+                                }
+                            }
+                            NormalEquations held = fold.subset(columns);
+                            double rss = held.residualSumOfSquares(train.solve(lambda));
+                            synchronized (score) {
+                                score.rows += held.getN();
+                                score.residuals += rss;
+                            }
+                            return null;
+                        }
+                    });
+                }
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            for (Future<Void> done : pool.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fitting", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Fitting failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        double total = all.totalSumOfSquares();
+        for (Score score : scores) {
+            score.total = total;
+        }
+        Collections.sort(scores, new Comparator<Score>() {
+            public int compare(Score a, Score b) {
+                return Double.compare(a.rmse(), b.rmse());
+            }
+        });
+        return scores;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: crossvalidate [-D cv.subsets=<i,j;...>] [-D cv.lambdas=<l,...>] <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        if (conf.getInt(FOLDS, 5) < 2) {
+            throw new IllegalArgumentException(FOLDS + " must be at least 2");
+        }
+        union(subsets(conf));
+        lambdas(conf);
+        Job job = Job.getInstance(conf, "Cross-validated model sweep");
+        job.setJarByClass(CrossValidation.class);
+        if ("binary".equals(conf.get(Linear.INPUT))) {
+            job.setMapperClass(RecordMapper.class);
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        } else {
+            job.setMapperClass(CsvMapper.class);
+        }
+        job.setCombinerClass(MergeCombiner.class);
+        job.setReducerClass(SweepReducer.class);
+        job.setNumReduceTasks(1);
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(NormalEquations.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+}
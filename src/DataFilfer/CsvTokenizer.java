@@ -0,0 +1,258 @@
+package DataFilfer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Quote-aware field splitter that works on the UTF-8 bytes of a {@link Text}.
+ * It gives the same fields as {@code line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1)},
+ * unbalanced quotes included, without converting the line to a String or allocating per record.
+ * {@code TokenizerCheck} in the bench module compares the two.
+ * Field boundaries are kept in reused offset arrays; a field keeps its quotes.
+ *
+ * @author antonio
+ */
+public final class CsvTokenizer {
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final byte delimiter;
+    private byte[] bytes;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+
+    public CsvTokenizer() {
+        this((byte) ',');
+    }
+
+    public CsvTokenizer(byte delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    public CsvTokenizer reset(Text line) {
+        return reset(line.getBytes(), 0, line.getLength());
+    }
+
+    public CsvTokenizer reset(byte[] buffer, int offset, int length) {
+        bytes = buffer;
+        count = 0;
+        int start = offset;
+        int end = offset + length;
+        // the regex splits where an even number of quotes follows; with an odd number in the
+        // row, that is where an odd number precedes, so the scan starts inside quotes
+        boolean quoted = false;
+        for (int i = offset; i < end; i++) {
+            if (buffer[i] == '"') {
+                quoted = !quoted;
+            }
+        }
+        for (int i = offset; i < end; i++) {
+            byte b = buffer[i];
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == delimiter && !quoted) {
+                add(start, i);
+                start = i + 1;
+            }
+        }
+        add(start, end);
+        return this;
+    }
+
+    private void add(int start, int end) {
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+
+    /** Number of fields in the current line; an empty line has one empty field. */
+    public int size() {
+        return count;
+    }
+
+    /** The buffer the offsets refer to. */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public int start(int field) {
+        check(field);
+        return starts[field];
+    }
+
+    public int end(int field) {
+        check(field);
+        return ends[field];
+    }
+
+    public int length(int field) {
+        check(field);
+        return ends[field] - starts[field];
+    }
+
+    private void check(int field) {
+        if (field < 0 || field >= count) {
+            throw new ArrayIndexOutOfBoundsException(field);
+        }
+    }
+
+    /** True when the field is empty or whitespace only, like {@code word.trim().isEmpty()}. */
+    public boolean isBlank(int field) {
+        check(field);
+        for (int i = starts[field]; i < ends[field]; i++) {
+            if ((bytes[i] & 0xff) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** True when the field is exactly the given ASCII text. */
+    public boolean fieldEquals(int field, byte[] ascii) {
+        check(field);
+        int start = starts[field];
+        if (ends[field] - start != ascii.length) {
+            return false;
+        }
+        for (int i = 0; i < ascii.length; i++) {
+            if (bytes[start + i] != ascii[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Appends the raw bytes of a field, quotes included. */
+    public void appendTo(int field, Text out) {
+        check(field);
+        out.append(bytes, starts[field], ends[field] - starts[field]);
+    }
+
+    public String toString(int field) {
+        check(field);
+        return new String(bytes, starts[field], ends[field] - starts[field], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Same result as {@link Double#parseDouble(String)} on the field. Plain decimals with up to
+     * 15 significant digits and a small exponent are converted exactly from the bytes (one
+     * correctly rounded multiply or divide); anything else goes through {@link Double#parseDouble}.
+     */
+    public double parseDouble(int field) {
+        check(field);
+        int i = starts[field];
+        int end = ends[field];
+        while (i < end && (bytes[i] & 0xff) <= ' ') {
+            i++;
+        }
+        while (end > i && (bytes[end - 1] & 0xff) <= ' ') {
+            end--;
+        }
+        int p = i;
+        boolean negative = false;
+        if (p < end && (bytes[p] == '-' || bytes[p] == '+')) {
+            negative = bytes[p] == '-';
+            p++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        for (; p < end; p++) {
+            byte b = bytes[p];
+            if (b >= '0' && b <= '9') {
+                seenDigit = true;
+                if (mantissa != 0 || b != '0') {
+                    digits++;
+                }
+                if (digits > 15) {
+                    return slowDouble(field);
+                }
+                mantissa = mantissa * 10 + (b - '0');
+                if (seenPoint) {
+                    scale--;
+                }
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+        }
+        if (!seenDigit) {
+            return slowDouble(field);
+        }
+        if (p < end) {
+            if (bytes[p] != 'e' && bytes[p] != 'E') {
+                return slowDouble(field);
+            }
+            p++;
+            boolean negativeExponent = false;
+            if (p < end && (bytes[p] == '-' || bytes[p] == '+')) {
+                negativeExponent = bytes[p] == '-';
+                p++;
+            }
+            if (p == end || end - p > 3) {
+                return slowDouble(field);
+            }
+            int exponent = 0;
+            for (; p < end; p++) {
+                byte b = bytes[p];
+                if (b < '0' || b > '9') {
+                    return slowDouble(field);
+                }
+                exponent = exponent * 10 + (b - '0');
+            }
+            scale += negativeExponent ? -exponent : exponent;
+        }
+        double value;
+        if (scale == 0) {
+            value = mantissa;
+        } else if (scale < 0 && scale >= -22) {
+            value = mantissa / POWERS_OF_TEN[-scale];
+        } else if (scale > 0 && scale <= 22) {
+            value = mantissa * POWERS_OF_TEN[scale];
+        } else {
+            return slowDouble(field);
+        }
+        return negative ? -value : value;
+    }
+
+    private double slowDouble(int field) {
+        return Double.parseDouble(toString(field));
+    }
+
+    /** Same result as {@link Integer#parseInt(String)} on the field (no trimming). */
+    public int parseInt(int field) {
+        check(field);
+        int p = starts[field];
+        int end = ends[field];
+        boolean negative = false;
+        if (p < end && (bytes[p] == '-' || bytes[p] == '+')) {
+            negative = bytes[p] == '-';
+            p++;
+        }
+        if (p == end || end - p > 9) {
+            return Integer.parseInt(toString(field));
+        }
+        int value = 0;
+        for (; p < end; p++) {
+            byte b = bytes[p];
+            if (b < '0' || b > '9') {
+                return Integer.parseInt(toString(field));
+            }
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+}
@@ -0,0 +1,327 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MultipleOutputs;
+import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Per-column data-quality report in one pass: for every column the number of cells, empty
+ * cells and parse failures, min/max/mean/variance (Welford), approximate quantiles and an
+ * approximate distinct count. Each mapper profiles its split into one {@link ColumnProfile}
+ * per column and writes them from {@code cleanup()}; the combiner and the single reducer merge
+ * them, so the output is one line per column whatever the input size.
+ * With {@code -D quality.locations=true} the byte offset and column of every empty and
+ * unparseable cell also go to the {@code empty-m-*} and {@code unparsed-m-*} side outputs.
+ * With {@code -D quality.input=binary} the input is {@link HouseRecordWritable}s and the report
+ * uses the cleaned column names; only ADDRESS can be empty in such records, and nothing is
+ * left unparseable.
+ *
+ * @author antonio
+ */
+public class DataQuality {
+
+    /** Column names, in input order. */
+    public static final String COLUMNS = "quality.columns";
+    /** Indices of the columns that should hold numbers; by default all but POSTED_BY, BHK_OR_RK and ADDRESS. */
+    public static final String NUMERIC = "quality.numeric";
+    public static final String LOCATIONS = "quality.locations";
+    /** {@code binary} to read {@link HouseRecordWritable}s instead of CSV. */
+    public static final String INPUT = "quality.input";
+
+    public static final String EMPTY_OUTPUT = "empty";
+    public static final String UNPARSED_OUTPUT = "unparsed";
+
+    static final String[] RAW_COLUMNS = {"POSTED_BY", "UNDER_CONSTRUCTION", "RERA", "BHK_NO.", "BHK_OR_RK",
+            "SQUARE_FT", "READY_TO_MOVE", "RESALE", "ADDRESS", "LONGITUDE", "LATITUDE", "TARGET(PRICE_IN_LACS)"};
+
+    static final String[] CLEANED_COLUMNS = FeatureTitle.HEADER.split(",");
+
+    /** The columns that hold text in both layouts. */
+    private static final String[] TEXT_COLUMNS = {"POSTED_BY", "BHK_OR_RK", "ADDRESS"};
+
+    public enum Counters { ROWS, HEADER_ROWS, WRONG_FIELD_COUNT }
+
+    public static class ProfileMapper extends Mapper<LongWritable, Text, IntWritable, ColumnProfile> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final long[] hash = new long[2];
+        private final Text offset = new Text();
+        private final Text column = new Text();
+        private ColumnProfile[] profiles = new ColumnProfile[0];
+        private boolean[] numeric;
+        private int expected;
+        private byte[] firstColumn;
+        private MultipleOutputs<IntWritable, ColumnProfile> outputs;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+            Configuration conf = context.getConfiguration();
+            String[] names = conf.getTrimmedStrings(COLUMNS, RAW_COLUMNS);
+            expected = names.length;
+            firstColumn = names[0].getBytes(StandardCharsets.UTF_8);
+            numeric = numericColumns(conf, names);
+            if (conf.getBoolean(LOCATIONS, false)) {
+                outputs = new MultipleOutputs<IntWritable, ColumnProfile>(context);
+            }
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            tokens.reset(value);
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            if (key.get() == 0 && tokens.fieldEquals(0, firstColumn)) {
+                context.getCounter(Counters.HEADER_ROWS).increment(1);
+                return;
+            }
+            context.getCounter(Counters.ROWS).increment(1);
+            boolean malformed = tokens.size() != expected;
+            boolean empty = false;
+            if (malformed) {
+                context.getCounter(Counters.WRONG_FIELD_COUNT).increment(1);
+            }
+            if (tokens.size() > profiles.length) {
+                int old = profiles.length;
+                profiles = Arrays.copyOf(profiles, tokens.size());
+                for (int i = old; i < profiles.length; i++) {
+                    profiles[i] = new ColumnProfile();
+                }
+            }
+            for (int i = 0; i < tokens.size(); i++) {
+                ColumnProfile profile = profiles[i];
+                if (tokens.isBlank(i)) {
+                    profile.addEmpty();
+                    locate(EMPTY_OUTPUT, key, i);
+                    empty = true;
+                    continue;
+                }
+                Murmur3.hash128(tokens.bytes(), tokens.start(i), tokens.length(i), 0, hash);
+                profile.addCell(hash[0]);
+                if (i < expected && numeric[i]) {
+                    try {
+                        profile.addValue(tokens.parseDouble(i));
+                    } catch (NumberFormatException e) {
+                        profile.addParseFailure();
+                        locate(UNPARSED_OUTPUT, key, i);
+                        malformed = true;
+                    }
+                }
+            }
+            if (malformed) {
+                metrics.malformed();
+            }
+            if (empty) {
+                metrics.emptyCells();
+            }
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        private void locate(String output, LongWritable key, int i) throws IOException, InterruptedException {
+            if (outputs != null) {
+                offset.set(String.valueOf(key.get()));
+                column.set(String.valueOf(i));
+                outputs.write(output, offset, column);
+            }
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            IntWritable index = new IntWritable();
+            for (int i = 0; i < profiles.length; i++) {
+                index.set(i);
+                context.write(index, profiles[i]);
+            }
+            if (outputs != null) {
+                outputs.close();
+            }
+            metrics.close();
+        }
+    }
+
+    public static class RecordMapper extends Mapper<NullWritable, HouseRecordWritable, IntWritable, ColumnProfile> {
+        /** Position of ADDRESS in {@link #CLEANED_COLUMNS}; it is not part of the vector. */
+        private static final int ADDRESS = 7;
+
+        private final ColumnProfile[] profiles = new ColumnProfile[CLEANED_COLUMNS.length];
+        private final double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        private final long[] hash = new long[2];
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            for (int i = 0; i < profiles.length; i++) {
+                profiles[i] = new ColumnProfile();
+            }
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            context.getCounter(Counters.ROWS).increment(1);
+            value.toVector(vector);
+            for (int i = 0; i < profiles.length; i++) {
+                if (i == ADDRESS) {
+                    Text address = value.getAddress();
+                    if (isBlank(address)) {
+                        profiles[i].addEmpty();
+                        metrics.emptyCells();
+                        continue;
+                    }
+                    Murmur3.hash128(address.getBytes(), 0, address.getLength(), 0, hash);
+                    profiles[i].addCell(hash[0]);
+                    continue;
+                }
+                double v = vector[i < ADDRESS ? i : i - 1];
+                profiles[i].addCell(Murmur3.hash64(Double.doubleToLongBits(v)));
+                if (i > 0) {
+                    profiles[i].addValue(v);
+                }
+            }
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            IntWritable index = new IntWritable();
+            for (int i = 0; i < profiles.length; i++) {
+                index.set(i);
+                context.write(index, profiles[i]);
+            }
+            metrics.close();
+        }
+
+        private static boolean isBlank(Text text) {
+            byte[] bytes = text.getBytes();
+            for (int i = 0; i < text.getLength(); i++) {
+                if ((bytes[i] & 0xff) > ' ') {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    public static class MergeCombiner extends Reducer<IntWritable, ColumnProfile, IntWritable, ColumnProfile> {
+        private final ColumnProfile merged = new ColumnProfile();
+
+        public void reduce(IntWritable key, Iterable<ColumnProfile> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            for (ColumnProfile value : values) {
+                merged.merge(value);
+            }
+            context.write(key, merged);
+        }
+    }
+
+    public static class ReportReducer extends Reducer<IntWritable, ColumnProfile, Text, Text> {
+        private String[] names;
+        private final ColumnProfile merged = new ColumnProfile();
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            names = context.getConfiguration().getTrimmedStrings(COLUMNS, RAW_COLUMNS);
+            metrics = new TaskMetrics(context);
+        }
+
+        public void reduce(IntWritable key, Iterable<ColumnProfile> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            merged.clear();
+            for (ColumnProfile value : values) {
+                merged.merge(value);
+            }
+            String name = key.get() < names.length ? names[key.get()] : "column_" + key.get();
+            Text report = new Text(merged.toReport());
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(new Text(name), report);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: quality <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /**
+     * Which of the columns {@code names} should hold numbers: those {@code quality.numeric}
+     * lists, or every column but the text ones when it is not set.
+     */
+    static boolean[] numericColumns(Configuration conf, String[] names) {
+        boolean[] numeric = new boolean[names.length];
+        String[] indices = conf.getTrimmedStrings(NUMERIC);
+        if (indices.length == 0) {
+            for (int i = 0; i < names.length; i++) {
+                numeric[i] = !Arrays.asList(TEXT_COLUMNS).contains(names[i]);
+            }
+            return numeric;
+        }
+        for (String index : indices) {
+            int i;
+            try {
+                i = Integer.parseInt(index);
+            } catch (NumberFormatException e) {
+                i = -1;
+            }
+            if (i < 0 || i >= names.length) {
+                throw new IllegalArgumentException(NUMERIC + " holds " + index + ", which is not an index of the "
+                        + names.length + " columns of " + COLUMNS);
+            }
+            numeric[i] = true;
+        }
+        return numeric;
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        boolean binary = "binary".equals(conf.get(INPUT));
+        if (binary && conf.get(COLUMNS) == null) {
+            conf.setStrings(COLUMNS, CLEANED_COLUMNS);
+        }
+        if (!binary) {
+            numericColumns(conf, conf.getTrimmedStrings(COLUMNS, RAW_COLUMNS));
+        }
+        Job job = Job.getInstance(conf, "Data quality report");
+        job.setJarByClass(DataQuality.class);
+        if (binary) {
+            job.setMapperClass(RecordMapper.class);
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        } else {
+            job.setMapperClass(ProfileMapper.class);
+        }
+        job.setCombinerClass(MergeCombiner.class);
+        job.setReducerClass(ReportReducer.class);
+        job.setNumReduceTasks(1);
+        job.setMapOutputKeyClass(IntWritable.class);
+        job.setMapOutputValueClass(ColumnProfile.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        if (conf.getBoolean(LOCATIONS, false)) {
+            MultipleOutputs.addNamedOutput(job, EMPTY_OUTPUT, TextOutputFormat.class, Text.class, Text.class);
+            MultipleOutputs.addNamedOutput(job, UNPARSED_OUTPUT, TextOutputFormat.class, Text.class, Text.class);
+        }
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+}
@@ -9,7 +9,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
@@ -20,53 +19,167 @@ import org.apache.hadoop.util.GenericOptionsParser;
 public class DublicateChecker {
 
     public static class FilterMapper extends Mapper<Object, Text, Text, IntWritable>{
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final IntWritable partial = new IntWritable();
+        private InMapperCounts counts;
+        private InMapperCounts.Sink sink;
+        private TaskMetrics metrics;
+        protected void setup(final Context context) {
+                counts = new InMapperCounts(context.getConfiguration());
+                metrics = new TaskMetrics(context);
+                sink = new InMapperCounts.Sink() {
+                    public void emit(Text row, int count) throws IOException, InterruptedException {
+                        partial.set(count);
+                        context.write(row, partial);
+                    }
+                };
+            }
         public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
                 //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
-                String line = value.toString();
-                String[] words = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-                String wordOut = words[0] + "," + words[1] + "," + words[2] + "," + words[3] + "," + words[4] + "," + words[5] + "," + words[6] +
-                        "," + words[7] + "," + words[8] + "," + words[9] + "," + words[10] + "," + words[11] ;
-                context.write(new Text(wordOut), new IntWritable(1));
+                metrics.next();
+                tokens.reset(value);
+                metrics.phase(TaskMetrics.Phase.PARSE);
+                // the first 12 fields, i.e. the line up to the end of TARGET(PRICE_IN_LACS)
+                counts.add(tokens.bytes(), 0, tokens.end(11), 1, sink);
+                metrics.phase(TaskMetrics.Phase.CONVERT);
+            }
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+                counts.flush(sink);
+                context.getCounter(InMapperCounts.Counters.FLUSHES).increment(counts.getFlushes());
+                metrics.close();
             }
         }
 
+    /** Sums partial counts without the {@code >= 2} filter, which is only valid on the full total. */
+    public static class PartialSumCombiner extends Reducer<Text,IntWritable,Text, IntWritable> {
+       private IntWritable result = new IntWritable();
+       public void reduce(Text key, Iterable<IntWritable> values,
+                          Context context
+                          ) throws IOException, InterruptedException {
+         int sum = 0;
+         for (IntWritable val : values) {
+           sum += val.get();
+         }
+         result.set(sum);
+         context.write(key, result);
+       }
+     }
+
     public static class IntSumReducer extends Reducer<Text,IntWritable,Text, IntWritable> {
        private IntWritable result = new IntWritable();
+       private TaskMetrics metrics;
+       protected void setup(Context context) {
+         metrics = new TaskMetrics(context);
+       }
        public void reduce(Text key, Iterable<IntWritable> values,
                           Context context
                           ) throws IOException, InterruptedException {
+         metrics.next();
          int sum = 0;
          for (IntWritable val : values) {
            sum += val.get();
          }
          result.set(sum);
+         metrics.phase(TaskMetrics.Phase.CONVERT);
          if(sum >= 2){
              context.write(key, result);
+             metrics.phase(TaskMetrics.Phase.WRITE);
+             metrics.duplicateGroup();
+             metrics.output();
          }
        }
+       protected void cleanup(Context context) {
+         metrics.close();
+       }
+     }
+
+    /** Fingerprint mode: keys on the first 12 fields, like {@link FilterMapper}. */
+    public static class FingerprintMapper extends Mapper<Object, Text, RecordFingerprint, LineCount>{
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final RecordFingerprint fingerprint = new RecordFingerprint();
+        private final LineCount partial = new LineCount();
+        private InMapperCounts counts;
+        private InMapperCounts.Sink sink;
+        private TaskMetrics metrics;
+        protected void setup(final Context context) {
+                counts = new InMapperCounts(context.getConfiguration());
+                metrics = new TaskMetrics(context);
+                sink = new InMapperCounts.Sink() {
+                    public void emit(Text row, int count) throws IOException, InterruptedException {
+                        fingerprint.set(row.getBytes(), 0, row.getLength());
+                        context.write(fingerprint, partial.set(row, count));
+                    }
+                };
+            }
+        public void map(Object key, Text value, Context context) throws IOException, InterruptedException {
+                metrics.next();
+                tokens.reset(value);
+                metrics.phase(TaskMetrics.Phase.PARSE);
+                counts.add(tokens.bytes(), 0, tokens.end(11), 1, sink);
+                metrics.phase(TaskMetrics.Phase.CONVERT);
+            }
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+                counts.flush(sink);
+                context.getCounter(InMapperCounts.Counters.FLUSHES).increment(counts.getFlushes());
+                metrics.close();
+            }
+        }
+
+    public static class FingerprintReducer extends Reducer<RecordFingerprint,LineCount,Text, IntWritable> {
+       private IntWritable result = new IntWritable();
+       private TaskMetrics metrics;
+       protected void setup(Context context) {
+         metrics = new TaskMetrics(context);
+       }
+       public void reduce(RecordFingerprint key, Iterable<LineCount> values,
+                          Context context
+                          ) throws IOException, InterruptedException {
+         metrics.next();
+         for (LineCount row : FingerprintDedup.distinct(values)) {
+             if(row.getCount() >= 2){
+                 result.set(row.getCount());
+                 context.write(row.getLine(), result);
+                 metrics.duplicateGroup();
+                 metrics.output();
+             }
+         }
+         metrics.phase(TaskMetrics.Phase.WRITE);
+       }
+       protected void cleanup(Context context) {
+         metrics.close();
+       }
      }
 
         public static void main(String[] args) throws Exception {
             Configuration conf = new Configuration();
             String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
             if (otherArgs.length < 2) {
-                System.err.println("Usage: wordcount <in> [<in>...] <out>");
+                System.err.println("Usage: duplicates <in> [<in>...] <out>");
                 System.exit(2);
             }
+            System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+        }
+
+        /** Configures the job; {@code paths} are the input paths followed by the output path. */
+        public static Job createJob(Configuration conf, String[] paths) throws IOException {
             Job job = Job.getInstance(conf, "");
             job.setJarByClass(DublicateChecker.class);
-            job.setMapperClass(FilterMapper.class);
-            job.setNumReduceTasks(1);
-            job.setCombinerClass(IntSumReducer.class);
-            job.setReducerClass(IntSumReducer.class);
+            if (FingerprintDedup.enabled(job)) {
+                FingerprintDedup.configure(job);
+                job.setMapperClass(FingerprintMapper.class);
+                job.setReducerClass(FingerprintReducer.class);
+            } else {
+                job.setMapperClass(FilterMapper.class);
+                job.setNumReduceTasks(1);
+                job.setCombinerClass(PartialSumCombiner.class);
+                job.setReducerClass(IntSumReducer.class);
+            }
 
             job.setOutputKeyClass(Text.class);
             job.setOutputValueClass(IntWritable.class);
-            for (int i = 0; i < otherArgs.length - 1; ++i) {
-                FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-            }
-            FileOutputFormat.setOutputPath(job,
-                    new Path(otherArgs[otherArgs.length - 1]));
-            System.exit(job.waitForCompletion(true) ? 0 : 1);
+            CityPartitioning.addInputPaths(job, paths);
+            FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+            Compression.configure(job);
+            return job;
         }
 }
@@ -9,7 +9,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
@@ -18,28 +17,59 @@ import org.apache.hadoop.util.GenericOptionsParser;
  *
  */
 public class DublicateCounter {
+    /** Sums its split in a local and writes a single partial sum from {@code cleanup()}. */
     public static class FilterMapper extends Mapper<LongWritable, Text, Text, IntWritable>{
+        private final CsvTokenizer tokens = new CsvTokenizer((byte) '\t');
+        private int replicas = 0;
+        private boolean seen = false;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
+
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
             //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
-            String line = value.toString();
-            String[] words = line.split("\t");
-            int replication = Integer.parseInt(words[1]) - 1;
-            context.write(new Text("Number of replicas is:"), new IntWritable(replication));
+            metrics.next();
+            tokens.reset(value);
+            replicas += tokens.parseInt(1) - 1;
+            seen = true;
+            metrics.phase(TaskMetrics.Phase.PARSE);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (seen) {
+                context.write(new Text("Number of replicas is:"), new IntWritable(replicas));
+            }
+            metrics.close();
         }
     }
 
     public static class IntSumReducer extends Reducer<Text,IntWritable,Text, IntWritable> {
         private IntWritable result = new IntWritable();
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
 
         public void reduce(Text key, Iterable<IntWritable> values,
                            Context context
         ) throws IOException, InterruptedException {
+            metrics.next();
             int sum = 0;
             for (IntWritable val : values) {
                 sum += val.get();
             }
             result.set(sum);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
             context.write(key, result);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
         }
     }
 
@@ -47,9 +77,14 @@ public class DublicateCounter {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: wordcount <in> [<in>...] <out>");
+            System.err.println("Usage: replicas <in> [<in>...] <out>");
             System.exit(2);
         }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
         Job job = Job.getInstance(conf, "");
         job.setJarByClass(DublicateCounter.class);
         job.setMapperClass(FilterMapper.class);
@@ -59,12 +94,10 @@ public class DublicateCounter {
 
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(IntWritable.class);
-        for (int i = 0; i < otherArgs.length - 1; ++i) {
-            FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-        }
-        FileOutputFormat.setOutputPath(job,
-                new Path(otherArgs[otherArgs.length - 1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
     }
 
 }
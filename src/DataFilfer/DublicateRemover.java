@@ -3,7 +3,6 @@ package DataFilfer;
 
 import java.io.IOException;
 
-import com.google.protobuf.Internal;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.IntWritable;
@@ -13,7 +12,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
@@ -23,17 +21,90 @@ import org.apache.hadoop.util.GenericOptionsParser;
  */
 public class DublicateRemover {
     public static class FilterMapper extends Mapper<LongWritable, Text, Text, Text> {
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
+
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
             //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
+            metrics.next();
             context.write(value, new Text("1"));
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
         }
     }
 
     public static class IntSumReducer extends Reducer<Text,Text,Text, Text> {
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
+
         public void reduce(Text key, Iterable<Text> values,
                            Context context
         ) throws IOException, InterruptedException {
+            metrics.next();
             context.write(key, new Text(""));
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    /** Fingerprint mode: the whole row is fingerprinted and travels once per map as the value. */
+    public static class FingerprintMapper extends Mapper<LongWritable, Text, RecordFingerprint, LineCount> {
+        private final RecordFingerprint fingerprint = new RecordFingerprint();
+        private final LineCount row = new LineCount();
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            fingerprint.set(value.getBytes(), 0, value.getLength());
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(fingerprint, row.set(value, 1));
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static class FingerprintReducer extends Reducer<RecordFingerprint, LineCount, Text, Text> {
+        private final Text empty = new Text("");
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
+
+        public void reduce(RecordFingerprint key, Iterable<LineCount> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            for (LineCount row : FingerprintDedup.distinct(values)) {
+                context.write(row.getLine(), empty);
+                if (row.getCount() > 1) {
+                    metrics.duplicateGroup();
+                }
+                metrics.output();
+            }
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
         }
     }
 
@@ -41,22 +112,31 @@ public class DublicateRemover {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: wordcount <in> [<in>...] <out>");
+            System.err.println("Usage: dedup <in> [<in>...] <out>");
             System.exit(2);
         }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
         Job job = Job.getInstance(conf, "Removing the feature BHK");
         job.setJarByClass(DublicateRemover.class);
-        job.setMapperClass(FilterMapper.class);
-        job.setCombinerClass(IntSumReducer.class);
-        job.setReducerClass(IntSumReducer.class);
-        job.setNumReduceTasks(1);
+        if (FingerprintDedup.enabled(job)) {
+            FingerprintDedup.configure(job);
+            job.setMapperClass(FingerprintMapper.class);
+            job.setReducerClass(FingerprintReducer.class);
+        } else {
+            job.setMapperClass(FilterMapper.class);
+            job.setCombinerClass(IntSumReducer.class);
+            job.setReducerClass(IntSumReducer.class);
+            job.setNumReduceTasks(1);
+        }
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
-        for (int i = 0; i < otherArgs.length - 1; ++i) {
-            FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-        }
-        FileOutputFormat.setOutputPath(job,
-                new Path(otherArgs[otherArgs.length - 1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
     }
 }
@@ -8,7 +8,6 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
 import org.apache.hadoop.mapreduce.Reducer;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
@@ -16,19 +15,34 @@ import java.io.IOException;
 
 public class EmptyFeatues {
     public static class FilterMapper extends Mapper<LongWritable, Text, Text, Text> {
-        int lines=0;
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final Text row = new Text();
+        private final Text column = new Text();
+        private TaskMetrics metrics;
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
             //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
-            String line = value.toString();
-            String[] words = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-            int i=0;
-            lines++;
-            while (i<words.length){
-                if(words[i].trim().isEmpty()){
-                    context.write(new Text(String.valueOf(lines)), new Text(String.valueOf(i)) );
-                }i++;
+            metrics.next();
+            tokens.reset(value);
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            boolean empty = false;
+            for (int i = 0; i < tokens.size(); i++) {
+                if (tokens.isBlank(i)) {
+                    // keyed by byte offset, which identifies the row whatever split it is in
+                    row.set(String.valueOf(key.get()));
+                    column.set(String.valueOf(i));
+                    context.write(row, column);
+                    metrics.output();
+                    empty = true;
+                }
                 //"Vikhroli (East),Lalitpur" 5191
             }
+            if (empty) {
+                metrics.emptyCells();
+            }
+            metrics.phase(TaskMetrics.Phase.WRITE);
 
            /* if(value.toString().equals("POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)")){
             }else{
@@ -42,15 +56,23 @@ public class EmptyFeatues {
             String[] words = line.split("\t");
             int replication = Integer.parseInt(words[1]) - 1;*/
         }
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
     }
 
     public static void main(String[] args) throws Exception {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: wordcount <in> [<in>...] <out>");
+            System.err.println("Usage: empty <in> [<in>...] <out>");
             System.exit(2);
         }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
         Job job = Job.getInstance(conf, "");
         job.setJarByClass(EmptyFeatues.class);
         job.setMapperClass(FilterMapper.class);
@@ -60,11 +82,9 @@ public class EmptyFeatues {
 
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
-        for (int i = 0; i < otherArgs.length - 1; ++i) {
-            FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-        }
-        FileOutputFormat.setOutputPath(job,
-                new Path(otherArgs[otherArgs.length - 1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
     }
 }
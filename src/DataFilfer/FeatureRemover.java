@@ -4,62 +4,103 @@ import java.io.IOException;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
-import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
 /**
+ * Drops BHK_OR_RK and converts SQUARE_FT to square metres and the price from lakh INR to GBP,
+ * as laid down by the job's {@link ProjectionPlan}. Map-only; the header of each input file is
+ * dropped and rows that do not parse are counted, not written.
+ *
  * @author antonio
  *
  */
 public class FeatureRemover {
+    public enum Counters { HEADER_ROWS, MALFORMED_ROWS }
+
     public static class FilterMapper extends Mapper<LongWritable, Text, Text, Text> {
-        int lines=0;
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final Text wordOut = new Text();
+        private final Text empty = new Text("");
+        private ProjectionPlan plan;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            plan = ProjectionPlan.compile(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
             //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
-            String line = value.toString();
-            String[] words = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-            if(lines == 29050){
-                //words[5] = "SQUARE_M";
-               // words[11] = "TARGET(PRICE_IN_GBP)";
-            }else{
-                Double GBP = (Double.parseDouble(words[11])/94.94)*100000;
-                Double m = Double.parseDouble(words[5])/10.7639104;
-                words[5] = m.toString();
-                words[11] = GBP.toString();
-                String wordOut = words[0] + "," + words[1] + "," + words[2] + "," + words[3] + "," + words[5] + "," + words[6] +
-                        "," + words[7] + "," + words[8] + "," + words[9] + "," + words[10] + "," + words[11] ;
-                context.write(new Text(wordOut), new Text(""));
-            }lines++;
+            metrics.next();
+            tokens.reset(value);
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            // whichever split starts the file holds the header
+            if (key.get() == 0 && plan.isHeader(tokens)) {
+                context.getCounter(Counters.HEADER_ROWS).increment(1);
+                return;
+            }
+            try {
+                plan.project(tokens, wordOut);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.MALFORMED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(wordOut, empty);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
 
+        protected void cleanup(Context context) {
+            metrics.close();
         }
     }
 
+    /** Square feet in a square metre. */
+    public static final double SQUARE_FEET_PER_M2 = 10.7639104;
+    /** Rupees per pound. */
+    public static final double INR_PER_GBP = 94.94;
+    /** Rupees in a lakh. */
+    public static final double INR_PER_LAKH = 100000;
+
+    public static double toSquareMetres(double squareFeet) {
+        return squareFeet/SQUARE_FEET_PER_M2;
+    }
+
+    public static double toGBP(double lakhs) {
+        return (lakhs/INR_PER_GBP)*INR_PER_LAKH;
+    }
+
     public static void main(String[] args) throws Exception {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: wordcount <in> [<in>...] <out>");
+            System.err.println("Usage: features <in> [<in>...] <out>");
             System.exit(2);
         }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
         Job job = Job.getInstance(conf, "Removing the feature BHK");
         job.setJarByClass(FeatureRemover.class);
+        ProjectionPlan.compile(conf);
         job.setMapperClass(FilterMapper.class);
         //job.setCombinerClass(IntSumReducer.class);
         //job.setReducerClass(IntSumReducer.class);
         job.setNumReduceTasks(0);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
-        for (int i = 0; i < otherArgs.length - 1; ++i) {
-            FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-        }
-        FileOutputFormat.setOutputPath(job,
-                new Path(otherArgs[otherArgs.length - 1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
     }
 }
@@ -6,22 +6,44 @@ import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
 
 import java.io.IOException;
 
 public class FeatureTitle {
+    /** Header of the cleaned dataset, i.e. the columns written by {@link FeatureRemover} by default. */
+    public static final String HEADER = "POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,SQUARE_M,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_BGP)";
+
+    /** Prefixes the header: map task 0 writes it, and a header already at the top of a file is dropped. */
     public static class FilterMapper extends Mapper<LongWritable, Text, Text, Text> {
-        int lines=0;
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final Text empty = new Text("");
+        private ProjectionPlan plan;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            plan = ProjectionPlan.compile(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+            if (context.getTaskAttemptID().getTaskID().getId() == 0) {
+                context.write(new Text(plan.getHeader()), empty);
+                metrics.output();
+            }
+        }
+
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-            if(lines == 0){
-                context.write(new Text("POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,SQUARE_M,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_BGP)"), new Text(""));
+            metrics.next();
+            if (key.get() == 0 && plan.isHeader(tokens.reset(value))) {
+                return;
             }
-            context.write(value, new Text(""));
-            lines++;
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            context.write(value, empty);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
 
+        protected void cleanup(Context context) {
+            metrics.close();
         }
     }
 
@@ -29,22 +51,26 @@ public class FeatureTitle {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: wordcount <in> [<in>...] <out>");
+            System.err.println("Usage: title <in> [<in>...] <out>");
             System.exit(2);
         }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
         Job job = Job.getInstance(conf, "Removing the feature BHK");
         job.setJarByClass(FeatureTitle.class);
+        ProjectionPlan.compile(conf);
         job.setMapperClass(FilterMapper.class);
         //job.setCombinerClass(IntSumReducer.class);
         //job.setReducerClass(IntSumReducer.class);
         job.setNumReduceTasks(0);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
-        for (int i = 0; i < otherArgs.length - 1; ++i) {
-            FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-        }
-        FileOutputFormat.setOutputPath(job,
-                new Path(otherArgs[otherArgs.length - 1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
     }
 }
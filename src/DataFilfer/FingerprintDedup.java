@@ -0,0 +1,73 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.partition.HashPartitioner;
+
+/**
+ * Shared plumbing of the fingerprint dedup mode of {@link DublicateRemover} and
+ * {@link DublicateChecker} ({@code -D dedup.fingerprint=true}).
+ * Rows are keyed by their 128-bit {@link RecordFingerprint} instead of the row text, hash
+ * partitioned over any number of reducers ({@code -D mapreduce.job.reduces=N}) and sorted
+ * by the raw 16-byte comparator. The row travels as the value, and the combiner collapses
+ * each map's copies of a row into one {@link LineCount}.
+ * Rows that share a fingerprint but differ in content (hash collisions) are kept apart by
+ * comparing the bytes, so the result holds the same rows as the text-keyed jobs,
+ * in fingerprint order instead of text order.
+ *
+ * @author antonio
+ */
+public final class FingerprintDedup {
+
+    public static final String MODE = "dedup.fingerprint";
+
+    private FingerprintDedup() {
+    }
+
+    public static boolean enabled(Job job) {
+        return job.getConfiguration().getBoolean(MODE, false);
+    }
+
+    /** Sets the map output types, combiner and partitioner; the caller sets mapper and reducer. */
+    public static void configure(Job job) {
+        job.setMapOutputKeyClass(RecordFingerprint.class);
+        job.setMapOutputValueClass(LineCount.class);
+        job.setCombinerClass(DistinctLinesCombiner.class);
+        job.setPartitionerClass(HashPartitioner.class);
+    }
+
+    /**
+     * Folds the values of one fingerprint into the distinct rows they carry, summing counts.
+     * Almost always a single row; more only on a hash collision.
+     */
+    static List<LineCount> distinct(Iterable<LineCount> values) {
+        List<LineCount> rows = new ArrayList<LineCount>(1);
+        for (LineCount value : values) {
+            LineCount match = null;
+            for (LineCount row : rows) {
+                if (row.getLine().equals(value.getLine())) {
+                    match = row;
+                    break;
+                }
+            }
+            if (match == null) {
+                rows.add(new LineCount().set(value.getLine(), value.getCount()));
+            } else {
+                match.add(value.getCount());
+            }
+        }
+        return rows;
+    }
+
+    public static class DistinctLinesCombiner extends Reducer<RecordFingerprint, LineCount, RecordFingerprint, LineCount> {
+        public void reduce(RecordFingerprint key, Iterable<LineCount> values, Context context) throws IOException, InterruptedException {
+            for (LineCount row : distinct(values)) {
+                context.write(key, row);
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package DataFilfer;
+
+import java.util.Arrays;
+
+/**
+ * The 128-bit fingerprints of the most recent rows, for dedup over an unbounded stream in bounded
+ * memory. Fingerprints go to the current of two generations, kept in open-addressing tables of
+ * primitive pairs; when it holds half the window, or is older than half the window's time, the
+ * older generation is dropped and the tables swap. A fingerprint is therefore remembered for at
+ * least half and at most the whole window after it was last seen.
+ *
+ * @author antonio
+ */
+public class FingerprintWindow {
+
+    private final long generationRows;
+    private final long generationNanos;
+    private Table current = new Table();
+    private Table previous = new Table();
+    private long generationStart;
+    private long evicted;
+
+    /** Remembers at least the last {@code rows / 2} rows seen in the last {@code millis / 2} ms. */
+    public FingerprintWindow(long rows, long millis) {
+        if (rows < 2 || millis < 2) {
+            throw new IllegalArgumentException("Window of " + rows + " rows and " + millis + " ms");
+        }
+        generationRows = rows / 2;
+        generationNanos = millis / 2 * 1000000L;
+        generationStart = System.nanoTime();
+    }
+
+    /** Adds the fingerprint; returns false if it is already in the window. */
+    public boolean add(long high, long low) {
+        return add(high, low, System.nanoTime());
+    }
+
+    boolean add(long high, long low, long now) {
+        if (current.size >= generationRows || now - generationStart >= generationNanos) {
+            evicted += previous.size;
+            Table dropped = previous;
+            previous = current;
+            current = dropped;
+            current.clear();
+            generationStart = now;
+        }
+        if (high == 0 && low == 0) {
+            // the empty slot marker
+            low = 1;
+        }
+        if (previous.contains(high, low)) {
+            // seen again, so kept for another generation
+            current.add(high, low);
+            return false;
+        }
+        return current.add(high, low);
+    }
+
+    public long size() {
+        return current.size + previous.size;
+    }
+
+    /** Fingerprints dropped from the window so far. */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    private static final class Table {
+        private long[] highs = new long[1024];
+        private long[] lows = new long[1024];
+        private int size;
+
+        boolean contains(long high, long low) {
+            int mask = highs.length - 1;
+            for (int slot = slot(high, low, mask); ; slot = (slot + 1) & mask) {
+                if (highs[slot] == high && lows[slot] == low) {
+                    return true;
+                }
+                if (highs[slot] == 0 && lows[slot] == 0) {
+                    return false;
+                }
+            }
+        }
+
+        boolean add(long high, long low) {
+            if (2 * (size + 1) > highs.length) {
+                grow();
+            }
+            int mask = highs.length - 1;
+            for (int slot = slot(high, low, mask); ; slot = (slot + 1) & mask) {
+                if (highs[slot] == high && lows[slot] == low) {
+                    return false;
+                }
+                if (highs[slot] == 0 && lows[slot] == 0) {
+                    highs[slot] = high;
+                    lows[slot] = low;
+                    size++;
+                    return true;
+                }
+            }
+        }
+
+        private static int slot(long high, long low, int mask) {
+            return (int) (high ^ (low >>> 32)) & mask;
+        }
+
+        private void grow() {
+            long[] oldHighs = highs;
+            long[] oldLows = lows;
+            highs = new long[oldHighs.length * 2];
+            lows = new long[oldLows.length * 2];
+            size = 0;
+            for (int i = 0; i < oldHighs.length; i++) {
+                if (oldHighs[i] != 0 || oldLows[i] != 0) {
+                    add(oldHighs[i], oldLows[i]);
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(highs, 0);
+            Arrays.fill(lows, 0);
+            size = 0;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package DataFilfer;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableComparator;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.MapFileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Price per square metre by area. Each cleaned listing is put in the {@link Geohash} cell of
+ * its coordinates ({@code geo.precision} characters, 5 by default: about 5 x 5 km) and the
+ * output is one CSV line per cell with the cell centre, the number of listings, the mean and
+ * median price per square metre and the BHK mix (see {@link #HEADER}).
+ * <p>
+ * The shuffle is partitioned by the first {@code geo.partition.precision} characters of the
+ * cell, so neighbouring cells, not only the listings of one cell, meet in the same reducer.
+ * Each reducer also writes its cells to a MapFile under {@code _cells}, which
+ * {@code GeoCells lookup <out> <lat> <lon>} reads to answer for one point without scanning
+ * the output.
+ * <p>
+ * Coordinates are checked against {@code geo.bounds}, India by default. A pair that is only in
+ * bounds the other way round is swapped and counted in SWAPPED_COORDINATES; train.csv has
+ * LONGITUDE and LATITUDE the wrong way round throughout. A pair that is out of bounds either
+ * way is counted and dropped rather than put in a wrong cell.
+ * With {@code -D geo.input=binary} the input is {@link HouseRecordWritable}s.
+ *
+ * @author antonio
+ */
+public class GeoCells {
+
+    /** Characters of the geohash of a cell. */
+    public static final String PRECISION = "geo.precision";
+    /** Characters of the cell the shuffle is partitioned by; at most {@link #PRECISION}. */
+    public static final String PARTITION_PRECISION = "geo.partition.precision";
+    /** Valid coordinates: min latitude, max latitude, min longitude, max longitude. */
+    public static final String BOUNDS = "geo.bounds";
+    /** {@code binary} to read {@link HouseRecordWritable}s instead of cleaned CSV. */
+    public static final String INPUT = "geo.input";
+
+    public static final String INDEX = "_cells";
+    public static final String HEADER = "CELL,LATITUDE,LONGITUDE,LISTINGS,MEAN_PRICE_PER_M2,MEDIAN_PRICE_PER_M2,"
+            + "BHK_1,BHK_2,BHK_3,BHK_4,BHK_5_PLUS";
+
+    static final int VALID = 0;
+    static final int SWAPPED = 1;
+    static final int OUT_OF_BOUNDS = -1;
+
+    private static final String INDIA = "6,38,68,98";
+    private static final byte[] POSTED_BY = {'P', 'O', 'S', 'T', 'E', 'D', '_', 'B', 'Y'};
+
+    public enum Counters {
+        SWAPPED_COORDINATES, OUT_OF_BOUNDS, INVALID_AREA, MALFORMED_ROWS, HEADER_ROWS
+    }
+
+    /** Validates a record's coordinates and emits it to its cell; shared by both mappers. */
+    static class CellAssigner {
+        private final int precision;
+        private final double[] bounds;
+        private final byte[] scratch = new byte[Geohash.MAX_PRECISION];
+        private final Text cell = new Text();
+        private final double[] point = new double[2];
+        private final CellStats listing = new CellStats();
+
+        CellAssigner(Configuration conf) {
+            precision = precision(conf);
+            bounds = bounds(conf);
+        }
+
+        void assign(HouseRecordWritable record, TaskInputOutputContext<?, ?, Text, CellStats> context,
+                    TaskMetrics metrics) throws IOException, InterruptedException {
+            int located = locate(record, bounds, point);
+            if (located == OUT_OF_BOUNDS) {
+                context.getCounter(Counters.OUT_OF_BOUNDS).increment(1);
+                return;
+            }
+            if (located == SWAPPED) {
+                context.getCounter(Counters.SWAPPED_COORDINATES).increment(1);
+            }
+            double area = record.getSquareMetres();
+            if (!(area > 0) || Double.isInfinite(area)) {
+                context.getCounter(Counters.INVALID_AREA).increment(1);
+                return;
+            }
+            Geohash.encode(point[0], point[1], precision, scratch, cell);
+            listing.clear();
+            listing.add(record.getPrice() / area, record.getBhk());
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(cell, listing);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+    }
+
+    public static class CellMapper extends Mapper<LongWritable, Text, Text, CellStats> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final HouseRecordWritable record = new HouseRecordWritable();
+        private CellAssigner assigner;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            assigner = new CellAssigner(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            tokens.reset(value);
+            if (key.get() == 0 && tokens.fieldEquals(0, POSTED_BY)) {
+                context.getCounter(Counters.HEADER_ROWS).increment(1);
+                return;
+            }
+            try {
+                record.setCleaned(tokens);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.MALFORMED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            assigner.assign(record, context, metrics);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static class RecordMapper extends Mapper<NullWritable, HouseRecordWritable, Text, CellStats> {
+        private CellAssigner assigner;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            assigner = new CellAssigner(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            assigner.assign(value, context, metrics);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    /** Partitions by a prefix of the cell, so it depends on the key alone as MapFile lookups need. */
+    public static class CellPartitioner extends Partitioner<Text, CellStats> implements Configurable {
+        private Configuration conf;
+        private int prefix;
+
+        public void setConf(Configuration conf) {
+            this.conf = conf;
+            prefix = partitionPrecision(conf);
+        }
+
+        public Configuration getConf() {
+            return conf;
+        }
+
+        public int getPartition(Text key, CellStats value, int partitions) {
+            int hash = WritableComparator.hashBytes(key.getBytes(), Math.min(prefix, key.getLength()));
+            return (hash & Integer.MAX_VALUE) % partitions;
+        }
+    }
+
+    public static class MergeCombiner extends Reducer<Text, CellStats, Text, CellStats> {
+        private final CellStats merged = new CellStats();
+
+        public void reduce(Text key, Iterable<CellStats> values, Context context) throws IOException, InterruptedException {
+            merged.clear();
+            for (CellStats value : values) {
+                merged.merge(value);
+            }
+            context.write(key, merged);
+        }
+    }
+
+    public static class CellReducer extends Reducer<Text, CellStats, Text, Text> {
+        private final CellStats merged = new CellStats();
+        private final StringBuilder line = new StringBuilder();
+        private final Text out = new Text();
+        private final Text empty = new Text("");
+        private MapFile.Writer index;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            metrics = new TaskMetrics(context);
+            int partition = context.getTaskAttemptID().getTaskID().getId();
+            if (partition == 0) {
+                context.write(new Text(HEADER), empty);
+                metrics.output();
+            }
+            Path dir = new Path(new Path(FileOutputFormat.getWorkOutputPath(context), INDEX), String.format("part-r-%05d", partition));
+            index = new MapFile.Writer(context.getConfiguration(), dir, MapFile.Writer.keyClass(Text.class),
+                    MapFile.Writer.valueClass(CellStats.class),
+                    MapFile.Writer.compression(SequenceFile.CompressionType.BLOCK));
+        }
+
+        public void reduce(Text key, Iterable<CellStats> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            merged.clear();
+            for (CellStats value : values) {
+                merged.merge(value);
+            }
+            line.setLength(0);
+            appendLine(key, merged, line);
+            out.set(line.toString());
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            index.append(key, merged);
+            context.write(out, empty);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) throws IOException {
+            index.close();
+            metrics.close();
+        }
+    }
+
+    /** One output line, {@link #HEADER} layout. */
+    static void appendLine(Text cell, CellStats stats, StringBuilder out) {
+        double[] box = Geohash.bounds(cell);
+        out.append(cell).append(',').append((box[0] + box[1]) / 2).append(',').append((box[2] + box[3]) / 2).append(',');
+        stats.appendTo(out);
+    }
+
+    /**
+     * Puts the record's {latitude, longitude} in {@code point} and returns {@link #VALID}, or
+     * {@link #SWAPPED} if they had to be swapped to be in {@code bounds}, or
+     * {@link #OUT_OF_BOUNDS}.
+     */
+    static int locate(HouseRecordWritable record, double[] bounds, double[] point) {
+        point[0] = record.getLatitude();
+        point[1] = record.getLongitude();
+        if (inBounds(point[0], point[1], bounds)) {
+            return VALID;
+        }
+        if (inBounds(point[1], point[0], bounds)) {
+            point[0] = record.getLongitude();
+            point[1] = record.getLatitude();
+            return SWAPPED;
+        }
+        return OUT_OF_BOUNDS;
+    }
+
+    private static boolean inBounds(double latitude, double longitude, double[] bounds) {
+        return latitude >= bounds[0] && latitude <= bounds[1] && longitude >= bounds[2] && longitude <= bounds[3];
+    }
+
+    static int precision(Configuration conf) {
+        int precision = conf.getInt(PRECISION, 5);
+        if (precision < 1 || precision > Geohash.MAX_PRECISION) {
+            throw new IllegalArgumentException(PRECISION + " must be 1 to " + Geohash.MAX_PRECISION + ", not " + precision);
+        }
+        return precision;
+    }
+
+    static int partitionPrecision(Configuration conf) {
+        int prefix = conf.getInt(PARTITION_PRECISION, 3);
+        if (prefix < 1) {
+            throw new IllegalArgumentException(PARTITION_PRECISION + " must be at least 1, not " + prefix);
+        }
+        return Math.min(prefix, precision(conf));
+    }
+
+    static double[] bounds(Configuration conf) {
+        String[] fields = conf.getTrimmedStrings(BOUNDS, INDIA.split(","));
+        if (fields.length != 4) {
+            throw new IllegalArgumentException(BOUNDS + " needs min latitude, max latitude, min longitude, max longitude");
+        }
+        double[] bounds = new double[4];
+        for (int i = 0; i < 4; i++) {
+            bounds[i] = Double.parseDouble(fields[i]);
+        }
+        if (bounds[0] > bounds[1] || bounds[2] > bounds[3]) {
+            throw new IllegalArgumentException(BOUNDS + " has a minimum above its maximum: " + conf.get(BOUNDS));
+        }
+        return bounds;
+    }
+
+    /**
+     * Prints the output line of the cell holding the point, from the index of a finished job;
+     * the partitioning options must be those of the job. Returns false if the cell is empty.
+     */
+    public static boolean lookup(Configuration conf, Path output, double latitude, double longitude) throws IOException {
+        Path dir = new Path(output, INDEX);
+        FileSystem fs = dir.getFileSystem(conf);
+        MapFile.Reader[] readers = MapFileOutputFormat.getReaders(dir, conf);
+        try {
+            Text cell = new Text();
+            int precision = precision(conf);
+            for (MapFile.Reader reader : readers) {
+                Text first = (Text) reader.midKey();
+                if (first != null) {
+                    // the index knows its own precision
+                    precision = first.getLength();
+                    conf.setInt(PRECISION, precision);
+                    break;
+                }
+            }
+            Geohash.encode(latitude, longitude, precision, new byte[precision], cell);
+            CellPartitioner partitioner = new CellPartitioner();
+            partitioner.setConf(conf);
+            CellStats stats = new CellStats();
+            if (MapFileOutputFormat.getEntry(readers, partitioner, cell, stats) == null) {
+                System.out.println("No listings in cell " + cell + " (" + fs.makeQualified(dir) + ")");
+                return false;
+            }
+            StringBuilder line = new StringBuilder();
+            appendLine(cell, stats, line);
+            System.out.println(HEADER);
+            System.out.println(line);
+            return true;
+        } finally {
+            for (MapFile.Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length == 4 && otherArgs[0].equals("lookup")) {
+            System.exit(lookup(conf, new Path(otherArgs[1]), Double.parseDouble(otherArgs[2]),
+                    Double.parseDouble(otherArgs[3])) ? 0 : 1);
+        }
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: geocells <in> [<in>...] <out>");
+            System.err.println("       geocells lookup <out> <latitude> <longitude>");
+            System.exit(2);
+        }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        partitionPrecision(conf);
+        bounds(conf);
+        Job job = Job.getInstance(conf, "Price per square metre by cell");
+        job.setJarByClass(GeoCells.class);
+        if ("binary".equals(conf.get(INPUT))) {
+            job.setMapperClass(RecordMapper.class);
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        } else {
+            job.setMapperClass(CellMapper.class);
+        }
+        job.setPartitionerClass(CellPartitioner.class);
+        job.setCombinerClass(MergeCombiner.class);
+        job.setReducerClass(CellReducer.class);
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(CellStats.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+}
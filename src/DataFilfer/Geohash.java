@@ -0,0 +1,97 @@
+package DataFilfer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+
+/**
+ * Geohash cells: longitude and latitude bisected in turn, five bits per base-32 character.
+ * At the equator a cell of 4 characters is about 39 x 20 km, 5 is 4.9 x 4.9 km and 6 is
+ * 1.2 x 0.6 km. A cell's hash is a prefix of the hashes of the cells inside it, so nearby
+ * points mostly share a prefix.
+ *
+ * @author antonio
+ */
+public final class Geohash {
+
+    public static final int MAX_PRECISION = 12;
+
+    private static final byte[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".getBytes(StandardCharsets.US_ASCII);
+    private static final int[] DECODE = new int[128];
+
+    static {
+        Arrays.fill(DECODE, -1);
+        for (int i = 0; i < BASE32.length; i++) {
+            DECODE[BASE32[i]] = i;
+        }
+    }
+
+    private Geohash() {
+    }
+
+    /** Writes the {@code precision}-character cell of the point into {@code out}. */
+    public static void encode(double latitude, double longitude, int precision, byte[] scratch, Text out) {
+        double minLat = -90, maxLat = 90, minLon = -180, maxLon = 180;
+        boolean even = true;
+        for (int c = 0; c < precision; c++) {
+            int index = 0;
+            for (int bit = 0; bit < 5; bit++) {
+                index <<= 1;
+                if (even) {
+                    double mid = (minLon + maxLon) / 2;
+                    if (longitude >= mid) {
+                        index |= 1;
+                        minLon = mid;
+                    } else {
+                        maxLon = mid;
+                    }
+                } else {
+                    double mid = (minLat + maxLat) / 2;
+                    if (latitude >= mid) {
+                        index |= 1;
+                        minLat = mid;
+                    } else {
+                        maxLat = mid;
+                    }
+                }
+                even = !even;
+            }
+            scratch[c] = BASE32[index];
+        }
+        out.set(scratch, 0, precision);
+    }
+
+    public static String encode(double latitude, double longitude, int precision) {
+        Text out = new Text();
+        encode(latitude, longitude, precision, new byte[precision], out);
+        return out.toString();
+    }
+
+    /**
+     * The bounds of a cell as {minLatitude, maxLatitude, minLongitude, maxLongitude}; throws
+     * IllegalArgumentException on a character that is not geohash base 32.
+     */
+    public static double[] bounds(Text cell) {
+        double[] box = {-90, 90, -180, 180};
+        boolean even = true;
+        byte[] bytes = cell.getBytes();
+        for (int c = 0; c < cell.getLength(); c++) {
+            int index = bytes[c] >= 0 ? DECODE[bytes[c]] : -1;
+            if (index < 0) {
+                throw new IllegalArgumentException("Not a geohash: " + cell);
+            }
+            for (int bit = 4; bit >= 0; bit--) {
+                int side = even ? 2 : 0;
+                double mid = (box[side] + box[side + 1]) / 2;
+                if ((index >> bit & 1) != 0) {
+                    box[side] = mid;
+                } else {
+                    box[side + 1] = mid;
+                }
+                even = !even;
+            }
+        }
+        return box;
+    }
+}
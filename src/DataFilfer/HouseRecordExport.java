@@ -0,0 +1,74 @@
+package DataFilfer;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Map-only job that turns {@link HouseRecordOutputFormat} files back into the cleaned CSV
+ * ({@link FeatureTitle#HEADER} layout) the Python notebook reads. The first map task writes
+ * the header.
+ *
+ * @author antonio
+ */
+public class HouseRecordExport {
+
+    public static class ExportMapper extends Mapper<NullWritable, HouseRecordWritable, Text, NullWritable> {
+        private final Text out = new Text();
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            metrics = new TaskMetrics(context);
+            if (context.getTaskAttemptID().getTaskID().getId() == 0) {
+                out.set(FeatureTitle.HEADER);
+                context.write(out, NullWritable.get());
+                metrics.output();
+            }
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            value.toCsv(out);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(out, NullWritable.get());
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: export <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        Job job = Job.getInstance(conf, "House record export");
+        job.setJarByClass(HouseRecordExport.class);
+        job.setMapperClass(ExportMapper.class);
+        job.setNumReduceTasks(0);
+        job.setInputFormatClass(HouseRecordInputFormat.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(NullWritable.class);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+}
@@ -0,0 +1,134 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileRecordReaderWrapper;
+import org.apache.hadoop.mapreduce.lib.input.CombineFileSplit;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileRecordReader;
+
+/**
+ * Reads the files of {@link HouseRecordOutputFormat}. Splits like any SequenceFile; each
+ * reader loads the address dictionary of its file and hands out records with the address
+ * filled in. Only files that have a dictionary are listed, so side outputs written next to the
+ * records (e.g. the pipeline's {@code empty-m-*}) do not need to be filtered out by hand.
+ *
+ * @author antonio
+ */
+public class HouseRecordInputFormat extends SequenceFileInputFormat<NullWritable, HouseRecordWritable> {
+
+    public RecordReader<NullWritable, HouseRecordWritable> createRecordReader(InputSplit split, TaskAttemptContext context) {
+        return new DictionaryReader();
+    }
+
+    protected List<FileStatus> listStatus(JobContext job) throws IOException {
+        return withDictionary(job, super.listStatus(job));
+    }
+
+    static List<FileStatus> withDictionary(JobContext job, List<FileStatus> files) throws IOException {
+        List<FileStatus> records = new ArrayList<FileStatus>();
+        for (FileStatus file : files) {
+            Path path = file.getPath();
+            if (path.getFileSystem(job.getConfiguration()).exists(HouseRecordOutputFormat.dictionaryPath(path))) {
+                records.add(file);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Packs many small record files into each split, e.g. the per-city files of
+     * {@link CityPartitioning}; each file is still read with its own dictionary.
+     */
+    public static class Combined extends CombineFileInputFormat<NullWritable, HouseRecordWritable> {
+        public RecordReader<NullWritable, HouseRecordWritable> createRecordReader(InputSplit split, TaskAttemptContext context)
+                throws IOException {
+            return new CombineFileRecordReader<NullWritable, HouseRecordWritable>((CombineFileSplit) split, context, FileReader.class);
+        }
+
+        protected List<FileStatus> listStatus(JobContext job) throws IOException {
+            return withDictionary(job, super.listStatus(job));
+        }
+    }
+
+    static class FileReader extends CombineFileRecordReaderWrapper<NullWritable, HouseRecordWritable> {
+        FileReader(CombineFileSplit split, TaskAttemptContext context, Integer file) throws IOException, InterruptedException {
+            super(new HouseRecordInputFormat(), split, context, file);
+        }
+    }
+
+    static Text[] readDictionary(FileSystem fs, Path file) throws IOException {
+        Path path = HouseRecordOutputFormat.dictionaryPath(file);
+        if (!fs.exists(path)) {
+            return new Text[0];
+        }
+        FSDataInputStream in = fs.open(path);
+        try {
+            Text[] dictionary = new Text[WritableUtils.readVInt(in)];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = new Text();
+                dictionary[i].readFields(in);
+            }
+            return dictionary;
+        } finally {
+            in.close();
+        }
+    }
+
+    static class DictionaryReader extends RecordReader<NullWritable, HouseRecordWritable> {
+        private final SequenceFileRecordReader<NullWritable, HouseRecordWritable> records =
+                new SequenceFileRecordReader<NullWritable, HouseRecordWritable>();
+        private Text[] dictionary;
+
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            records.initialize(split, context);
+            Configuration conf = context.getConfiguration();
+            Path file = ((FileSplit) split).getPath();
+            dictionary = readDictionary(file.getFileSystem(conf), file);
+        }
+
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            if (!records.nextKeyValue()) {
+                return false;
+            }
+            HouseRecordWritable record = records.getCurrentValue();
+            if (record.getAddressId() >= 0) {
+                record.resolveAddress(dictionary[record.getAddressId()]);
+            }
+            return true;
+        }
+
+        public NullWritable getCurrentKey() {
+            return NullWritable.get();
+        }
+
+        public HouseRecordWritable getCurrentValue() throws IOException, InterruptedException {
+            return records.getCurrentValue();
+        }
+
+        public float getProgress() throws IOException, InterruptedException {
+            return records.getProgress();
+        }
+
+        public void close() throws IOException {
+            records.close();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Writes {@link HouseRecordWritable}s to a SequenceFile, block-compressed unless output
+ * compression is switched off. Addresses are dictionary encoded: each record stores an id and
+ * the distinct addresses of the file go to a hidden {@code _<part>.dict} file next to it,
+ * which {@link HouseRecordInputFormat} loads before reading the split.
+ *
+ * @author antonio
+ */
+public class HouseRecordOutputFormat extends FileOutputFormat<NullWritable, HouseRecordWritable> {
+
+    /** The dictionary of a part file; the leading underscore keeps it out of input listings. */
+    public static Path dictionaryPath(Path file) {
+        return new Path(file.getParent(), "_" + file.getName() + ".dict");
+    }
+
+    public RecordWriter<NullWritable, HouseRecordWritable> getRecordWriter(TaskAttemptContext context) throws IOException {
+        Configuration conf = context.getConfiguration();
+        Path file = getDefaultWorkFile(context, "");
+        CompressionType type = CompressionType.NONE;
+        CompressionCodec codec = null;
+        if (conf.getBoolean(FileOutputFormat.COMPRESS, true)) {
+            type = conf.get(FileOutputFormat.COMPRESS_TYPE) == null
+                    ? CompressionType.BLOCK : SequenceFileOutputFormat.getOutputCompressionType(context);
+            codec = ReflectionUtils.newInstance(getOutputCompressorClass(context, DefaultCodec.class), conf);
+        }
+        SequenceFile.Writer writer = SequenceFile.createWriter(conf,
+                SequenceFile.Writer.file(file),
+                SequenceFile.Writer.keyClass(NullWritable.class),
+                SequenceFile.Writer.valueClass(HouseRecordWritable.class),
+                SequenceFile.Writer.compression(type, codec));
+        return new DictionaryWriter(writer, file.getFileSystem(conf), dictionaryPath(file));
+    }
+
+    static class DictionaryWriter extends RecordWriter<NullWritable, HouseRecordWritable> {
+        private final SequenceFile.Writer writer;
+        private final FileSystem fs;
+        private final Path dictionaryFile;
+        private final Map<Text, Integer> ids = new HashMap<Text, Integer>();
+        private final List<Text> addresses = new ArrayList<Text>();
+
+        DictionaryWriter(SequenceFile.Writer writer, FileSystem fs, Path dictionaryFile) {
+            this.writer = writer;
+            this.fs = fs;
+            this.dictionaryFile = dictionaryFile;
+        }
+
+        public void write(NullWritable key, HouseRecordWritable record) throws IOException {
+            Integer id = ids.get(record.getAddress());
+            if (id == null) {
+                Text address = new Text(record.getAddress());
+                id = addresses.size();
+                addresses.add(address);
+                ids.put(address, id);
+            }
+            record.setAddressId(id);
+            try {
+                writer.append(key, record);
+            } finally {
+                record.setAddressId(-1);
+            }
+        }
+
+        public void close(TaskAttemptContext context) throws IOException {
+            writer.close();
+            FSDataOutputStream out = fs.create(dictionaryFile, true);
+            try {
+                WritableUtils.writeVInt(out, addresses.size());
+                for (Text address : addresses) {
+                    address.write(out);
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * One cleaned listing with typed fields, so later stages read numbers instead of re-parsing
+ * CSV. Square metres and the GBP price are already converted.
+ * The address is either carried inline or, inside a {@link HouseRecordOutputFormat} file, as an
+ * id into that file's address dictionary ({@link #getAddressId()} &gt;= 0).
+ *
+ * @author antonio
+ */
+public class HouseRecordWritable implements Writable {
+
+    public static final int UNDER_CONSTRUCTION = 1;
+    public static final int RERA = 2;
+    public static final int READY_TO_MOVE = 4;
+    public static final int RESALE = 8;
+
+    /** Number of values in {@link #toVector}. */
+    public static final int VECTOR_SIZE = 10;
+
+    private PostedBy postedBy = PostedBy.OWNER;
+    private int flags;
+    private int bhk;
+    private double squareMetres;
+    /** The ADDRESS field as it appears in the CSV, quotes included. */
+    private final Text address = new Text();
+    private int addressId = -1;
+    private double longitude;
+    private double latitude;
+    private double price;
+
+    private static final byte[] COMMA = {','};
+
+    /**
+     * Fills the record from a raw train.csv row, converting units like {@link FeatureRemover}.
+     * Throws NumberFormatException or ArrayIndexOutOfBoundsException on a malformed row.
+     */
+    public HouseRecordWritable setRaw(CsvTokenizer raw) {
+        //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)
+        postedBy = PostedBy.parse(raw, 0);
+        flags = flag(raw, 1, UNDER_CONSTRUCTION) | flag(raw, 2, RERA) | flag(raw, 6, READY_TO_MOVE) | flag(raw, 7, RESALE);
+        bhk = raw.parseInt(3);
+        squareMetres = FeatureRemover.toSquareMetres(raw.parseDouble(5));
+        address.set(raw.bytes(), raw.start(8), raw.length(8));
+        addressId = -1;
+        longitude = raw.parseDouble(9);
+        latitude = raw.parseDouble(10);
+        price = FeatureRemover.toGBP(raw.parseDouble(11));
+        return this;
+    }
+
+    /** Fills the record from a cleaned row, i.e. {@link FeatureTitle#HEADER} layout. */
+    public HouseRecordWritable setCleaned(CsvTokenizer cleaned) {
+        //POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,SQUARE_M,READY_TO_MOVE,RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_BGP)
+        postedBy = PostedBy.parse(cleaned, 0);
+        flags = flag(cleaned, 1, UNDER_CONSTRUCTION) | flag(cleaned, 2, RERA) | flag(cleaned, 5, READY_TO_MOVE) | flag(cleaned, 6, RESALE);
+        bhk = cleaned.parseInt(3);
+        squareMetres = cleaned.parseDouble(4);
+        address.set(cleaned.bytes(), cleaned.start(7), cleaned.length(7));
+        addressId = -1;
+        longitude = cleaned.parseDouble(8);
+        latitude = cleaned.parseDouble(9);
+        price = cleaned.parseDouble(10);
+        return this;
+    }
+
+    private static int flag(CsvTokenizer tokens, int field, int bit) {
+        return tokens.parseInt(field) != 0 ? bit : 0;
+    }
+
+    /** Writes the cleaned CSV row ({@link FeatureTitle#HEADER} layout) into {@code out}. */
+    public void toCsv(Text out) {
+        out.clear();
+        append(out, postedBy.getLabel());
+        append(out, is(UNDER_CONSTRUCTION) ? "1" : "0");
+        append(out, is(RERA) ? "1" : "0");
+        append(out, Integer.toString(bhk));
+        append(out, Double.toString(squareMetres));
+        append(out, is(READY_TO_MOVE) ? "1" : "0");
+        append(out, is(RESALE) ? "1" : "0");
+        out.append(address.getBytes(), 0, address.getLength());
+        out.append(COMMA, 0, 1);
+        append(out, Double.toString(longitude));
+        append(out, Double.toString(latitude));
+        byte[] last = Double.toString(price).getBytes(StandardCharsets.US_ASCII);
+        out.append(last, 0, last.length);
+    }
+
+    private static void append(Text out, String field) {
+        byte[] b = field.getBytes(StandardCharsets.US_ASCII);
+        out.append(b, 0, b.length);
+        out.append(COMMA, 0, 1);
+    }
+
+    /**
+     * The numeric columns in the order {@link Linear} reads them by default: POSTED_BY code,
+     * UNDER_CONSTRUCTION, RERA, BHK_NO., SQUARE_M, READY_TO_MOVE, RESALE, LONGITUDE, LATITUDE, price.
+     */
+    public void toVector(double[] out) {
+        out[0] = postedBy.ordinal();
+        out[1] = is(UNDER_CONSTRUCTION) ? 1 : 0;
+        out[2] = is(RERA) ? 1 : 0;
+        out[3] = bhk;
+        out[4] = squareMetres;
+        out[5] = is(READY_TO_MOVE) ? 1 : 0;
+        out[6] = is(RESALE) ? 1 : 0;
+        out[7] = longitude;
+        out[8] = latitude;
+        out[9] = price;
+    }
+
+    public boolean is(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public PostedBy getPostedBy() {
+        return postedBy;
+    }
+
+    public int getBhk() {
+        return bhk;
+    }
+
+    public double getSquareMetres() {
+        return squareMetres;
+    }
+
+    public Text getAddress() {
+        return address;
+    }
+
+    public int getAddressId() {
+        return addressId;
+    }
+
+    /** Switches the address to dictionary form; the text is kept for the caller. */
+    void setAddressId(int addressId) {
+        this.addressId = addressId;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeByte(postedBy.ordinal());
+        out.writeByte(flags);
+        WritableUtils.writeVInt(out, bhk);
+        out.writeDouble(squareMetres);
+        WritableUtils.writeVInt(out, addressId + 1);
+        if (addressId < 0) {
+            address.write(out);
+        }
+        out.writeDouble(longitude);
+        out.writeDouble(latitude);
+        out.writeDouble(price);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        postedBy = PostedBy.valueOf(in.readByte());
+        flags = in.readByte();
+        bhk = WritableUtils.readVInt(in);
+        squareMetres = in.readDouble();
+        addressId = WritableUtils.readVInt(in) - 1;
+        if (addressId < 0) {
+            address.readFields(in);
+        } else {
+            address.clear();
+        }
+        longitude = in.readDouble();
+        latitude = in.readDouble();
+        price = in.readDouble();
+    }
+
+    /** Resolves a dictionary id read from a file back into the inline address. */
+    void resolveAddress(Text text) {
+        address.set(text);
+        addressId = -1;
+    }
+}
@@ -0,0 +1,85 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+
+/**
+ * In-mapper combining for the counting jobs: counts per distinct row are kept in a hash map
+ * and handed to a {@link Sink} as partial sums, so a row repeated k times in a split costs one
+ * map output record instead of k. The map is bounded: it is flushed when it holds
+ * {@code inmapper.max.entries} entries (default 100000) or when its estimated size, the
+ * bytes of its keys plus a fixed cost per entry, passes {@code inmapper.max.heap.fraction}
+ * (default 0.6) of the heap left beside the map output sort buffer
+ * ({@code mapreduce.task.io.sort.mb}). The mapper flushes it again in {@code cleanup()}.
+ * Partial counts are summed by the usual combiner/reducer.
+ *
+ * @author antonio
+ */
+public class InMapperCounts {
+
+    public static final String MAX_ENTRIES = "inmapper.max.entries";
+    public static final String MAX_HEAP_FRACTION = "inmapper.max.heap.fraction";
+
+    /** Heap bytes of an entry besides its key bytes: the Text, its array, the count and the hash map node. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    public enum Counters { FLUSHES }
+
+    public interface Sink {
+        void emit(Text row, int count) throws IOException, InterruptedException;
+    }
+
+    private final Map<Text, int[]> counts = new HashMap<Text, int[]>();
+    private final Text probe = new Text();
+    private final int maxEntries;
+    private final long maxBytes;
+    private long size;
+    private long flushes;
+
+    public InMapperCounts(Configuration conf) {
+        maxEntries = conf.getInt(MAX_ENTRIES, 100000);
+        long sortBuffer = (long) conf.getInt(MRJobConfig.IO_SORT_MB, 100) << 20;
+        long left = Math.max(0, Runtime.getRuntime().maxMemory() - sortBuffer);
+        maxBytes = (long) (left * conf.getFloat(MAX_HEAP_FRACTION, 0.6f));
+    }
+
+    public void add(Text row, int count, Sink sink) throws IOException, InterruptedException {
+        add(row.getBytes(), 0, row.getLength(), count, sink);
+    }
+
+    public void add(byte[] bytes, int offset, int length, int count, Sink sink) throws IOException, InterruptedException {
+        probe.set(bytes, offset, length);
+        int[] slot = counts.get(probe);
+        if (slot != null) {
+            slot[0] += count;
+            return;
+        }
+        counts.put(new Text(probe), new int[]{count});
+        size += length + ENTRY_OVERHEAD;
+        if (counts.size() >= maxEntries || size > maxBytes) {
+            flush(sink);
+        }
+    }
+
+    public void flush(Sink sink) throws IOException, InterruptedException {
+        if (counts.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Text, int[]> entry : counts.entrySet()) {
+            sink.emit(entry.getKey(), entry.getValue()[0]);
+        }
+        counts.clear();
+        size = 0;
+        flushes++;
+    }
+
+    /** Number of non-empty flushes so far. */
+    public long getFlushes() {
+        return flushes;
+    }
+}
@@ -0,0 +1,342 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.PathFilter;
+import org.apache.hadoop.io.BloomMapFile;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Dedup of a daily delta against everything deduped before, without reading the history.
+ * <p>
+ * The index ({@code -D incremental.index=<dir>}) holds the {@link RecordFingerprint} of every
+ * row emitted so far, as generations {@code gen-NNNNN} of sorted MapFiles with a Bloom filter
+ * each, one MapFile per hash partition. The job shuffles the delta like
+ * {@link DublicateRemover}'s fingerprint mode, with one reducer per index partition; each
+ * reducer looks its fingerprints up in its partition of every generation, emits the rows that
+ * are not there and writes their fingerprints as a new generation, which the driver moves into
+ * the index once the job has succeeded. Lookups arrive in key order, so the MapFile reads are
+ * forward seeks, and the Bloom filters answer most of them (new rows) without a read at all.
+ * The work is proportional to the delta; only the Bloom filters and MapFile indexes, a few
+ * bytes per indexed row, are loaded whole.
+ * <p>
+ * When there are more than {@code incremental.max.generations} generations the driver merges
+ * them into one. The index only holds fingerprints, so a new row whose 128-bit fingerprint
+ * collides with an indexed row is dropped; runs against one index must not overlap.
+ *
+ * @author antonio
+ */
+public class IncrementalDedup {
+
+    /** Directory of the fingerprint index; created by the first run. */
+    public static final String INDEX = "incremental.index";
+    /** Generations kept before the driver merges them into one. */
+    public static final String MAX_GENERATIONS = "incremental.max.generations";
+    /** Write a Bloom filter next to each MapFile. */
+    public static final String BLOOM = "incremental.bloom";
+
+    /** The job output directory the new generation is written to. */
+    static final String FINGERPRINTS = "_fingerprints";
+
+    private static final String GENERATION = "gen-";
+    private static final String COMPACTING = "_compacting";
+    private static final String BLOOM_SIZE = "io.mapfile.bloom.size";
+    /** Rows per input byte, on the high side, to size the Bloom filter of a new generation. */
+    private static final int BYTES_PER_ROW = 64;
+    /** Serialized size of one index entry: record and key lengths, the key, no value. */
+    private static final int BYTES_PER_ENTRY = 24;
+
+    public enum Counters {
+        NEW_ROWS, SEEN_ROWS, DUPLICATE_ROWS, INDEX_READS
+    }
+
+    public static class DeltaReducer extends Reducer<RecordFingerprint, LineCount, Text, Text> {
+        private final Text empty = new Text("");
+        private MapFile.Reader[] generations;
+        private MapFile.Writer added;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            metrics = new TaskMetrics(context);
+            Configuration conf = context.getConfiguration();
+            Path index = index(conf);
+            FileSystem fs = index.getFileSystem(conf);
+            String part = partName(context.getTaskAttemptID().getTaskID().getId());
+            List<MapFile.Reader> readers = new ArrayList<MapFile.Reader>();
+            for (Path generation : generations(fs, index)) {
+                readers.add(openReader(fs, new Path(generation, part), conf));
+            }
+            generations = readers.toArray(new MapFile.Reader[readers.size()]);
+            added = openWriter(conf, new Path(new Path(FileOutputFormat.getWorkOutputPath(context), FINGERPRINTS), part));
+        }
+
+        public void reduce(RecordFingerprint key, Iterable<LineCount> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            List<LineCount> rows = FingerprintDedup.distinct(values);
+            boolean seen = seen(key, context);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            if (seen) {
+                for (LineCount row : rows) {
+                    context.getCounter(Counters.SEEN_ROWS).increment(row.getCount());
+                }
+                return;
+            }
+            for (LineCount row : rows) {
+                context.write(row.getLine(), empty);
+                context.getCounter(Counters.NEW_ROWS).increment(1);
+                context.getCounter(Counters.DUPLICATE_ROWS).increment(row.getCount() - 1);
+                if (row.getCount() > 1) {
+                    metrics.duplicateGroup();
+                }
+                metrics.output();
+            }
+            added.append(key, NullWritable.get());
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+
+        private boolean seen(RecordFingerprint key, Context context) throws IOException {
+            for (MapFile.Reader generation : generations) {
+                if (generation instanceof BloomMapFile.Reader && !((BloomMapFile.Reader) generation).probablyHasKey(key)) {
+                    continue;
+                }
+                context.getCounter(Counters.INDEX_READS).increment(1);
+                if (generation.get(key, NullWritable.get()) != null) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        protected void cleanup(Context context) throws IOException {
+            added.close();
+            for (MapFile.Reader generation : generations) {
+                generation.close();
+            }
+            metrics.close();
+        }
+    }
+
+    static Path index(Configuration conf) throws IOException {
+        String index = conf.get(INDEX);
+        if (index == null) {
+            throw new IOException(INDEX + " is not set");
+        }
+        return new Path(index);
+    }
+
+    static String partName(int partition) {
+        return String.format("part-r-%05d", partition);
+    }
+
+    /** The generations of the index, oldest first; none if it does not exist yet. */
+    static List<Path> generations(FileSystem fs, Path index) throws IOException {
+        if (!fs.exists(index)) {
+            return new ArrayList<Path>();
+        }
+        FileStatus[] found = fs.listStatus(index, new PathFilter() {
+            public boolean accept(Path path) {
+                return path.getName().startsWith(GENERATION);
+            }
+        });
+        List<Path> generations = new ArrayList<Path>();
+        for (FileStatus status : found) {
+            generations.add(status.getPath());
+        }
+        Collections.sort(generations, new Comparator<Path>() {
+            public int compare(Path a, Path b) {
+                return a.getName().compareTo(b.getName());
+            }
+        });
+        return generations;
+    }
+
+    /** The number of hash partitions, i.e. MapFiles, in a generation. */
+    static int partitions(FileSystem fs, Path generation) throws IOException {
+        return fs.listStatus(generation, new PathFilter() {
+            public boolean accept(Path path) {
+                return path.getName().startsWith("part-r-");
+            }
+        }).length;
+    }
+
+    private static Path nextGeneration(Path index, List<Path> generations) {
+        int next = 0;
+        if (!generations.isEmpty()) {
+            next = Integer.parseInt(generations.get(generations.size() - 1).getName().substring(GENERATION.length())) + 1;
+        }
+        return new Path(index, String.format("%s%05d", GENERATION, next));
+    }
+
+    private static MapFile.Reader openReader(FileSystem fs, Path dir, Configuration conf) throws IOException {
+        if (fs.exists(new Path(dir, BloomMapFile.BLOOM_FILE_NAME))) {
+            return new BloomMapFile.Reader(dir, conf);
+        }
+        return new MapFile.Reader(dir, conf);
+    }
+
+    private static MapFile.Writer openWriter(Configuration conf, Path dir) throws IOException {
+        // fingerprints do not compress
+        SequenceFile.Writer.Option[] options = {MapFile.Writer.keyClass(RecordFingerprint.class),
+                MapFile.Writer.valueClass(NullWritable.class),
+                MapFile.Writer.compression(SequenceFile.CompressionType.NONE)};
+        if (conf.getBoolean(BLOOM, true)) {
+            return new BloomMapFile.Writer(conf, dir, options);
+        }
+        return new MapFile.Writer(conf, dir, options);
+    }
+
+    /** Moves the fingerprints of a successful run into the index and compacts it if needed. */
+    public static void commit(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        Path index = index(conf);
+        FileSystem fs = index.getFileSystem(conf);
+        fs.mkdirs(index);
+        Path added = new Path(FileOutputFormat.getOutputPath(job), FINGERPRINTS);
+        Path generation = nextGeneration(index, generations(fs, index));
+        if (!fs.rename(added, generation)) {
+            throw new IOException("Cannot move " + added + " to " + generation);
+        }
+        List<Path> generations = generations(fs, index);
+        if (generations.size() > conf.getInt(MAX_GENERATIONS, 8)) {
+            compact(conf, fs, index, generations);
+        }
+    }
+
+    /** A reader of one generation and its current key, for the merge. */
+    private static class Head {
+        final MapFile.Reader reader;
+        final RecordFingerprint key = new RecordFingerprint();
+
+        Head(MapFile.Reader reader) {
+            this.reader = reader;
+        }
+
+        boolean next() throws IOException {
+            return reader.next(key, NullWritable.get());
+        }
+    }
+
+    /** Merges all generations into one, partition by partition. */
+    static void compact(Configuration conf, FileSystem fs, Path index, List<Path> generations) throws IOException {
+        Path merged = new Path(index, COMPACTING);
+        fs.delete(merged, true);
+        int partitions = partitions(fs, generations.get(0));
+        for (int p = 0; p < partitions; p++) {
+            String part = partName(p);
+            PriorityQueue<Head> heads = new PriorityQueue<Head>(generations.size(), new Comparator<Head>() {
+                public int compare(Head a, Head b) {
+                    return a.key.compareTo(b.key);
+                }
+            });
+            long bytes = 0;
+            for (Path generation : generations) {
+                Path dir = new Path(generation, part);
+                bytes += fs.getFileStatus(new Path(dir, MapFile.DATA_FILE_NAME)).getLen();
+                Head head = new Head(new MapFile.Reader(dir, conf));
+                if (head.next()) {
+                    heads.add(head);
+                } else {
+                    head.reader.close();
+                }
+            }
+            Configuration sized = new Configuration(conf);
+            sized.setInt(BLOOM_SIZE, (int) Math.min(Integer.MAX_VALUE, Math.max(1024, bytes / BYTES_PER_ENTRY)));
+            MapFile.Writer writer = openWriter(sized, new Path(merged, part));
+            RecordFingerprint last = null;
+            try {
+                while (!heads.isEmpty()) {
+                    Head head = heads.poll();
+                    if (last == null || !last.equals(head.key)) {
+                        writer.append(head.key, NullWritable.get());
+                        last = new RecordFingerprint(head.key.getHigh(), head.key.getLow());
+                    }
+                    if (head.next()) {
+                        heads.add(head);
+                    } else {
+                        head.reader.close();
+                    }
+                }
+            } finally {
+                writer.close();
+                for (Head head : heads) {
+                    head.reader.close();
+                }
+            }
+        }
+        // lookups may see the merged generation next to the old ones for a moment, never neither
+        if (!fs.rename(merged, nextGeneration(index, generations))) {
+            throw new IOException("Cannot move " + merged + " into " + index);
+        }
+        for (Path generation : generations) {
+            fs.delete(generation, true);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2 || conf.get(INDEX) == null) {
+            System.err.println("Usage: incremental -D " + INDEX + "=<index> <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        Job job = createJob(conf, otherArgs);
+        if (!JobMetrics.waitForCompletion(job)) {
+            System.exit(1);
+        }
+        commit(job);
+    }
+
+    /**
+     * Configures the job; {@code paths} are the input paths followed by the output path. The
+     * index keeps the number of partitions it was created with ({@code mapreduce.job.reduces}
+     * on the first run). Running the job alone leaves the new fingerprints in the output's
+     * {@code _fingerprints}; {@link #commit} adds them to the index.
+     */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        Job job = Job.getInstance(conf, "Incremental dedup");
+        job.setJarByClass(IncrementalDedup.class);
+        FingerprintDedup.configure(job);
+        job.setMapperClass(DublicateRemover.FingerprintMapper.class);
+        job.setReducerClass(DeltaReducer.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+
+        Path index = index(conf);
+        FileSystem fs = index.getFileSystem(conf);
+        List<Path> generations = generations(fs, index);
+        if (!generations.isEmpty()) {
+            job.setNumReduceTasks(partitions(fs, generations.get(0)));
+        }
+        CityPartitioning.addInputPaths(job, paths);
+        long bytes = 0;
+        for (Path input : FileInputFormat.getInputPaths(job)) {
+            FileStatus[] matches = input.getFileSystem(conf).globStatus(input);
+            for (FileStatus match : matches == null ? new FileStatus[0] : matches) {
+                bytes += input.getFileSystem(conf).getContentSummary(match.getPath()).getLength();
+            }
+        }
+        // core-default sizes every filter for a million keys
+        long rows = bytes / BYTES_PER_ROW / Math.max(1, job.getNumReduceTasks());
+        job.getConfiguration().setInt(BLOOM_SIZE, (int) Math.min(Integer.MAX_VALUE, Math.max(1024, rows)));
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+}
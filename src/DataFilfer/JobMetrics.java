@@ -0,0 +1,230 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.CounterGroup;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+
+/**
+ * Writes what a finished job measured next to its output, so runs can be compared over time:
+ * {@code _metrics.json} and {@code _metrics.prom}, the same content in JSON and in the
+ * Prometheus text format (for a node exporter's textfile collector, say). Both hold the wall
+ * time, every counter of the job, and the phase histograms of {@link TaskMetrics} with their
+ * mean and approximate p50/p90/p99. The quantiles are bucket bounds, so within a factor of 10,
+ * and come from the sampled calls only; one that falls above the last bound, 10 ms, is null.
+ * <p>
+ * The jobs' {@code main} methods run through {@link #waitForCompletion}; {@link Workflow} and
+ * {@link LocalEngine} write the files themselves. {@code -D metrics.export=false} turns it off.
+ *
+ * @author antonio
+ */
+public class JobMetrics {
+
+    public static final String EXPORT = "metrics.export";
+
+    public static final String JSON_FILE = "_metrics.json";
+    public static final String PROMETHEUS_FILE = "_metrics.prom";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+
+    /** One side and phase, e.g. {@code map.PARSE}, as summed over the tasks. */
+    static final class Histogram {
+        final long[] buckets = new long[TaskMetrics.BUCKETS];
+        long count;
+        long nanos;
+
+        /** The bound of the bucket that holds the {@code q} quantile, in nanoseconds; {@link Long#MAX_VALUE} above the last bound. */
+        long quantile(double q) {
+            long rank = (long) Math.ceil(q * count);
+            long seen = 0;
+            for (int b = 0; b < buckets.length; b++) {
+                seen += buckets[b];
+                if (seen >= rank && seen > 0) {
+                    return TaskMetrics.bound(b);
+                }
+            }
+            return 0;
+        }
+    }
+
+    private JobMetrics() {
+    }
+
+    /** Runs the job like {@link Job#waitForCompletion}{@code (true)} and writes its metrics if it succeeded. */
+    public static boolean waitForCompletion(Job job) throws IOException, InterruptedException, ClassNotFoundException {
+        long started = System.nanoTime();
+        if (!job.waitForCompletion(true)) {
+            return false;
+        }
+        write(job, (System.nanoTime() - started) / 1000000);
+        return true;
+    }
+
+    public static void write(Job job, long millis) throws IOException {
+        write(job.getConfiguration(), FileOutputFormat.getOutputPath(job), job.getJobName(), job.getCounters(), millis);
+    }
+
+    public static void write(Configuration conf, Path output, String name, Counters counters, long millis)
+            throws IOException {
+        if (output == null || !conf.getBoolean(EXPORT, true)) {
+            return;
+        }
+        Map<String, Histogram> phases = histograms(counters);
+        FileSystem fs = output.getFileSystem(conf);
+        write(fs, new Path(output, JSON_FILE), json(name, counters, phases, millis));
+        write(fs, new Path(output, PROMETHEUS_FILE), prometheus(name, counters, phases, millis));
+    }
+
+    private static void write(FileSystem fs, Path file, String text) throws IOException {
+        OutputStream out = fs.create(file, true);
+        try {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            out.close();
+        }
+    }
+
+    /** The histograms of the {@link TaskMetrics#GROUP} counters, by {@code side.PHASE}. */
+    static Map<String, Histogram> histograms(Counters counters) {
+        Map<String, Histogram> phases = new TreeMap<String, Histogram>();
+        for (Counter counter : counters.getGroup(TaskMetrics.GROUP)) {
+            String name = counter.getName();
+            int dot = name.indexOf('.', name.indexOf('.') + 1);
+            if (dot < 0) {
+                continue;
+            }
+            String phase = name.substring(0, dot);
+            String field = name.substring(dot + 1);
+            Histogram histogram = phases.get(phase);
+            if (histogram == null) {
+                histogram = new Histogram();
+                phases.put(phase, histogram);
+            }
+            int bucket = TaskMetrics.bucket(field);
+            if (field.equals("nanos")) {
+                histogram.nanos = counter.getValue();
+            } else if (bucket >= 0) {
+                histogram.buckets[bucket] = counter.getValue();
+                histogram.count += counter.getValue();
+            }
+        }
+        return phases;
+    }
+
+    static String json(String name, Counters counters, Map<String, Histogram> phases, long millis) {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"job\": ").append(quote(name)).append(",\n  \"wallMillis\": ").append(millis);
+        json.append(",\n  \"counters\": {");
+        String separator = "\n";
+        for (CounterGroup group : counters) {
+            if (group.getName().equals(TaskMetrics.GROUP)) {
+                continue;
+            }
+            json.append(separator).append("    ").append(quote(group.getName())).append(": {");
+            String inner = "\n";
+            for (Counter counter : group) {
+                json.append(inner).append("      ").append(quote(counter.getName())).append(": ").append(counter.getValue());
+                inner = ",\n";
+            }
+            json.append("\n    }");
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"phases\": {");
+        separator = "\n";
+        for (Map.Entry<String, Histogram> phase : phases.entrySet()) {
+            Histogram histogram = phase.getValue();
+            json.append(separator).append("    ").append(quote(phase.getKey())).append(": {\"samples\": ")
+                    .append(histogram.count).append(", \"meanNanos\": ")
+                    .append(histogram.count == 0 ? 0 : histogram.nanos / histogram.count);
+            for (double q : QUANTILES) {
+                long quantile = histogram.quantile(q);
+                json.append(", \"p").append(percentile(q)).append("Nanos\": ")
+                        .append(quantile == Long.MAX_VALUE ? "null" : Long.toString(quantile));
+            }
+            json.append(", \"buckets\": {");
+            String inner = "";
+            for (int b = 0; b < histogram.buckets.length; b++) {
+                if (histogram.buckets[b] > 0) {
+                    json.append(inner).append(quote(TaskMetrics.bucketName(b).substring(3))).append(": ").append(histogram.buckets[b]);
+                    inner = ", ";
+                }
+            }
+            json.append("}}");
+            separator = ",\n";
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    static String prometheus(String name, Counters counters, Map<String, Histogram> phases, long millis) {
+        StringBuilder text = new StringBuilder();
+        String job = "job=\"" + escape(name) + "\"";
+        text.append("# HELP datafilfer_job_seconds Wall time of the job.\n");
+        text.append("# TYPE datafilfer_job_seconds gauge\n");
+        text.append("datafilfer_job_seconds{").append(job).append("} ").append(millis / 1e3).append('\n');
+        text.append("# HELP datafilfer_counter Hadoop counters of the job.\n");
+        text.append("# TYPE datafilfer_counter gauge\n");
+        for (CounterGroup group : counters) {
+            if (group.getName().equals(TaskMetrics.GROUP)) {
+                continue;
+            }
+            for (Counter counter : group) {
+                text.append("datafilfer_counter{").append(job).append(",group=\"").append(escape(group.getName()))
+                        .append("\",counter=\"").append(escape(counter.getName())).append("\"} ")
+                        .append(counter.getValue()).append('\n');
+            }
+        }
+        text.append("# HELP datafilfer_phase_seconds Time per phase of the sampled map and reduce calls.\n");
+        text.append("# TYPE datafilfer_phase_seconds histogram\n");
+        for (Map.Entry<String, Histogram> phase : phases.entrySet()) {
+            String key = phase.getKey();
+            int dot = key.indexOf('.');
+            String labels = job + ",side=\"" + key.substring(0, dot) + "\",phase=\"" + key.substring(dot + 1) + "\"";
+            Histogram histogram = phase.getValue();
+            long cumulative = 0;
+            for (int b = 0; b < TaskMetrics.BUCKETS - 1; b++) {
+                cumulative += histogram.buckets[b];
+                text.append("datafilfer_phase_seconds_bucket{").append(labels).append(",le=\"")
+                        .append(TaskMetrics.bound(b) / 1e9).append("\"} ").append(cumulative).append('\n');
+            }
+            text.append("datafilfer_phase_seconds_bucket{").append(labels).append(",le=\"+Inf\"} ")
+                    .append(histogram.count).append('\n');
+            text.append("datafilfer_phase_seconds_sum{").append(labels).append("} ").append(histogram.nanos / 1e9).append('\n');
+            text.append("datafilfer_phase_seconds_count{").append(labels).append("} ").append(histogram.count).append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String percentile(double q) {
+        String digits = Double.toString(q * 100);
+        return digits.endsWith(".0") ? digits.substring(0, digits.length() - 2) : digits.replace('.', '_');
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static String escape(String label) {
+        return label.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
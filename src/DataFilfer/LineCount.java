@@ -0,0 +1,53 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A record and how many times it has been seen so far; the value side of the
+ * fingerprint dedup shuffle.
+ *
+ * @author antonio
+ */
+public class LineCount implements Writable {
+
+    private final Text line = new Text();
+    private int count;
+
+    public Text getLine() {
+        return line;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public LineCount set(byte[] bytes, int offset, int length, int count) {
+        line.set(bytes, offset, length);
+        this.count = count;
+        return this;
+    }
+
+    public LineCount set(Text line, int count) {
+        return set(line.getBytes(), 0, line.getLength(), count);
+    }
+
+    public void add(int more) {
+        count += more;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        line.write(out);
+        WritableUtils.writeVInt(out, count);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        line.readFields(in);
+        count = WritableUtils.readVInt(in);
+    }
+}
@@ -1,64 +1,178 @@
 package DataFilfer;
 
-import org.apache.commons.math3.linear.RealMatrix;
-import org.apache.commons.math3.linear.RealVector;
-import org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Job;
 import org.apache.hadoop.mapreduce.Mapper;
-import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.Reducer;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
 import org.apache.hadoop.util.GenericOptionsParser;
-import org.apache.commons.math3.stat.regression.AbstractMultipleLinearRegression;
 
 import java.io.IOException;
 
+/**
+ * Multiple linear regression over the cleaned, numeric dataset
+ * (POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,SQUARE_M,READY_TO_MOVE,RESALE,LONGITUDE,LATITUDE,TARGET).
+ * Every mapper streams its split into {@link NormalEquations}, the combiner and the single
+ * reducer add the partials up and the reducer solves the system, so memory stays O(features^2)
+ * and any number of rows and splits can be used. Rows that do not parse (e.g. the header) are
+ * counted and skipped.
+ * With {@code -D linear.input=binary} the input is read through {@link HouseRecordInputFormat}
+ * and the column indices refer to {@link HouseRecordWritable#toVector}, which has the same
+ * default layout, so nothing is parsed at all.
+ * The fitted model is also saved as {@code _model} in the output, for {@link LinearScorer}.
+ */
 public class Linear {
-    public static class FilterMapper extends Mapper<LongWritable, Text, Text, Text> {
-        int lines=0;
-        int i =0;
-        double[][] x = new double[26005][9];
-        double[] y = new  double[26005];
+
+    /** Comma separated column indices used as features. */
+    public static final String FEATURES = "linear.features";
+    /** Column index of the target. */
+    public static final String TARGET = "linear.target";
+    /** {@code binary} to read {@link HouseRecordWritable}s instead of CSV. */
+    public static final String INPUT = "linear.input";
+
+    public enum Counters { ROWS, SKIPPED_ROWS }
+
+    static int[] featureColumns(Configuration conf) {
+        String[] columns = conf.getTrimmedStrings(FEATURES, "0", "1", "2", "3", "4", "5", "6", "7", "8");
+        int[] features = new int[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            features[c] = Integer.parseInt(columns[c]);
+        }
+        return features;
+    }
+
+    public static class FilterMapper extends Mapper<LongWritable, Text, NullWritable, NormalEquations> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private int[] features;
+        private int target;
+        private double[] x;
+        private NormalEquations sums;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            features = featureColumns(context.getConfiguration());
+            target = context.getConfiguration().getInt(TARGET, 9);
+            x = new double[features.length];
+            sums = new NormalEquations(features.length);
+            metrics = new TaskMetrics(context);
+        }
+
         public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
-            if(i > 0) {
-                String line = value.toString();
-                String[] words = line.split(",(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", -1);
-
-                x[lines][0] = Double.parseDouble(words[0]);
-                x[lines][1] = Double.parseDouble(words[1]);
-                x[lines][2] = Double.parseDouble(words[2]);
-                x[lines][3] = Double.parseDouble(words[3]);
-                x[lines][4] = Double.parseDouble(words[4]);
-                x[lines][5] = Double.parseDouble(words[5]);
-                x[lines][6] = Double.parseDouble(words[6]);
-                x[lines][7] = Double.parseDouble(words[7]);
-                x[lines][8] = Double.parseDouble(words[8]);
-                y[lines] = Double.parseDouble(words[9]);
-
-                if (i == 26004){
-                    OLSMultipleLinearRegression regression = new OLSMultipleLinearRegression();
-                    regression.newSampleData(y, x);
-
-                    double[] beta = regression.estimateRegressionParameters();
-                    double ARto2 = regression.calculateAdjustedRSquared();
-
-                    double Rto2 = regression.calculateRSquared();
-                    regression.calculateResidualSumOfSquares();
-
-                    String betas = beta[0]+", "+beta[1]+", "+beta[2]+", "+beta[3]+", "+beta[4]+", "+beta[5]+", "+beta[6]+", "+beta[7]+", "+beta[8]+", "+beta[9];
-                    context.write(new Text("estimateRegressionParameters"), new Text(betas));
-                    context.write(new Text("length"), new Text(String.valueOf(beta.length)));
-                    context.write(new Text("AdjustedRSquared"), new Text(String.valueOf(ARto2)));
-                    context.write(new Text("RSquared"), new Text(String.valueOf(Rto2)));
+            metrics.next();
+            tokens.reset(value);
+            double y;
+            try {
+                for (int c = 0; c < features.length; c++) {
+                    x[c] = tokens.parseDouble(features[c]);
+                }
+                y = tokens.parseDouble(target);
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.SKIPPED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            sums.add(x, y);
+            context.getCounter(Counters.ROWS).increment(1);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (sums.getN() > 0) {
+                context.write(NullWritable.get(), sums);
+            }
+            metrics.close();
+        }
+    }
+
+    public static class RecordMapper extends Mapper<NullWritable, HouseRecordWritable, NullWritable, NormalEquations> {
+        private final double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        private int[] features;
+        private int target;
+        private double[] x;
+        private NormalEquations sums;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            features = featureColumns(context.getConfiguration());
+            target = context.getConfiguration().getInt(TARGET, 9);
+            x = new double[features.length];
+            sums = new NormalEquations(features.length);
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            value.toVector(vector);
+            for (int c = 0; c < features.length; c++) {
+                x[c] = vector[features[c]];
+            }
+            sums.add(x, vector[target]);
+            context.getCounter(Counters.ROWS).increment(1);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) throws IOException, InterruptedException {
+            if (sums.getN() > 0) {
+                context.write(NullWritable.get(), sums);
+            }
+            metrics.close();
+        }
+    }
+
+    public static class MergeCombiner extends Reducer<NullWritable, NormalEquations, NullWritable, NormalEquations> {
+        private final NormalEquations sums = new NormalEquations();
+
+        public void reduce(NullWritable key, Iterable<NormalEquations> values, Context context) throws IOException, InterruptedException {
+            sums.reset(0);
+            for (NormalEquations partial : values) {
+                sums.merge(partial);
+            }
+            context.write(key, sums);
+        }
+    }
+
+    public static class SolveReducer extends Reducer<NullWritable, NormalEquations, Text, Text> {
+        private TaskMetrics metrics;
 
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+        }
+
+        public void reduce(NullWritable key, Iterable<NormalEquations> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            NormalEquations sums = new NormalEquations();
+            for (NormalEquations partial : values) {
+                sums.merge(partial);
+            }
+            double[] beta = sums.solve();
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+
+            StringBuilder betas = new StringBuilder();
+            for (int i = 0; i < beta.length; i++) {
+                if (i > 0) {
+                    betas.append(", ");
                 }
-            lines++;
+                betas.append(beta[i]);
             }
-            i++;
+            context.write(new Text("estimateRegressionParameters"), new Text(betas.toString()));
+            context.write(new Text("length"), new Text(String.valueOf(beta.length)));
+            context.write(new Text("AdjustedRSquared"), new Text(String.valueOf(sums.adjustedRSquared(beta))));
+            context.write(new Text("RSquared"), new Text(String.valueOf(sums.rSquared(beta))));
+
+            Configuration conf = context.getConfiguration();
+            new LinearModel(featureColumns(conf), conf.getInt(TARGET, 9), beta, sums.getN(), sums.rSquared(beta))
+                    .save(conf, new Path(FileOutputFormat.getWorkOutputPath(context), LinearModel.FILE));
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output(4);
+        }
 
+        protected void cleanup(Context context) {
+            metrics.close();
         }
     }
 
@@ -66,22 +180,32 @@ public class Linear {
         Configuration conf = new Configuration();
         String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
         if (otherArgs.length < 2) {
-            System.err.println("Usage: wordcount <in> [<in>...] <out>");
+            System.err.println("Usage: linear <in> [<in>...] <out>");
             System.exit(2);
         }
-        Job job = Job.getInstance(conf, "Removing the feature BHK");
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        Job job = Job.getInstance(conf, "Linear regression");
         job.setJarByClass(Linear.class);
-        job.setMapperClass(FilterMapper.class);
-        //job.setCombinerClass(IntSumReducer.class);
-        //job.setReducerClass(IntSumReducer.class);
-        job.setNumReduceTasks(0);
+        if ("binary".equals(conf.get(INPUT))) {
+            job.setMapperClass(RecordMapper.class);
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        } else {
+            job.setMapperClass(FilterMapper.class);
+        }
+        job.setCombinerClass(MergeCombiner.class);
+        job.setReducerClass(SolveReducer.class);
+        job.setNumReduceTasks(1);
+        job.setMapOutputKeyClass(NullWritable.class);
+        job.setMapOutputValueClass(NormalEquations.class);
         job.setOutputKeyClass(Text.class);
         job.setOutputValueClass(Text.class);
-        for (int i = 0; i < otherArgs.length - 1; ++i) {
-            FileInputFormat.addInputPath(job, new Path(otherArgs[i]));
-        }
-        FileOutputFormat.setOutputPath(job,
-                new Path(otherArgs[otherArgs.length - 1]));
-        System.exit(job.waitForCompletion(true) ? 0 : 1);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
     }
 }
@@ -0,0 +1,124 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * A fitted {@link Linear} model as {@link LinearScorer} loads it: the feature columns, in the
+ * {@link HouseRecordWritable#toVector} layout, the target column, the coefficients (intercept
+ * first) and the fit's row count and R^2. {@link Linear} saves one as {@code _model} in its
+ * output.
+ *
+ * @author antonio
+ */
+public class LinearModel implements Writable {
+
+    /** File name of the model in a {@link Linear} output directory. */
+    public static final String FILE = "_model";
+
+    private static final int VERSION = 1;
+
+    private int[] features = new int[0];
+    private int target;
+    private double[] beta = new double[1];
+    private long rows;
+    private double rSquared;
+
+    public LinearModel() {
+    }
+
+    public LinearModel(int[] features, int target, double[] beta, long rows, double rSquared) {
+        if (beta.length != features.length + 1) {
+            throw new IllegalArgumentException(beta.length + " coefficients for " + features.length + " features");
+        }
+        this.features = features.clone();
+        this.target = target;
+        this.beta = beta.clone();
+        this.rows = rows;
+        this.rSquared = rSquared;
+    }
+
+    public int[] getFeatures() {
+        return features.clone();
+    }
+
+    public int getTarget() {
+        return target;
+    }
+
+    /** The intercept followed by one slope per feature. */
+    public double[] getBeta() {
+        return beta.clone();
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public double getRSquared() {
+        return rSquared;
+    }
+
+    public void save(Configuration conf, Path file) throws IOException {
+        DataOutputStream out = file.getFileSystem(conf).create(file);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** Reads the model from {@code path}, a model file or the output directory of a {@link Linear} job. */
+    public static LinearModel load(Configuration conf, Path path) throws IOException {
+        FileSystem fs = path.getFileSystem(conf);
+        Path file = fs.getFileStatus(path).isDirectory() ? new Path(path, FILE) : path;
+        LinearModel model = new LinearModel();
+        DataInputStream in = fs.open(file);
+        try {
+            model.readFields(in);
+        } finally {
+            in.close();
+        }
+        return model;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeInt(features.length);
+        for (int feature : features) {
+            out.writeInt(feature);
+        }
+        out.writeInt(target);
+        for (double b : beta) {
+            out.writeDouble(b);
+        }
+        out.writeLong(rows);
+        out.writeDouble(rSquared);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported model version " + version);
+        }
+        features = new int[in.readInt()];
+        for (int i = 0; i < features.length; i++) {
+            features[i] = in.readInt();
+        }
+        target = in.readInt();
+        beta = new double[features.length + 1];
+        for (int i = 0; i < beta.length; i++) {
+            beta[i] = in.readDouble();
+        }
+        rows = in.readLong();
+        rSquared = in.readDouble();
+    }
+}
@@ -0,0 +1,263 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Scores listings with a {@link LinearModel}, in process or as a map-only job.
+ * <p>
+ * Records are turned into the model's features through {@link HouseRecordWritable}, so raw
+ * train.csv rows get the same unit conversions as {@link FeatureRemover} applies before
+ * training. In process, {@link Batch} gathers the features of up to a batch of records into one
+ * primitive array per feature and {@link #score(double[][], int, double[])} scores them with one
+ * multiply-add pass per feature, allocating nothing; the JIT vectorizes those loops.
+ * <p>
+ * The job ({@code -D scorer.model=<Linear output or model file> <in>... <out>}) appends the
+ * prediction to each row; the input is raw rows unless {@code scorer.input} is {@code cleaned}
+ * or {@code binary}, which is written out in the cleaned layout.
+ *
+ * @author antonio
+ */
+public class LinearScorer {
+
+    public static final String MODEL = "scorer.model";
+    /** {@code raw} (default), {@code cleaned} or {@code binary}. */
+    public static final String INPUT = "scorer.input";
+
+    public static final String PREDICTION = "PREDICTED_PRICE";
+
+    private static final byte[] POSTED_BY = {'P', 'O', 'S', 'T', 'E', 'D', '_', 'B', 'Y'};
+
+    public enum Counters { ROWS, HEADER_ROWS, MALFORMED_ROWS }
+
+    private final int[] features;
+    private final double intercept;
+    private final double[] slopes;
+
+    public LinearScorer(LinearModel model) {
+        features = model.getFeatures();
+        double[] beta = model.getBeta();
+        intercept = beta[0];
+        slopes = Arrays.copyOfRange(beta, 1, beta.length);
+        for (int feature : features) {
+            if (feature < 0 || feature >= HouseRecordWritable.VECTOR_SIZE) {
+                throw new IllegalArgumentException("Feature column " + feature + " is not in the record vector");
+            }
+        }
+    }
+
+    public static LinearScorer load(Configuration conf, Path model) throws IOException {
+        return new LinearScorer(LinearModel.load(conf, model));
+    }
+
+    public int getFeatureCount() {
+        return features.length;
+    }
+
+    /** The prediction for a {@link HouseRecordWritable#toVector} vector. */
+    public double score(double[] vector) {
+        double y = intercept;
+        for (int f = 0; f < features.length; f++) {
+            y += slopes[f] * vector[features[f]];
+        }
+        return y;
+    }
+
+    /** The prediction for a record; {@code vector} is scratch of {@link HouseRecordWritable#VECTOR_SIZE}. */
+    public double score(HouseRecordWritable record, double[] vector) {
+        record.toVector(vector);
+        return score(vector);
+    }
+
+    /**
+     * Scores {@code count} rows given column by column, {@code columns[f][i]} being feature
+     * {@code f} of row {@code i}, into {@code out}.
+     */
+    public void score(double[][] columns, int count, double[] out) {
+        Arrays.fill(out, 0, count, intercept);
+        for (int f = 0; f < slopes.length; f++) {
+            double slope = slopes[f];
+            double[] column = columns[f];
+            for (int i = 0; i < count; i++) {
+                out[i] += slope * column[i];
+            }
+        }
+    }
+
+    /** Reused column buffers for scoring records a batch at a time. */
+    public static class Batch {
+        private final LinearScorer scorer;
+        private final double[][] columns;
+        private final double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        private int count;
+
+        public Batch(LinearScorer scorer, int capacity) {
+            this.scorer = scorer;
+            this.columns = new double[scorer.features.length][capacity];
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public int capacity() {
+            return columns.length > 0 ? columns[0].length : Integer.MAX_VALUE;
+        }
+
+        /** Adds a record's features; returns true when the batch is full. */
+        public boolean add(HouseRecordWritable record) {
+            record.toVector(vector);
+            int[] features = scorer.features;
+            for (int f = 0; f < features.length; f++) {
+                columns[f][count] = vector[features[f]];
+            }
+            return ++count == capacity();
+        }
+
+        /** Scores the records added since the last {@link #clear} into {@code out}; returns their number. */
+        public int score(double[] out) {
+            scorer.score(columns, count, out);
+            return count;
+        }
+
+        public void clear() {
+            count = 0;
+        }
+    }
+
+    public static class ScoreMapper extends Mapper<LongWritable, Text, Text, Text> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final HouseRecordWritable record = new HouseRecordWritable();
+        private final double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        private final Text empty = new Text("");
+        private final Text out = new Text();
+        private LinearScorer scorer;
+        private boolean cleaned;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            scorer = load(conf, new Path(conf.get(MODEL)));
+            cleaned = "cleaned".equals(conf.get(INPUT));
+            metrics = new TaskMetrics(context);
+            if (context.getTaskAttemptID().getTaskID().getId() == 0) {
+                context.write(new Text((cleaned ? FeatureTitle.HEADER : ProjectionPlan.RAW_INPUT) + "," + PREDICTION), empty);
+                metrics.output();
+            }
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            tokens.reset(value);
+            if (key.get() == 0 && tokens.fieldEquals(0, POSTED_BY)) {
+                context.getCounter(Counters.HEADER_ROWS).increment(1);
+                return;
+            }
+            try {
+                if (cleaned) {
+                    record.setCleaned(tokens);
+                } else {
+                    record.setRaw(tokens);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.MALFORMED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            out.set(value);
+            append(out, scorer.score(record, vector));
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(out, empty);
+            context.getCounter(Counters.ROWS).increment(1);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static class RecordMapper extends Mapper<NullWritable, HouseRecordWritable, Text, Text> {
+        private final double[] vector = new double[HouseRecordWritable.VECTOR_SIZE];
+        private final Text empty = new Text("");
+        private final Text out = new Text();
+        private LinearScorer scorer;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) throws IOException, InterruptedException {
+            Configuration conf = context.getConfiguration();
+            scorer = load(conf, new Path(conf.get(MODEL)));
+            metrics = new TaskMetrics(context);
+            if (context.getTaskAttemptID().getTaskID().getId() == 0) {
+                context.write(new Text(FeatureTitle.HEADER + "," + PREDICTION), empty);
+                metrics.output();
+            }
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            value.toCsv(out);
+            append(out, scorer.score(value, vector));
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            context.write(out, empty);
+            context.getCounter(Counters.ROWS).increment(1);
+            metrics.phase(TaskMetrics.Phase.WRITE);
+            metrics.output();
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    private static void append(Text out, double prediction) {
+        byte[] bytes = ("," + prediction).getBytes(StandardCharsets.US_ASCII);
+        out.append(bytes, 0, bytes.length);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2 || conf.get(MODEL) == null) {
+            System.err.println("Usage: score -D " + MODEL + "=<model> <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        System.exit(JobMetrics.waitForCompletion(createJob(conf, otherArgs)) ? 0 : 1);
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        if (conf.get(MODEL) == null) {
+            throw new IOException(MODEL + " is not set");
+        }
+        load(conf, new Path(conf.get(MODEL)));
+        Job job = Job.getInstance(conf, "Linear scoring");
+        job.setJarByClass(LinearScorer.class);
+        if ("binary".equals(conf.get(INPUT))) {
+            job.setMapperClass(RecordMapper.class);
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        } else {
+            job.setMapperClass(ScoreMapper.class);
+        }
+        job.setNumReduceTasks(0);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+}
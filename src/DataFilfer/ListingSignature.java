@@ -0,0 +1,127 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * A listing as {@link NearDuplicates} compares it: the input line, the geohash cell it lies in,
+ * its validated coordinates, area and price, and the MinHash signature of its address.
+ *
+ * @author antonio
+ */
+public class ListingSignature implements Writable {
+
+    private final Text line = new Text();
+    private final Text home = new Text();
+    private double latitude;
+    private double longitude;
+    private double area;
+    private double price;
+    private int[] minHashes = new int[0];
+    private int size;
+
+    public Text getLine() {
+        return line;
+    }
+
+    /** The block cell the listing itself lies in. */
+    public Text getHome() {
+        return home;
+    }
+
+    public double getLatitude() {
+        return latitude;
+    }
+
+    public double getLongitude() {
+        return longitude;
+    }
+
+    public double getArea() {
+        return area;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void set(Text line, double latitude, double longitude, double area, double price) {
+        this.line.set(line);
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.area = area;
+        this.price = price;
+    }
+
+    /** The signature array, resized to {@code size} hashes, for the caller to fill. */
+    public int[] minHashes(int size) {
+        if (minHashes.length < size) {
+            minHashes = new int[size];
+        }
+        this.size = size;
+        return minHashes;
+    }
+
+    /** True when hashes {@code [from, to)} of both signatures agree, i.e. they share that band. */
+    public boolean sameBand(ListingSignature other, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (minHashes[i] != other.minHashes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Fraction of equal MinHashes, an estimate of the Jaccard similarity of the addresses. */
+    public double similarity(ListingSignature other) {
+        int equal = 0;
+        for (int i = 0; i < size; i++) {
+            if (minHashes[i] == other.minHashes[i]) {
+                equal++;
+            }
+        }
+        return (double) equal / size;
+    }
+
+    public void copy(ListingSignature other) {
+        home.set(other.home);
+        set(other.line, other.latitude, other.longitude, other.area, other.price);
+        System.arraycopy(other.minHashes, 0, minHashes(other.size), 0, other.size);
+    }
+
+    public void write(DataOutput out) throws IOException {
+        line.write(out);
+        home.write(out);
+        out.writeDouble(latitude);
+        out.writeDouble(longitude);
+        out.writeDouble(area);
+        out.writeDouble(price);
+        WritableUtils.writeVInt(out, size);
+        for (int i = 0; i < size; i++) {
+            out.writeInt(minHashes[i]);
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        line.readFields(in);
+        home.readFields(in);
+        latitude = in.readDouble();
+        longitude = in.readDouble();
+        area = in.readDouble();
+        price = in.readDouble();
+        int[] hashes = minHashes(WritableUtils.readVInt(in));
+        for (int i = 0; i < size; i++) {
+            hashes[i] = in.readInt();
+        }
+    }
+
+    public String toString() {
+        return line + " " + home + " " + Arrays.toString(Arrays.copyOf(minHashes, size));
+    }
+}
@@ -0,0 +1,691 @@
+package DataFilfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.RawComparator;
+import org.apache.hadoop.io.serializer.SerializationFactory;
+import org.apache.hadoop.io.serializer.Serializer;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.JobContext;
+import org.apache.hadoop.mapreduce.JobID;
+import org.apache.hadoop.mapreduce.JobStatus;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.OutputFormat;
+import org.apache.hadoop.mapreduce.Partitioner;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.TaskCounter;
+import org.apache.hadoop.mapreduce.TaskID;
+import org.apache.hadoop.mapreduce.TaskType;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.mapreduce.lib.reduce.WrappedReducer;
+import org.apache.hadoop.mapreduce.task.JobContextImpl;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.apache.hadoop.mapreduce.task.ReduceContextImpl;
+import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.Progress;
+import org.apache.hadoop.util.ReflectionUtils;
+
+/**
+ * Runs a configured {@link Job} inside this JVM, without YARN or the local job runner: the
+ * job's own input splits are mapped on a fork-join pool (local text files through
+ * {@link MappedLineRecordReader}), map output is sorted in memory per partition and combined,
+ * the sorted runs of every map are merged for the reducers, and the job's output format and
+ * committer write the result. Task ids, split order and part file names follow Hadoop, so the
+ * output files are the ones a Hadoop run writes. Everything between map and reduce stays on
+ * the heap, so this is meant for inputs that fit in memory.
+ * <p>
+ * Usage: {@code LocalEngine <job class> [generic options] <in> [<in>...] <out>}, where the job
+ * class has a {@code createJob(Configuration, String[])} factory. An engine can run any number
+ * of jobs; {@link #close} stops its threads.
+ *
+ * @author antonio
+ */
+public class LocalEngine implements Closeable {
+
+    /** Number of worker threads; defaults to the number of cores. */
+    public static final String THREADS = "engine.threads";
+
+    private static final AtomicInteger JOB_IDS = new AtomicInteger();
+
+    private final ForkJoinPool pool;
+    private final Counters counters = new Counters();
+
+    public LocalEngine(int threads) {
+        pool = new ForkJoinPool(threads);
+    }
+
+    public Counters getCounters() {
+        return counters;
+    }
+
+    /** Shuts the worker threads down once the job running, if any, is done. */
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Runs the job to completion and returns true. When a task fails the job is aborted and the
+     * task's exception is thrown, wrapped in an IOException unless it is one.
+     */
+    public boolean run(Job job) throws IOException, InterruptedException {
+        final JobConf conf = new JobConf(job.getConfiguration());
+        final JobID jobId = new JobID("engine" + System.currentTimeMillis(), JOB_IDS.incrementAndGet());
+        final JobContext context = new JobContextImpl(conf, jobId);
+        final InputFormat<?, ?> inputFormat;
+        final OutputFormat<?, ?> outputFormat;
+        try {
+            inputFormat = ReflectionUtils.newInstance(context.getInputFormatClass(), conf);
+            outputFormat = ReflectionUtils.newInstance(context.getOutputFormatClass(), conf);
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+        outputFormat.checkOutputSpecs(context);
+
+        // the submitter hands out task ids by split size, largest first
+        List<InputSplit> splits = new ArrayList<InputSplit>(inputFormat.getSplits(context));
+        Collections.sort(splits, new Comparator<InputSplit>() {
+            public int compare(InputSplit a, InputSplit b) {
+                try {
+                    return Long.compare(b.getLength(), a.getLength());
+                } catch (IOException | InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+
+        final int reduces = context.getNumReduceTasks();
+        final OutputCommitter committer = outputFormat.getOutputCommitter(
+                new TaskAttemptContextImpl(conf, new TaskAttemptID(new TaskID(jobId, TaskType.MAP, 0), 0)));
+        committer.setupJob(context);
+        try {
+            List<Callable<Run[]>> maps = new ArrayList<Callable<Run[]>>();
+            for (int i = 0; i < splits.size(); i++) {
+                final InputSplit split = splits.get(i);
+                final int index = i;
+                maps.add(new Callable<Run[]>() {
+                    public Run[] call() throws Exception {
+                        return runMap(context, jobId, inputFormat, split, index, reduces);
+                    }
+                });
+            }
+            final List<Run[]> mapOutputs = invokeAll(maps);
+
+            List<Callable<Void>> reducers = new ArrayList<Callable<Void>>();
+            for (int r = 0; r < reduces; r++) {
+                final int partition = r;
+                reducers.add(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        List<Run> runs = new ArrayList<Run>();
+                        for (Run[] output : mapOutputs) {
+                            if (output[partition].size > 0) {
+                                runs.add(output[partition]);
+                            }
+                        }
+                        runReduce(context, jobId, runs, partition);
+                        return null;
+                    }
+                });
+            }
+            invokeAll(reducers);
+            committer.commitJob(context);
+            return true;
+        } catch (Exception e) {
+            try {
+                committer.abortJob(context, JobStatus.State.FAILED);
+            } catch (IOException abort) {
+                e.addSuppressed(abort);
+            }
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof InterruptedException) {
+                throw (InterruptedException) e;
+            }
+            throw new IOException(job.getJobName() + " failed", e);
+        }
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws Exception {
+        List<T> results = new ArrayList<T>();
+        for (Future<T> future : pool.invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        return results;
+    }
+
+    /** The task's own copy of the configuration, with the properties a Hadoop task sees. */
+    private static JobConf taskConf(JobContext job, TaskAttemptID attempt, boolean isMap) {
+        JobConf conf = new JobConf(job.getConfiguration());
+        conf.set(MRJobConfig.ID, attempt.getJobID().toString());
+        conf.set(MRJobConfig.TASK_ID, attempt.getTaskID().toString());
+        conf.set(MRJobConfig.TASK_ATTEMPT_ID, attempt.toString());
+        conf.setBoolean(MRJobConfig.TASK_ISMAP, isMap);
+        conf.setInt(MRJobConfig.TASK_PARTITION, attempt.getTaskID().getId());
+        return conf;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Run[] runMap(JobContext job, JobID jobId, InputFormat inputFormat, InputSplit split,
+                         int index, int reduces) throws Exception {
+        TaskAttemptID attempt = new TaskAttemptID(new TaskID(jobId, TaskType.MAP, index), 0);
+        JobConf conf = taskConf(job, attempt, true);
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, attempt);
+        // a task of its own output format, whose committer works in this attempt's directory
+        OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), conf);
+        OutputCommitter committer = outputFormat.getOutputCommitter(context);
+        TaskReporter reporter = new TaskReporter();
+        Mapper mapper = ReflectionUtils.newInstance(job.getMapperClass(), conf);
+        RecordReader reader = MappedLineRecordReader.canRead(inputFormat, split, conf)
+                ? new MappedLineRecordReader() : inputFormat.createRecordReader(split, context);
+        reader = new CountingReader(reader, reporter.getCounter(TaskCounter.MAP_INPUT_RECORDS));
+        committer.setupTask(context);
+
+        SortBuffer buffer = null;
+        RecordWriter writer;
+        if (reduces == 0) {
+            writer = new CountingWriter(outputFormat.getRecordWriter(context), reporter.getCounter(TaskCounter.MAP_OUTPUT_RECORDS));
+        } else {
+            buffer = new SortBuffer(conf, reduces, job.getPartitionerClass(), job.getMapOutputKeyClass(), job.getMapOutputValueClass(),
+                    reporter.getCounter(TaskCounter.MAP_OUTPUT_RECORDS));
+            writer = buffer;
+        }
+        MapContextImpl mapContext = new MapContextImpl(conf, attempt, reader, writer, committer, reporter, split);
+        try {
+            reader.initialize(split, mapContext);
+            mapper.run(new WrappedMapper().getMapContext(mapContext));
+        } catch (Throwable e) {
+            closeFailed(reader, writer, mapContext, e);
+            throw e;
+        }
+        reader.close();
+        writer.close(mapContext);
+
+        // side outputs of the map (e.g. MultipleOutputs) are committed even when there are reducers
+        if (committer.needsTaskCommit(context)) {
+            committer.commitTask(context);
+        }
+        Run[] runs = new Run[0];
+        if (buffer != null) {
+            runs = buffer.sort(job.getSortComparator());
+            if (job.getCombinerClass() != null) {
+                for (int r = 0; r < runs.length; r++) {
+                    runs[r] = combine(job, conf, attempt, committer, reporter, runs[r]);
+                }
+            }
+        }
+        reporter.addTo(counters);
+        return runs;
+    }
+
+    /**
+     * Closes what a failed task left open, as Hadoop's tasks do, so a mapped file or an open
+     * output stream does not outlive it; what closing throws is added to {@code failure}.
+     */
+    private static void closeFailed(RecordReader<?, ?> reader, RecordWriter<?, ?> writer, TaskAttemptContext context,
+                                    Throwable failure) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                failure.addSuppressed(e);
+            }
+        }
+        try {
+            writer.close(context);
+        } catch (IOException | InterruptedException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Run combine(JobContext job, JobConf conf, TaskAttemptID attempt, OutputCommitter committer,
+                               TaskReporter reporter, Run run) throws Exception {
+        if (run.size == 0) {
+            return run;
+        }
+        SortBuffer buffer = new SortBuffer(conf, 1, null, job.getMapOutputKeyClass(), job.getMapOutputValueClass(),
+                reporter.getCounter(TaskCounter.COMBINE_OUTPUT_RECORDS));
+        Reducer combiner = ReflectionUtils.newInstance(job.getCombinerClass(), conf);
+        ReduceContextImpl context = new ReduceContextImpl(conf, attempt, run.iterator(), null,
+                reporter.getCounter(TaskCounter.COMBINE_INPUT_RECORDS), buffer, committer, reporter,
+                job.getCombinerKeyGroupingComparator(), job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+        combiner.run(new WrappedReducer().getReducerContext(context));
+        return buffer.unsorted();
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void runReduce(JobContext job, JobID jobId, List<Run> runs, int partition) throws Exception {
+        TaskAttemptID attempt = new TaskAttemptID(new TaskID(jobId, TaskType.REDUCE, partition), 0);
+        JobConf conf = taskConf(job, attempt, false);
+        TaskAttemptContext context = new TaskAttemptContextImpl(conf, attempt);
+        OutputFormat outputFormat = ReflectionUtils.newInstance(job.getOutputFormatClass(), conf);
+        OutputCommitter committer = outputFormat.getOutputCommitter(context);
+        TaskReporter reporter = new TaskReporter();
+        Reducer reducer = ReflectionUtils.newInstance(job.getReducerClass(), conf);
+        RawKeyValueIterator input = runs.size() == 1
+                ? runs.get(0).iterator() : new MergeIterator(runs, job.getSortComparator());
+        committer.setupTask(context);
+
+        RecordWriter writer = new CountingWriter(outputFormat.getRecordWriter(context),
+                reporter.getCounter(TaskCounter.REDUCE_OUTPUT_RECORDS));
+        ReduceContextImpl reduceContext = new ReduceContextImpl(conf, attempt, input,
+                reporter.getCounter(TaskCounter.REDUCE_INPUT_GROUPS), reporter.getCounter(TaskCounter.REDUCE_INPUT_RECORDS),
+                writer, committer, reporter, job.getGroupingComparator(), job.getMapOutputKeyClass(), job.getMapOutputValueClass());
+        try {
+            reducer.run(new WrappedReducer().getReducerContext(reduceContext));
+        } catch (Throwable e) {
+            closeFailed(null, writer, reduceContext, e);
+            throw e;
+        }
+        writer.close(reduceContext);
+        if (committer.needsTaskCommit(context)) {
+            committer.commitTask(context);
+        }
+        reporter.addTo(counters);
+    }
+
+    /** Counters of one task, added to the job's when the task is done. */
+    static class TaskReporter extends StatusReporter {
+        private final Counters counters = new Counters();
+
+        public Counter getCounter(Enum<?> name) {
+            return counters.findCounter(name);
+        }
+
+        public Counter getCounter(String group, String name) {
+            return counters.findCounter(group, name);
+        }
+
+        public void progress() {
+        }
+
+        public float getProgress() {
+            return 0;
+        }
+
+        public void setStatus(String status) {
+        }
+
+        void addTo(Counters total) {
+            synchronized (total) {
+                total.incrAllCounters(counters);
+            }
+        }
+    }
+
+    static class CountingReader<K, V> extends RecordReader<K, V> {
+        private final RecordReader<K, V> reader;
+        private final Counter records;
+
+        CountingReader(RecordReader<K, V> reader, Counter records) {
+            this.reader = reader;
+            this.records = records;
+        }
+
+        public void initialize(InputSplit split, TaskAttemptContext context) throws IOException, InterruptedException {
+            reader.initialize(split, context);
+        }
+
+        public boolean nextKeyValue() throws IOException, InterruptedException {
+            if (reader.nextKeyValue()) {
+                records.increment(1);
+                return true;
+            }
+            return false;
+        }
+
+        public K getCurrentKey() throws IOException, InterruptedException {
+            return reader.getCurrentKey();
+        }
+
+        public V getCurrentValue() throws IOException, InterruptedException {
+            return reader.getCurrentValue();
+        }
+
+        public float getProgress() throws IOException, InterruptedException {
+            return reader.getProgress();
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    static class CountingWriter<K, V> extends RecordWriter<K, V> {
+        private final RecordWriter<K, V> writer;
+        private final Counter records;
+
+        CountingWriter(RecordWriter<K, V> writer, Counter records) {
+            this.writer = writer;
+            this.records = records;
+        }
+
+        public void write(K key, V value) throws IOException, InterruptedException {
+            writer.write(key, value);
+            records.increment(1);
+        }
+
+        public void close(TaskAttemptContext context) throws IOException, InterruptedException {
+            writer.close(context);
+        }
+    }
+
+    /**
+     * Serialized map output of one task. Records are appended to one buffer and sorted by
+     * partition and key with a stable merge sort, so equal keys keep the order they were written in.
+     */
+    static class SortBuffer extends RecordWriter<Object, Object> {
+        private final DataOutputBuffer data = new DataOutputBuffer();
+        private final Class<?> keyClass;
+        private final Class<?> valueClass;
+        private final Serializer<Object> keySerializer;
+        private final Serializer<Object> valueSerializer;
+        private final Partitioner<Object, Object> partitioner;
+        private final int partitions;
+        private final Counter records;
+        private int[] partition = new int[1024];
+        private int[] keyStart = new int[1024];
+        private int[] valueStart = new int[1024];
+        private int[] valueEnd = new int[1024];
+        private int size;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        SortBuffer(Configuration conf, int partitions, Class<? extends Partitioner> partitionerClass,
+                   Class<?> keyClass, Class<?> valueClass, Counter records) throws IOException {
+            SerializationFactory serialization = new SerializationFactory(conf);
+            this.keyClass = keyClass;
+            this.valueClass = valueClass;
+            this.keySerializer = serialization.getSerializer((Class<Object>) keyClass);
+            this.valueSerializer = serialization.getSerializer((Class<Object>) valueClass);
+            this.keySerializer.open(data);
+            this.valueSerializer.open(data);
+            this.partitions = partitions;
+            this.records = records;
+            // like MapTask, a single reducer does not consult the partitioner
+            this.partitioner = partitions > 1
+                    ? (Partitioner<Object, Object>) ReflectionUtils.newInstance(partitionerClass, conf) : null;
+        }
+
+        public void write(Object key, Object value) throws IOException {
+            if (key.getClass() != keyClass) {
+                throw new IOException("Type mismatch in key from map: expected " + keyClass.getName()
+                        + ", received " + key.getClass().getName());
+            }
+            if (value.getClass() != valueClass) {
+                throw new IOException("Type mismatch in value from map: expected " + valueClass.getName()
+                        + ", received " + value.getClass().getName());
+            }
+            int p = partitioner == null ? 0 : partitioner.getPartition(key, value, partitions);
+            if (p < 0 || p >= partitions) {
+                throw new IOException("Illegal partition for " + key + " (" + p + ")");
+            }
+            if (size == keyStart.length) {
+                int capacity = 2 * size;
+                partition = Arrays.copyOf(partition, capacity);
+                keyStart = Arrays.copyOf(keyStart, capacity);
+                valueStart = Arrays.copyOf(valueStart, capacity);
+                valueEnd = Arrays.copyOf(valueEnd, capacity);
+            }
+            partition[size] = p;
+            keyStart[size] = data.getLength();
+            keySerializer.serialize(key);
+            valueStart[size] = data.getLength();
+            valueSerializer.serialize(value);
+            valueEnd[size] = data.getLength();
+            size++;
+            records.increment(1);
+        }
+
+        public void close(TaskAttemptContext context) {
+        }
+
+        /** The records in write order, as one run; used for combiner output. */
+        Run unsorted() {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            return run(order, 0, size);
+        }
+
+        /** One sorted run per partition. */
+        Run[] sort(final RawComparator<?> comparator) {
+            int[] order = new int[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            final byte[] bytes = data.getData();
+            mergeSort(order, new int[size], 0, size, new IndexComparator() {
+                public int compare(int a, int b) {
+                    if (partition[a] != partition[b]) {
+                        return partition[a] < partition[b] ? -1 : 1;
+                    }
+                    return comparator.compare(bytes, keyStart[a], valueStart[a] - keyStart[a],
+                            bytes, keyStart[b], valueStart[b] - keyStart[b]);
+                }
+            });
+            Run[] runs = new Run[partitions];
+            int from = 0;
+            for (int p = 0; p < partitions; p++) {
+                int to = from;
+                while (to < size && partition[order[to]] == p) {
+                    to++;
+                }
+                runs[p] = run(order, from, to);
+                from = to;
+            }
+            return runs;
+        }
+
+        private Run run(int[] order, int from, int to) {
+            Run run = new Run(data.getData(), to - from);
+            for (int i = from; i < to; i++) {
+                run.keyStart[i - from] = keyStart[order[i]];
+                run.valueStart[i - from] = valueStart[order[i]];
+                run.valueEnd[i - from] = valueEnd[order[i]];
+            }
+            return run;
+        }
+    }
+
+    interface IndexComparator {
+        int compare(int a, int b);
+    }
+
+    /** Stable top-down merge sort of {@code order[from, to)}. */
+    static void mergeSort(int[] order, int[] scratch, int from, int to, IndexComparator comparator) {
+        if (to - from < 16) {
+            for (int i = from + 1; i < to; i++) {
+                int v = order[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(order[j], v) > 0) {
+                    order[j + 1] = order[j];
+                    j--;
+                }
+                order[j + 1] = v;
+            }
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(order, scratch, from, mid, comparator);
+        mergeSort(order, scratch, mid, to, comparator);
+        if (comparator.compare(order[mid - 1], order[mid]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && comparator.compare(scratch[i], scratch[j]) <= 0)) {
+                order[k] = scratch[i++];
+            } else {
+                order[k] = scratch[j++];
+            }
+        }
+    }
+
+    /** Sorted, serialized records of one partition of one map task. */
+    static class Run {
+        final byte[] data;
+        final int size;
+        final int[] keyStart;
+        final int[] valueStart;
+        final int[] valueEnd;
+
+        Run(byte[] data, int size) {
+            this.data = data;
+            this.size = size;
+            this.keyStart = new int[size];
+            this.valueStart = new int[size];
+            this.valueEnd = new int[size];
+        }
+
+        RunIterator iterator() {
+            return new RunIterator(this, 0);
+        }
+    }
+
+    static class RunIterator implements RawKeyValueIterator {
+        final Run run;
+        final int rank;
+        int position = -1;
+        private final DataInputBuffer key = new DataInputBuffer();
+        private final DataInputBuffer value = new DataInputBuffer();
+
+        RunIterator(Run run, int rank) {
+            this.run = run;
+            this.rank = rank;
+        }
+
+        public DataInputBuffer getKey() {
+            key.reset(run.data, run.keyStart[position], run.valueStart[position] - run.keyStart[position]);
+            return key;
+        }
+
+        public DataInputBuffer getValue() {
+            value.reset(run.data, run.valueStart[position], run.valueEnd[position] - run.valueStart[position]);
+            return value;
+        }
+
+        public boolean next() {
+            return ++position < run.size;
+        }
+
+        public void close() {
+        }
+
+        public Progress getProgress() {
+            return new Progress();
+        }
+    }
+
+    /** Merges the runs of all maps; equal keys come in map task order. */
+    static class MergeIterator implements RawKeyValueIterator {
+        private final PriorityQueue<RunIterator> queue;
+        private RunIterator current;
+
+        MergeIterator(List<Run> runs, final RawComparator<?> comparator) {
+            queue = new PriorityQueue<RunIterator>(Math.max(1, runs.size()), new Comparator<RunIterator>() {
+                public int compare(RunIterator a, RunIterator b) {
+                    int c = comparator.compare(a.run.data, a.run.keyStart[a.position], a.run.valueStart[a.position] - a.run.keyStart[a.position],
+                            b.run.data, b.run.keyStart[b.position], b.run.valueStart[b.position] - b.run.keyStart[b.position]);
+                    return c != 0 ? c : Integer.compare(a.rank, b.rank);
+                }
+            });
+            for (int i = 0; i < runs.size(); i++) {
+                RunIterator iterator = new RunIterator(runs.get(i), i);
+                if (iterator.next()) {
+                    queue.add(iterator);
+                }
+            }
+        }
+
+        public DataInputBuffer getKey() {
+            return current.getKey();
+        }
+
+        public DataInputBuffer getValue() {
+            return current.getValue();
+        }
+
+        public boolean next() {
+            if (current != null && current.next()) {
+                queue.add(current);
+            }
+            current = queue.poll();
+            return current != null;
+        }
+
+        public void close() {
+        }
+
+        public Progress getProgress() {
+            return new Progress();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: engine <job class> [generic options] <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        long started = System.nanoTime();
+        String name = args[0].indexOf('.') < 0 ? LocalEngine.class.getPackage().getName() + "." + args[0] : args[0];
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, Arrays.copyOfRange(args, 1, args.length)).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: engine <job class> [generic options] <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        Job job = (Job) Class.forName(name).getMethod("createJob", Configuration.class, String[].class)
+                .invoke(null, conf, otherArgs);
+        LocalEngine engine = new LocalEngine(conf.getInt(THREADS, Runtime.getRuntime().availableProcessors()));
+        try {
+            engine.run(job);
+        } catch (IOException e) {
+            System.err.println(engine.getCounters());
+            System.err.printf("%s failed in %d ms%n", job.getJobName(), (System.nanoTime() - started) / 1000000);
+            throw e;
+        } finally {
+            engine.close();
+        }
+        long millis = (System.nanoTime() - started) / 1000000;
+        System.err.println(engine.getCounters());
+        System.err.printf("%s done in %d ms%n", job.getJobName(), millis);
+        JobMetrics.write(conf, FileOutputFormat.getOutputPath(job), job.getJobName(), engine.getCounters(), millis);
+    }
+}
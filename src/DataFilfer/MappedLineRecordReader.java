@@ -0,0 +1,165 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.InputFormat;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.LineRecordReader;
+import org.apache.hadoop.mapreduce.lib.input.TextInputFormat;
+
+/**
+ * Reads the lines of a local, uncompressed file split through a memory mapping, for
+ * {@link LocalEngine}. Keys and values are the ones {@link LineRecordReader} returns for the
+ * default delimiter: a split skips its first partial line unless it starts at 0, reads every
+ * line that starts at or before its end, treats LF, CR and CRLF as line ends and drops a UTF-8
+ * byte order mark at the start of the file.
+ *
+ * @author antonio
+ */
+public class MappedLineRecordReader extends RecordReader<LongWritable, Text> {
+
+    /** Bytes mapped at a time; a line crossing the window end remaps from the line start. */
+    private static final long WINDOW = 64L << 20;
+
+    private static final String MAX_LINE_LENGTH = "mapreduce.input.linerecordreader.line.maxlength";
+    private static final String DELIMITER = "textinputformat.record.delimiter";
+
+    private FileChannel channel;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long regionEnd;
+    private long fileLength;
+    private long start;
+    private long end;
+    private long pos;
+    private final LongWritable key = new LongWritable();
+    private final Text value = new Text();
+    private byte[] line = new byte[256];
+
+    /** True when this reader returns exactly what the job's own reader would for the split. */
+    public static boolean canRead(InputFormat<?, ?> format, InputSplit split, Configuration conf) throws IOException {
+        if (format.getClass() != TextInputFormat.class || !(split instanceof FileSplit)
+                || conf.get(DELIMITER) != null || conf.get(MAX_LINE_LENGTH) != null) {
+            return false;
+        }
+        Path path = ((FileSplit) split).getPath();
+        return path.getFileSystem(conf) instanceof LocalFileSystem
+                && new CompressionCodecFactory(conf).getCodec(path) == null;
+    }
+
+    public void initialize(InputSplit genericSplit, TaskAttemptContext context) throws IOException {
+        FileSplit split = (FileSplit) genericSplit;
+        Path path = split.getPath();
+        FileSystem fs = path.getFileSystem(context.getConfiguration());
+        channel = new RandomAccessFile(((LocalFileSystem) fs).pathToFile(path), "r").getChannel();
+        fileLength = channel.size();
+        start = split.getStart();
+        end = start + split.getLength();
+        map(start, 0);
+        if (start != 0) {
+            start += readLine(start, false);
+        }
+        pos = start;
+    }
+
+    private void map(long from, long atLeast) throws IOException {
+        long length = Math.min(fileLength - from, Math.max(WINDOW, atLeast));
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Too many bytes before newline at " + from);
+        }
+        region = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+        regionStart = from;
+        regionEnd = from + length;
+    }
+
+    /** Byte at {@code p}, remapping from {@code lineStart} when {@code p} is past the window. */
+    private int byteAt(long p, long lineStart) throws IOException {
+        if (p >= regionEnd) {
+            map(lineStart, 2 * (p - lineStart));
+        }
+        return region.get((int) (p - regionStart));
+    }
+
+    /** Returns the bytes consumed by the line starting at {@code from}, terminator included. */
+    private int readLine(long from, boolean fill) throws IOException {
+        if (from >= fileLength) {
+            return 0;
+        }
+        if (from < regionStart || from >= regionEnd) {
+            map(from, 0);
+        }
+        long p = from;
+        int terminator = 0;
+        while (p < fileLength) {
+            int b = byteAt(p, from);
+            if (b == '\n') {
+                terminator = 1;
+                break;
+            }
+            if (b == '\r') {
+                terminator = p + 1 < fileLength && byteAt(p + 1, from) == '\n' ? 2 : 1;
+                break;
+            }
+            p++;
+        }
+        int length = (int) (p - from);
+        if (fill) {
+            if (line.length < length) {
+                line = new byte[Math.max(length, 2 * line.length)];
+            }
+            region.position((int) (from - regionStart));
+            region.get(line, 0, length);
+            if (from == 0 && length >= 3 && line[0] == (byte) 0xEF && line[1] == (byte) 0xBB && line[2] == (byte) 0xBF) {
+                value.set(line, 3, length - 3);
+            } else {
+                value.set(line, 0, length);
+            }
+        }
+        return length + terminator;
+    }
+
+    public boolean nextKeyValue() throws IOException {
+        if (pos > end) {
+            return false;
+        }
+        int consumed = readLine(pos, true);
+        if (consumed == 0) {
+            return false;
+        }
+        key.set(pos);
+        pos += consumed;
+        return true;
+    }
+
+    public LongWritable getCurrentKey() {
+        return key;
+    }
+
+    public Text getCurrentValue() {
+        return value;
+    }
+
+    public float getProgress() {
+        return start == end ? 0.0f : Math.min(1.0f, (pos - start) / (float) (end - start));
+    }
+
+    public void close() throws IOException {
+        region = null;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package DataFilfer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Finds listings that are the same property posted again with a slightly different price,
+ * address spelling or coordinates, without comparing all pairs.
+ * <p>
+ * Blocking: the address is lower-cased, reduced to letters and digits, cut into
+ * {@code neardup.shingle}-character shingles and MinHashed into {@code neardup.bands} bands of
+ * {@code neardup.rows} hashes. Each listing is sent once per band to the block
+ * (geohash cell, band, band hash), for the cell it lies in and for any neighbouring cell within
+ * {@code neardup.distance} metres, so two listings meet when their addresses agree on a whole
+ * band and they are close enough. Cells ({@code neardup.block.precision}) must be at least
+ * twice that distance across. Listings with no address are not blocked.
+ * <p>
+ * Within a block the listings are sorted by price and each is compared with the next ones
+ * within {@code neardup.price.tolerance}, but no more than {@code neardup.window} of them, so
+ * the work stays linear however dense a block is; a cluster is still found whole when its
+ * members are linked through their neighbours, and WINDOW_LIMITED counts the listings whose
+ * price range was cut short. A pair is compared in one block
+ * only, the first band they share in the cell of either of them, and is a duplicate when the
+ * areas are within {@code neardup.area.tolerance}, the coordinates within
+ * {@code neardup.distance} and the estimated address similarity at least
+ * {@code neardup.similarity}. CANDIDATE_PAIRS counts the comparisons, to tune the blocking by.
+ * <p>
+ * The job writes the duplicate pairs, two lines separated by a tab; {@link #cluster} then joins
+ * them into clusters under {@code clusters}, one {@code <cluster>,<line>} per listing. Identical
+ * lines are one listing here; removing those is {@link DublicateRemover}'s job.
+ * Input is raw train.csv rows unless {@code neardup.input} is {@code cleaned} or {@code binary}.
+ * Coordinates are validated against {@code geo.bounds} like {@link GeoCells} does.
+ *
+ * @author antonio
+ */
+public class NearDuplicates {
+
+    /** {@code raw} (default), {@code cleaned} or {@code binary}. */
+    public static final String INPUT = "neardup.input";
+    public static final String SHINGLE = "neardup.shingle";
+    public static final String BANDS = "neardup.bands";
+    /** MinHashes per band. */
+    public static final String ROWS = "neardup.rows";
+    /** Geohash characters of the blocking cell. */
+    public static final String BLOCK_PRECISION = "neardup.block.precision";
+    /** Metres. */
+    public static final String DISTANCE = "neardup.distance";
+    /** Relative, of the larger of the two. */
+    public static final String AREA_TOLERANCE = "neardup.area.tolerance";
+    /** Relative, of the larger of the two. */
+    public static final String PRICE_TOLERANCE = "neardup.price.tolerance";
+    /** Minimum fraction of equal MinHashes. */
+    public static final String SIMILARITY = "neardup.similarity";
+    /** Listings each listing is compared with at most, the next ones by price. */
+    public static final String WINDOW = "neardup.window";
+
+    public static final String CLUSTERS = "clusters";
+
+    private static final double METRES_PER_DEGREE = 111320;
+    private static final double EARTH_RADIUS = 6371000;
+    private static final byte[] POSTED_BY = {'P', 'O', 'S', 'T', 'E', 'D', '_', 'B', 'Y'};
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    public enum Counters {
+        ROWS, HEADER_ROWS, MALFORMED_ROWS, SWAPPED_COORDINATES, OUT_OF_BOUNDS, NO_ADDRESS,
+        BLOCK_KEYS, CANDIDATE_PAIRS, DUPLICATE_PAIRS, WINDOW_LIMITED
+    }
+
+    /** Signs a record and sends it to its blocks; shared by the mappers. */
+    static class Blocker {
+        private final int shingle;
+        private final int bands;
+        private final int rows;
+        private final int precision;
+        private final double distance;
+        private final double[] bounds;
+        private final long[] seeds;
+        private final double[] point = new double[2];
+        private final long[] hash = new long[2];
+        private final byte[] scratch = new byte[Geohash.MAX_PRECISION];
+        private final Text[] cells = {new Text(), new Text(), new Text(), new Text()};
+        private final Text block = new Text();
+        private final ListingSignature listing = new ListingSignature();
+        private byte[] address = new byte[64];
+        private byte[] key;
+
+        Blocker(Configuration conf) {
+            shingle = conf.getInt(SHINGLE, 3);
+            bands = conf.getInt(BANDS, 10);
+            rows = conf.getInt(ROWS, 3);
+            precision = conf.getInt(BLOCK_PRECISION, 5);
+            distance = conf.getDouble(DISTANCE, 100);
+            bounds = GeoCells.bounds(conf);
+            seeds = new long[bands * rows];
+            for (int i = 0; i < seeds.length; i++) {
+                seeds[i] = Murmur3.hash64(i + 1);
+            }
+            key = new byte[precision + 1 + 2 + 16];
+        }
+
+        void block(HouseRecordWritable record, Text line, TaskInputOutputContext<?, ?, Text, ListingSignature> context,
+                   TaskMetrics metrics) throws IOException, InterruptedException {
+            context.getCounter(Counters.ROWS).increment(1);
+            int located = GeoCells.locate(record, bounds, point);
+            if (located == GeoCells.OUT_OF_BOUNDS) {
+                context.getCounter(Counters.OUT_OF_BOUNDS).increment(1);
+                return;
+            }
+            if (located == GeoCells.SWAPPED) {
+                context.getCounter(Counters.SWAPPED_COORDINATES).increment(1);
+            }
+            if (!sign(record.getAddress())) {
+                context.getCounter(Counters.NO_ADDRESS).increment(1);
+                return;
+            }
+            listing.set(line, point[0], point[1], record.getSquareMetres(), record.getPrice());
+            Geohash.encode(point[0], point[1], precision, scratch, listing.getHome());
+
+            // the corners of the square around the point reach every cell within the distance
+            double dLat = distance / METRES_PER_DEGREE;
+            double dLon = distance / (METRES_PER_DEGREE * Math.cos(Math.toRadians(point[0])));
+            int count = 0;
+            for (int corner = 0; corner < 4; corner++) {
+                Text cell = cells[count];
+                Geohash.encode(point[0] + ((corner & 1) == 0 ? -dLat : dLat), point[1] + ((corner & 2) == 0 ? -dLon : dLon),
+                        precision, scratch, cell);
+                boolean seen = false;
+                for (int i = 0; i < count; i++) {
+                    seen |= cells[i].equals(cell);
+                }
+                if (!seen) {
+                    count++;
+                }
+            }
+            int[] minHashes = listing.minHashes(bands * rows);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+            for (int c = 0; c < count; c++) {
+                System.arraycopy(cells[c].getBytes(), 0, key, 0, precision);
+                key[precision] = '/';
+                for (int band = 0; band < bands; band++) {
+                    long bandHash = band;
+                    for (int r = band * rows; r < (band + 1) * rows; r++) {
+                        bandHash = Murmur3.hash64(bandHash ^ minHashes[r]);
+                    }
+                    key[precision + 1] = HEX[band >>> 4 & 15];
+                    key[precision + 2] = HEX[band & 15];
+                    for (int i = 0; i < 16; i++) {
+                        key[precision + 3 + i] = HEX[(int) (bandHash >>> (60 - 4 * i)) & 15];
+                    }
+                    block.set(key, 0, key.length);
+                    context.write(block, listing);
+                    context.getCounter(Counters.BLOCK_KEYS).increment(1);
+                }
+            }
+            metrics.phase(TaskMetrics.Phase.WRITE);
+        }
+
+        /** MinHashes the normalised address into the listing; false if it has no letters or digits. */
+        private boolean sign(Text text) {
+            int length = normalise(text);
+            if (length == 0) {
+                return false;
+            }
+            int[] minHashes = listing.minHashes(seeds.length);
+            Arrays.fill(minHashes, Integer.MAX_VALUE);
+            int last = Math.max(0, length - shingle);
+            for (int start = 0; start <= last; start++) {
+                Murmur3.hash128(address, start, Math.min(shingle, length - start), 0, hash);
+                for (int i = 0; i < seeds.length; i++) {
+                    int h = (int) (Murmur3.hash64(hash[1] ^ seeds[i]) >>> 32);
+                    if (h < minHashes[i]) {
+                        minHashes[i] = h;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Lower-case letters and digits, with every other run of characters as one space. */
+        private int normalise(Text text) {
+            byte[] bytes = text.getBytes();
+            if (address.length < text.getLength()) {
+                address = new byte[2 * text.getLength()];
+            }
+            int length = 0;
+            boolean space = false;
+            for (int i = 0; i < text.getLength(); i++) {
+                int b = bytes[i];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if ((b >= 'a' && b <= 'z') || (b >= '0' && b <= '9') || b < 0) {
+                    if (space && length > 0) {
+                        address[length++] = ' ';
+                    }
+                    space = false;
+                    address[length++] = (byte) b;
+                } else {
+                    space = true;
+                }
+            }
+            return length;
+        }
+    }
+
+    public static class CsvMapper extends Mapper<LongWritable, Text, Text, ListingSignature> {
+        private final CsvTokenizer tokens = new CsvTokenizer();
+        private final HouseRecordWritable record = new HouseRecordWritable();
+        private boolean cleaned;
+        private Blocker blocker;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            cleaned = "cleaned".equals(context.getConfiguration().get(INPUT));
+            blocker = new Blocker(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(LongWritable key, Text value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            tokens.reset(value);
+            if (key.get() == 0 && tokens.fieldEquals(0, POSTED_BY)) {
+                context.getCounter(Counters.HEADER_ROWS).increment(1);
+                return;
+            }
+            try {
+                if (cleaned) {
+                    record.setCleaned(tokens);
+                } else {
+                    record.setRaw(tokens);
+                }
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                context.getCounter(Counters.MALFORMED_ROWS).increment(1);
+                metrics.malformed();
+                return;
+            }
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            blocker.block(record, value, context, metrics);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static class RecordMapper extends Mapper<NullWritable, HouseRecordWritable, Text, ListingSignature> {
+        private final Text line = new Text();
+        private Blocker blocker;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            blocker = new Blocker(context.getConfiguration());
+            metrics = new TaskMetrics(context);
+        }
+
+        public void map(NullWritable key, HouseRecordWritable value, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            value.toCsv(line);
+            metrics.phase(TaskMetrics.Phase.PARSE);
+            blocker.block(value, line, context, metrics);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+    }
+
+    public static class BlockReducer extends Reducer<Text, ListingSignature, Text, Text> {
+        private static final Comparator<ListingSignature> BY_PRICE = new Comparator<ListingSignature>() {
+            public int compare(ListingSignature a, ListingSignature b) {
+                return Double.compare(a.getPrice(), b.getPrice());
+            }
+        };
+
+        private final List<ListingSignature> pool = new ArrayList<ListingSignature>();
+        private final List<ListingSignature> members = new ArrayList<ListingSignature>();
+        private final Text cell = new Text();
+        private int precision;
+        private int rows;
+        private double distance;
+        private double areaTolerance;
+        private double priceTolerance;
+        private double similarity;
+        private int window;
+        private TaskMetrics metrics;
+
+        protected void setup(Context context) {
+            metrics = new TaskMetrics(context);
+            Configuration conf = context.getConfiguration();
+            precision = conf.getInt(BLOCK_PRECISION, 5);
+            rows = conf.getInt(ROWS, 3);
+            distance = conf.getDouble(DISTANCE, 100);
+            areaTolerance = conf.getDouble(AREA_TOLERANCE, 0.05);
+            priceTolerance = conf.getDouble(PRICE_TOLERANCE, 0.05);
+            similarity = conf.getDouble(SIMILARITY, 0.5);
+            window = conf.getInt(WINDOW, 20);
+        }
+
+        public void reduce(Text key, Iterable<ListingSignature> values, Context context) throws IOException, InterruptedException {
+            metrics.next();
+            members.clear();
+            for (ListingSignature value : values) {
+                if (pool.size() == members.size()) {
+                    pool.add(new ListingSignature());
+                }
+                ListingSignature copy = pool.get(members.size());
+                copy.copy(value);
+                members.add(copy);
+            }
+            if (members.size() < 2) {
+                return;
+            }
+            cell.set(key.getBytes(), 0, precision);
+            byte[] bytes = key.getBytes();
+            int band = Character.digit(bytes[precision + 1], 16) << 4 | Character.digit(bytes[precision + 2], 16);
+            Collections.sort(members, BY_PRICE);
+            long candidates = 0;
+            for (int i = 0; i < members.size(); i++) {
+                ListingSignature a = members.get(i);
+                int last = Math.min(members.size() - 1, i + window);
+                for (int j = i + 1; j <= last; j++) {
+                    ListingSignature b = members.get(j);
+                    if (b.getPrice() * (1 - priceTolerance) > a.getPrice()) {
+                        break;
+                    }
+                    if (j == last && last < members.size() - 1
+                            && members.get(j + 1).getPrice() * (1 - priceTolerance) <= a.getPrice()) {
+                        context.getCounter(Counters.WINDOW_LIMITED).increment(1);
+                    }
+                    if (!owns(a, b, band)) {
+                        continue;
+                    }
+                    candidates++;
+                    if (isDuplicate(a, b) && !a.getLine().equals(b.getLine())) {
+                        boolean ordered = a.getLine().compareTo(b.getLine()) < 0;
+                        context.write(ordered ? a.getLine() : b.getLine(), ordered ? b.getLine() : a.getLine());
+                        context.getCounter(Counters.DUPLICATE_PAIRS).increment(1);
+                        metrics.output();
+                    }
+                }
+            }
+            context.getCounter(Counters.CANDIDATE_PAIRS).increment(candidates);
+            metrics.phase(TaskMetrics.Phase.CONVERT);
+        }
+
+        protected void cleanup(Context context) {
+            metrics.close();
+        }
+
+        /** True if this block is the one the pair is compared in: their first shared band, in the smaller home cell. */
+        private boolean owns(ListingSignature a, ListingSignature b, int band) {
+            Text home = a.getHome().compareTo(b.getHome()) <= 0 ? a.getHome() : b.getHome();
+            if (!home.equals(cell)) {
+                return false;
+            }
+            for (int earlier = 0; earlier < band; earlier++) {
+                if (a.sameBand(b, earlier * rows, (earlier + 1) * rows)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean isDuplicate(ListingSignature a, ListingSignature b) {
+            return within(a.getArea(), b.getArea(), areaTolerance)
+                    && metres(a, b) <= distance
+                    && a.similarity(b) >= similarity;
+        }
+
+        private static boolean within(double a, double b, double tolerance) {
+            return Math.abs(a - b) <= tolerance * Math.max(Math.abs(a), Math.abs(b));
+        }
+
+        /** Haversine distance. */
+        static double metres(ListingSignature a, ListingSignature b) {
+            double dLat = Math.toRadians(b.getLatitude() - a.getLatitude());
+            double dLon = Math.toRadians(b.getLongitude() - a.getLongitude());
+            double h = Math.sin(dLat / 2) * Math.sin(dLat / 2) + Math.cos(Math.toRadians(a.getLatitude()))
+                    * Math.cos(Math.toRadians(b.getLatitude())) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+            return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(h)));
+        }
+    }
+
+    /**
+     * Joins the duplicate pairs of a finished job into clusters (union-find) and writes them to
+     * {@code clusters/part-00000} under the output, largest first. Only listings that are in a
+     * pair are held in memory. Part files written with {@code compression.codec} are read through
+     * their codec. Returns the number of clusters.
+     */
+    public static int cluster(Configuration conf, Path output) throws IOException {
+        FileSystem fs = output.getFileSystem(conf);
+        Map<String, Integer> ids = new HashMap<String, Integer>();
+        List<String> lines = new ArrayList<String>();
+        int[] parent = new int[16];
+        CompressionCodecFactory codecs = new CompressionCodecFactory(conf);
+        for (FileStatus part : fs.listStatus(output)) {
+            if (!part.isFile() || !part.getPath().getName().startsWith("part-")) {
+                continue;
+            }
+            InputStream stream = fs.open(part.getPath());
+            CompressionCodec codec = codecs.getCodec(part.getPath());
+            if (codec != null) {
+                stream = codec.createInputStream(stream);
+            }
+            BufferedReader in = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8));
+            try {
+                String pair;
+                while ((pair = in.readLine()) != null) {
+                    int tab = pair.indexOf('\t');
+                    if (tab < 0) {
+                        throw new IOException(part.getPath() + " holds a line that is not a pair: " + pair);
+                    }
+                    int[] ends = new int[2];
+                    for (int e = 0; e < 2; e++) {
+                        String line = e == 0 ? pair.substring(0, tab) : pair.substring(tab + 1);
+                        Integer id = ids.get(line);
+                        if (id == null) {
+                            id = lines.size();
+                            ids.put(line, id);
+                            lines.add(line);
+                            if (id == parent.length) {
+                                parent = Arrays.copyOf(parent, 2 * id);
+                            }
+                            parent[id] = id;
+                        }
+                        ends[e] = id;
+                    }
+                    int a = find(parent, ends[0]);
+                    int b = find(parent, ends[1]);
+                    parent[Math.max(a, b)] = Math.min(a, b);
+                }
+            } finally {
+                in.close();
+            }
+        }
+
+        final int[] size = new int[lines.size()];
+        Integer[] order = new Integer[lines.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            size[find(parent, i)]++;
+        }
+        final int[] roots = parent;
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                int ra = find(roots, a);
+                int rb = find(roots, b);
+                return size[ra] != size[rb] ? size[rb] - size[ra] : ra != rb ? ra - rb : a - b;
+            }
+        });
+        Writer out = new OutputStreamWriter(fs.create(new Path(new Path(output, CLUSTERS), "part-00000")), StandardCharsets.UTF_8);
+        int clusters = 0;
+        try {
+            int previous = -1;
+            for (int i : order) {
+                int root = find(parent, i);
+                if (root != previous) {
+                    clusters++;
+                    previous = root;
+                }
+                out.write(clusters + "," + lines.get(i) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+        return clusters;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: neardup <in> [<in>...] <out>");
+            System.exit(2);
+        }
+        Job job = createJob(conf, otherArgs);
+        if (!JobMetrics.waitForCompletion(job)) {
+            System.exit(1);
+        }
+        Path output = FileOutputFormat.getOutputPath(job);
+        System.out.println(cluster(job.getConfiguration(), output) + " clusters in " + new Path(output, CLUSTERS));
+    }
+
+    /** Configures the job; {@code paths} are the input paths followed by the output path. */
+    public static Job createJob(Configuration conf, String[] paths) throws IOException {
+        checkBlocking(conf);
+        Job job = Job.getInstance(conf, "Near-duplicate listings");
+        job.setJarByClass(NearDuplicates.class);
+        if ("binary".equals(conf.get(INPUT))) {
+            job.setMapperClass(RecordMapper.class);
+            job.setInputFormatClass(HouseRecordInputFormat.class);
+        } else {
+            job.setMapperClass(CsvMapper.class);
+        }
+        job.setReducerClass(BlockReducer.class);
+        job.setMapOutputKeyClass(Text.class);
+        job.setMapOutputValueClass(ListingSignature.class);
+        job.setOutputKeyClass(Text.class);
+        job.setOutputValueClass(Text.class);
+        CityPartitioning.addInputPaths(job, paths);
+        FileOutputFormat.setOutputPath(job, new Path(paths[paths.length - 1]));
+        Compression.configure(job);
+        return job;
+    }
+
+    /** Throws IllegalArgumentException unless the blocking cells are at least twice the distance across. */
+    static void checkBlocking(Configuration conf) {
+        int precision = conf.getInt(BLOCK_PRECISION, 5);
+        if (precision < 1 || precision > Geohash.MAX_PRECISION) {
+            throw new IllegalArgumentException(BLOCK_PRECISION + " must be 1 to " + Geohash.MAX_PRECISION);
+        }
+        if (conf.getInt(BANDS, 10) < 1 || conf.getInt(BANDS, 10) > 256 || conf.getInt(ROWS, 3) < 1 || conf.getInt(SHINGLE, 3) < 1) {
+            throw new IllegalArgumentException(BANDS + " must be 1 to 256, " + ROWS + " and " + SHINGLE + " at least 1");
+        }
+        if (conf.getInt(WINDOW, 20) < 1) {
+            throw new IllegalArgumentException(WINDOW + " must be at least 1");
+        }
+        double[] bounds = GeoCells.bounds(conf);
+        int bits = 5 * precision;
+        double height = 180 / Math.pow(2, bits / 2) * METRES_PER_DEGREE;
+        double width = 360 / Math.pow(2, (bits + 1) / 2) * METRES_PER_DEGREE
+                * Math.cos(Math.toRadians(Math.max(Math.abs(bounds[0]), Math.abs(bounds[1]))));
+        double distance = conf.getDouble(DISTANCE, 100);
+        if (Math.min(height, width) < 2 * distance) {
+            throw new IllegalArgumentException(BLOCK_PRECISION + " " + precision + " gives cells of " + (int) Math.min(height, width)
+                    + " m, less than twice " + DISTANCE + " " + distance + " m");
+        }
+    }
+}
@@ -0,0 +1,301 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * Running sums for an ordinary least squares fit with intercept: X'X, X'y, y'y and sum(y),
+ * where X has a leading column of ones. Memory is O(features^2) whatever the number of rows,
+ * and two instances built over different rows can be {@link #merge merged}, so mappers fold
+ * their split into one of these and a combiner/reducer adds the partials up.
+ *
+ * @author antonio
+ */
+public class NormalEquations implements Writable {
+
+    private int features;
+    private long n;
+    /** Upper triangle of X'X, row-major, (features + 1)^2 slots. */
+    private double[] xtx;
+    private double[] xty;
+    private double yty;
+    private double sumY;
+
+    public NormalEquations() {
+        this(0);
+    }
+
+    public NormalEquations(int features) {
+        reset(features);
+    }
+
+    public void reset(int features) {
+        this.features = features;
+        int p = features + 1;
+        n = 0;
+        xtx = new double[p * p];
+        xty = new double[p];
+        yty = 0;
+        sumY = 0;
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    /** Adds one observation; {@code x} holds the features without the intercept. */
+    public void add(double[] x, double y) {
+        int p = features + 1;
+        double[] a = xtx;
+        a[0] += 1;
+        for (int j = 1; j < p; j++) {
+            a[j] += x[j - 1];
+        }
+        for (int i = 1; i < p; i++) {
+            double xi = x[i - 1];
+            int row = i * p;
+            for (int j = i; j < p; j++) {
+                a[row + j] += xi * x[j - 1];
+            }
+        }
+        xty[0] += y;
+        for (int i = 1; i < p; i++) {
+            xty[i] += x[i - 1] * y;
+        }
+        yty += y * y;
+        sumY += y;
+        n++;
+    }
+
+    /**
+     * Adds {@code count} observations given column by column, {@code columns[f][i]} being
+     * feature {@code f} of row {@code i}. Each entry of X'X is one dot product of two contiguous
+     * columns, so a block that fits in cache is read from it (p + 1) / 2 times instead of once
+     * per entry per row, and the sums of the block are added up before they go into the totals.
+     */
+    public void add(double[][] columns, double[] y, int count) {
+        int p = features + 1;
+        double[] a = xtx;
+        a[0] += count;
+        for (int i = 1; i < p; i++) {
+            double[] xi = columns[i - 1];
+            double sum = 0;
+            for (int r = 0; r < count; r++) {
+                sum += xi[r];
+            }
+            a[i] += sum;
+            int row = i * p;
+            for (int j = i; j < p; j++) {
+                double[] xj = columns[j - 1];
+                double dot = 0;
+                for (int r = 0; r < count; r++) {
+                    dot += xi[r] * xj[r];
+                }
+                a[row + j] += dot;
+            }
+            double dot = 0;
+            for (int r = 0; r < count; r++) {
+                dot += xi[r] * y[r];
+            }
+            xty[i] += dot;
+        }
+        double sum = 0;
+        double squares = 0;
+        for (int r = 0; r < count; r++) {
+            sum += y[r];
+            squares += y[r] * y[r];
+        }
+        xty[0] += sum;
+        sumY += sum;
+        yty += squares;
+        n += count;
+    }
+
+    public void merge(NormalEquations other) {
+        if (n == 0 && features != other.features) {
+            reset(other.features);
+        }
+        if (other.features != features) {
+            throw new IllegalArgumentException("Cannot merge " + other.features + " features into " + features);
+        }
+        for (int i = 0; i < xtx.length; i++) {
+            xtx[i] += other.xtx[i];
+        }
+        for (int i = 0; i < xty.length; i++) {
+            xty[i] += other.xty[i];
+        }
+        yty += other.yty;
+        sumY += other.sumY;
+        n += other.n;
+    }
+
+    /** Element (i, j) of X'X, index 0 being the intercept column. */
+    public double gram(int i, int j) {
+        int p = features + 1;
+        return i <= j ? xtx[i * p + j] : xtx[j * p + i];
+    }
+
+    /** Element i of X'y, index 0 being the intercept column. */
+    public double moment(int i) {
+        return xty[i];
+    }
+
+    public double getYty() {
+        return yty;
+    }
+
+    public double getSumY() {
+        return sumY;
+    }
+
+    /**
+     * Solves X'X b = X'y; b[0] is the intercept, as in
+     * {@link org.apache.commons.math3.stat.regression.OLSMultipleLinearRegression}.
+     * The slopes are solved on the centred, unit-scaled Gram matrix (the correlation matrix)
+     * with an SVD pseudo-inverse, which keeps the sums from cancelling and gives the
+     * minimum-norm solution when features are collinear (e.g. UNDER_CONSTRUCTION and
+     * READY_TO_MOVE always add up to one).
+     */
+    public double[] solve() {
+        return solve(0);
+    }
+
+    /**
+     * Ridge regression: as {@link #solve()} with {@code lambda} added to the diagonal of the
+     * correlation matrix, so the penalty is on the standardised slopes and does not depend on
+     * the units of the features; the intercept is not penalised.
+     */
+    public double[] solve(double lambda) {
+        int k = features;
+        double meanY = sumY / n;
+        double[] mean = new double[k];
+        double[] scale = new double[k];
+        for (int i = 0; i < k; i++) {
+            mean[i] = gram(0, i + 1) / n;
+            double variance = gram(i + 1, i + 1) - n * mean[i] * mean[i];
+            scale[i] = variance > 0 ? Math.sqrt(variance) : 0;
+        }
+        double[][] a = new double[k][k];
+        double[] b = new double[k];
+        for (int i = 0; i < k; i++) {
+            if (scale[i] == 0) {
+                continue;
+            }
+            for (int j = 0; j < k; j++) {
+                if (scale[j] != 0) {
+                    a[i][j] = (gram(i + 1, j + 1) - n * mean[i] * mean[j]) / (scale[i] * scale[j]);
+                }
+            }
+            a[i][i] += lambda;
+            b[i] = (xty[i + 1] - n * mean[i] * meanY) / scale[i];
+        }
+        double[] gamma = new SingularValueDecomposition(new Array2DRowRealMatrix(a, false))
+                .getSolver().solve(new ArrayRealVector(b, false)).toArray();
+        double[] beta = new double[k + 1];
+        beta[0] = meanY;
+        for (int i = 0; i < k; i++) {
+            beta[i + 1] = scale[i] == 0 ? 0 : gamma[i] / scale[i];
+            beta[0] -= mean[i] * beta[i + 1];
+        }
+        return beta;
+    }
+
+    /**
+     * Sum of squared residuals of {@code beta} over the rows summed here. Worked out around the
+     * means of these rows, so it is also right for coefficients fitted on other rows.
+     */
+    public double residualSumOfSquares(double[] beta) {
+        int k = features;
+        double meanY = sumY / n;
+        double[] mean = new double[k];
+        double meanResidual = meanY - beta[0];
+        for (int i = 0; i < k; i++) {
+            mean[i] = gram(0, i + 1) / n;
+            meanResidual -= mean[i] * beta[i + 1];
+        }
+        // sum((y - x.b)^2) around the means: Syy - 2 b'Sxy + b'Sxx b
+        double ss = totalSumOfSquares();
+        for (int i = 0; i < k; i++) {
+            double sxy = xty[i + 1] - n * mean[i] * meanY;
+            double row = 0;
+            for (int j = 0; j < k; j++) {
+                row += (gram(i + 1, j + 1) - n * mean[i] * mean[j]) * beta[j + 1];
+            }
+            ss += beta[i + 1] * (row - 2 * sxy);
+        }
+        return Math.max(0, ss) + n * meanResidual * meanResidual;
+    }
+
+    /** The sums restricted to the given features, by index in this instance (0 is the first feature). */
+    public NormalEquations subset(int[] columns) {
+        NormalEquations sub = new NormalEquations(columns.length);
+        int p = columns.length + 1;
+        for (int i = 0; i < p; i++) {
+            int from = i == 0 ? 0 : columns[i - 1] + 1;
+            for (int j = i; j < p; j++) {
+                sub.xtx[i * p + j] = gram(from, j == 0 ? 0 : columns[j - 1] + 1);
+            }
+            sub.xty[i] = xty[from];
+        }
+        sub.n = n;
+        sub.yty = yty;
+        sub.sumY = sumY;
+        return sub;
+    }
+
+    /** Sum of squared deviations of y from its mean. */
+    public double totalSumOfSquares() {
+        return yty - sumY * sumY / n;
+    }
+
+    public double rSquared(double[] beta) {
+        return 1 - residualSumOfSquares(beta) / totalSumOfSquares();
+    }
+
+    /** Adjusted R^2 computed the way {@code calculateAdjustedRSquared()} does. */
+    public double adjustedRSquared(double[] beta) {
+        return 1 - (residualSumOfSquares(beta) * (n - 1)) / (totalSumOfSquares() * (n - (features + 1)));
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(features);
+        out.writeLong(n);
+        int p = features + 1;
+        for (int i = 0; i < p; i++) {
+            for (int j = i; j < p; j++) {
+                out.writeDouble(xtx[i * p + j]);
+            }
+        }
+        for (double v : xty) {
+            out.writeDouble(v);
+        }
+        out.writeDouble(yty);
+        out.writeDouble(sumY);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        reset(in.readInt());
+        n = in.readLong();
+        int p = features + 1;
+        for (int i = 0; i < p; i++) {
+            for (int j = i; j < p; j++) {
+                xtx[i * p + j] = in.readDouble();
+            }
+        }
+        for (int i = 0; i < p; i++) {
+            xty[i] = in.readDouble();
+        }
+        yty = in.readDouble();
+        sumY = in.readDouble();
+    }
+}
@@ -0,0 +1,43 @@
+package DataFilfer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Values of POSTED_BY. The ordinals are the category codes the notebook uses
+ * ({@code astype('category').cat.codes}), so they can be used directly as a feature.
+ *
+ * @author antonio
+ */
+public enum PostedBy {
+    BUILDER("Builder"),
+    DEALER("Dealer"),
+    OWNER("Owner");
+
+    private static final PostedBy[] VALUES = values();
+
+    private final String label;
+    private final byte[] bytes;
+
+    PostedBy(String label) {
+        this.label = label;
+        this.bytes = label.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public String getLabel() {
+        return label;
+    }
+
+    public static PostedBy valueOf(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    /** Parses a field of the CSV; throws NumberFormatException like the numeric fields do. */
+    public static PostedBy parse(CsvTokenizer tokens, int field) {
+        for (PostedBy value : VALUES) {
+            if (tokens.fieldEquals(field, value.bytes)) {
+                return value;
+            }
+        }
+        throw new NumberFormatException("Unknown POSTED_BY: " + tokens.toString(field));
+    }
+}
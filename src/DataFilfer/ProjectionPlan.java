@@ -0,0 +1,149 @@
+package DataFilfer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.Text;
+
+/**
+ * The column projection of {@link FeatureRemover}, read from the job configuration and
+ * compiled once per task: which input columns are written, in which order, and which of them
+ * are converted. Applying it copies the kept fields into a reused {@link Text} as raw bytes and
+ * formats the converted ones without building Strings.
+ * <p>
+ * Output columns ({@code projection.columns}) are input column names
+ * ({@code projection.input}), optionally followed by {@code :m2} (square feet to square
+ * metres) or {@code :gbp} (lakh INR to GBP). The defaults reproduce the cleaned dataset.
+ *
+ * @author antonio
+ */
+public class ProjectionPlan {
+
+    /** Column names of the input, in order; the first one also identifies a header row. */
+    public static final String INPUT = "projection.input";
+    /** Output columns, see the class comment. */
+    public static final String COLUMNS = "projection.columns";
+    /** Header written for the output, one name per output column; by default the column names. */
+    public static final String HEADER = "projection.header";
+    public static final String SQUARE_FEET_PER_M2 = "projection.square.feet.per.m2";
+    public static final String INR_PER_GBP = "projection.inr.per.gbp";
+
+    public static final String RAW_INPUT = "POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,BHK_OR_RK,SQUARE_FT,READY_TO_MOVE,"
+            + "RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS)";
+    public static final String CLEANED_COLUMNS = "POSTED_BY,UNDER_CONSTRUCTION,RERA,BHK_NO.,SQUARE_FT:m2,READY_TO_MOVE,"
+            + "RESALE,ADDRESS,LONGITUDE,LATITUDE,TARGET(PRICE_IN_LACS):gbp";
+
+    private static final byte[] COMMA = {','};
+
+    private final byte[] headerMarker;
+    private final String header;
+    private final int[] sources;
+    /** Per output column: 0 to copy the field, otherwise value / divisor * multiplier. */
+    private final double[] divisors;
+    private final double[] multipliers;
+    private final double[] values;
+    private final StringBuilder number = new StringBuilder(32);
+    private byte[] digits = new byte[32];
+
+    private ProjectionPlan(String[] input, int[] sources, double[] divisors, double[] multipliers, String header) {
+        this.headerMarker = input[0].getBytes(StandardCharsets.UTF_8);
+        this.sources = sources;
+        this.divisors = divisors;
+        this.multipliers = multipliers;
+        this.values = new double[sources.length];
+        this.header = header;
+    }
+
+    /**
+     * Resolves the configured columns; throws IllegalArgumentException on an unknown column or
+     * conversion. The drivers call it once up front so a bad configuration fails the submit.
+     */
+    public static ProjectionPlan compile(Configuration conf) {
+        String[] input = conf.getTrimmedStrings(INPUT, RAW_INPUT.split(","));
+        String[] columns = conf.getTrimmedStrings(COLUMNS, CLEANED_COLUMNS.split(","));
+        String header = conf.get(HEADER);
+        if (header == null) {
+            header = conf.get(COLUMNS) == null ? FeatureTitle.HEADER : conf.get(COLUMNS).replaceAll(":[^,]*", "");
+        }
+        if (header.split(",", -1).length != columns.length) {
+            throw new IllegalArgumentException(HEADER + " has " + header.split(",", -1).length + " names for "
+                    + columns.length + " columns");
+        }
+        double squareFeetPerM2 = conf.getDouble(SQUARE_FEET_PER_M2, FeatureRemover.SQUARE_FEET_PER_M2);
+        double inrPerGbp = conf.getDouble(INR_PER_GBP, FeatureRemover.INR_PER_GBP);
+        int[] sources = new int[columns.length];
+        double[] divisors = new double[columns.length];
+        double[] multipliers = new double[columns.length];
+        for (int c = 0; c < columns.length; c++) {
+            String name = columns[c];
+            int colon = name.lastIndexOf(':');
+            String conversion = colon < 0 ? "" : name.substring(colon + 1);
+            if (colon >= 0) {
+                name = name.substring(0, colon);
+            }
+            sources[c] = Arrays.asList(input).indexOf(name);
+            if (sources[c] < 0) {
+                throw new IllegalArgumentException("Unknown column " + name + " in " + COLUMNS);
+            }
+            if (conversion.equals("m2")) {
+                divisors[c] = squareFeetPerM2;
+                multipliers[c] = 1;
+            } else if (conversion.equals("gbp")) {
+                divisors[c] = inrPerGbp;
+                multipliers[c] = FeatureRemover.INR_PER_LAKH;
+            } else if (!conversion.isEmpty()) {
+                throw new IllegalArgumentException("Unknown conversion " + conversion + " in " + COLUMNS);
+            }
+        }
+        return new ProjectionPlan(input, sources, divisors, multipliers, header);
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    /** True when the row is the input header; only the row at offset 0 of a file can be. */
+    public boolean isHeader(CsvTokenizer row) {
+        return row.size() > 0 && row.fieldEquals(0, headerMarker);
+    }
+
+    /**
+     * Writes the projected row into {@code out}. Throws NumberFormatException or
+     * ArrayIndexOutOfBoundsException on a malformed row, before touching {@code out}.
+     */
+    public void project(CsvTokenizer row, Text out) {
+        for (int c = 0; c < sources.length; c++) {
+            if (divisors[c] != 0) {
+                values[c] = row.parseDouble(sources[c]) / divisors[c] * multipliers[c];
+            } else if (sources[c] >= row.size()) {
+                throw new ArrayIndexOutOfBoundsException(sources[c]);
+            }
+        }
+        out.clear();
+        for (int c = 0; c < sources.length; c++) {
+            if (c > 0) {
+                out.append(COMMA, 0, 1);
+            }
+            if (divisors[c] == 0) {
+                row.appendTo(sources[c], out);
+            } else {
+                appendDouble(values[c], out);
+            }
+        }
+    }
+
+    /** Appends {@link Double#toString(double)} of the value, through a reused buffer. */
+    private void appendDouble(double value, Text out) {
+        number.setLength(0);
+        number.append(value);
+        int length = number.length();
+        if (digits.length < length) {
+            digits = new byte[2 * length];
+        }
+        for (int i = 0; i < length; i++) {
+            digits[i] = (byte) number.charAt(i);
+        }
+        out.append(digits, 0, length);
+    }
+}
@@ -0,0 +1,223 @@
+package DataFilfer;
+
+import java.util.Arrays;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+/**
+ * Ordinary least squares with intercept through the R factor of a QR decomposition of [1 X y],
+ * the numerically safer counterpart of {@link NormalEquations}: X'X squares the condition
+ * number of X, R does not. Rows come in blocks, column by column; each block is stacked under
+ * R and reduced back to triangular with Householder reflections, so memory is O(features^2)
+ * plus one block, and two instances built over different rows can be {@link #merge merged}
+ * (the R of the stacked factors is the R of all the rows).
+ * <p>
+ * The centred problem needs no second pass: below the intercept row, R is the R factor of the
+ * centred columns, and the intercept row divided by its diagonal holds the means. The slopes
+ * are solved like {@link NormalEquations#solve(double)}, on unit-scaled centred columns with
+ * an SVD pseudo-inverse, so both give the same coefficients on well-conditioned data and the
+ * same minimum-norm ones for exactly collinear features.
+ *
+ * @author antonio
+ */
+public class QrFactor {
+
+    /** Rows reduced at a time; larger blocks are cut into these. */
+    static final int BLOCK = 1024;
+
+    /**
+     * Relative size below which a centred column, against the column, or a singular value,
+     * against the largest, is taken for zero: rounding in R is far above the SVD's own
+     * tolerance, which would fit exactly collinear features with huge opposite slopes.
+     */
+    private static final double TOLERANCE = 1e-10;
+
+    private final int features;
+    /** Columns of [1 X y]. */
+    private final int q;
+    private long n;
+    /** Column-major: rows 0..q-1 of column j hold R up to the diagonal, the rest a block of rows. */
+    private final double[][] a;
+
+    public QrFactor(int features) {
+        this.features = features;
+        q = features + 2;
+        a = new double[q][q + Math.max(BLOCK, q)];
+    }
+
+    public int getFeatures() {
+        return features;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    /** Element (i, j) of R; index 0 is the intercept column and {@code features + 1} the target. */
+    public double r(int i, int j) {
+        return i <= j ? a[j][i] : 0;
+    }
+
+    /**
+     * Adds {@code count} observations given column by column, {@code columns[f][i]} being
+     * feature {@code f} of row {@code i}.
+     */
+    public void add(double[][] columns, double[] y, int count) {
+        for (int from = 0; from < count; from += BLOCK) {
+            int rows = Math.min(BLOCK, count - from);
+            Arrays.fill(a[0], q, q + rows, 1.0);
+            for (int f = 0; f < features; f++) {
+                System.arraycopy(columns[f], from, a[f + 1], q, rows);
+            }
+            System.arraycopy(y, from, a[q - 1], q, rows);
+            reduce(rows);
+        }
+        n += count;
+    }
+
+    public void merge(QrFactor other) {
+        if (other.features != features) {
+            throw new IllegalArgumentException("Cannot merge " + other.features + " features into " + features);
+        }
+        for (int j = 0; j < q; j++) {
+            Arrays.fill(a[j], q, 2 * q, 0);
+            System.arraycopy(other.a[j], 0, a[j], q, j + 1);
+        }
+        reduce(q);
+        n += other.n;
+    }
+
+    /**
+     * Reduces R with the {@code rows} rows below it back to triangular. Column {@code c} is
+     * zero between its diagonal and the block, so its reflection only touches row {@code c}
+     * and the block, and leaves the triangle of the other columns as it is.
+     */
+    private void reduce(int rows) {
+        int end = q + rows;
+        for (int c = 0; c < q; c++) {
+            double[] v = a[c];
+            double norm = 0;
+            for (int r = q; r < end; r++) {
+                norm += v[r] * v[r];
+            }
+            if (norm == 0) {
+                continue;
+            }
+            double alpha = v[c];
+            double length = Math.sqrt(alpha * alpha + norm);
+            double diagonal = alpha > 0 ? -length : length;
+            // u = (alpha - diagonal, block of column c); H = I - 2uu'/u'u maps the column to (diagonal, 0)
+            double head = alpha - diagonal;
+            double tau = 2 / (head * head + norm);
+            for (int j = c + 1; j < q; j++) {
+                double[] w = a[j];
+                double dot = head * w[c];
+                for (int r = q; r < end; r++) {
+                    dot += v[r] * w[r];
+                }
+                dot *= tau;
+                w[c] -= dot * head;
+                for (int r = q; r < end; r++) {
+                    w[r] -= dot * v[r];
+                }
+            }
+            v[c] = diagonal;
+        }
+    }
+
+    /** Solves the least squares problem; b[0] is the intercept, as {@link NormalEquations#solve()}. */
+    public double[] solve() {
+        return solve(0);
+    }
+
+    /** Ridge regression with the penalty of {@link NormalEquations#solve(double)}; the intercept is not penalised. */
+    public double[] solve(double lambda) {
+        int k = features;
+        double meanY = a[q - 1][0] / a[0][0];
+        double[] mean = new double[k];
+        double[] scale = new double[k];
+        for (int i = 0; i < k; i++) {
+            double[] column = a[i + 1];
+            mean[i] = column[0] / a[0][0];
+            double centred = 0;
+            for (int r = 1; r <= i + 1; r++) {
+                centred += column[r] * column[r];
+            }
+            double all = centred + column[0] * column[0];
+            scale[i] = centred > all * TOLERANCE * TOLERANCE ? Math.sqrt(centred) : 0;
+        }
+        // min |S g - R_xy|^2 + lambda |g|^2, S being the centred feature block of R with unit columns
+        int m = lambda > 0 ? 2 * k : k;
+        double[][] s = new double[m][k];
+        double[] b = new double[m];
+        for (int i = 0; i < k; i++) {
+            for (int j = i; j < k; j++) {
+                if (scale[j] != 0) {
+                    s[i][j] = a[j + 1][i + 1] / scale[j];
+                }
+            }
+            b[i] = a[q - 1][i + 1];
+            if (lambda > 0 && scale[i] != 0) {
+                s[k + i][i] = Math.sqrt(lambda);
+            }
+        }
+        SingularValueDecomposition svd = new SingularValueDecomposition(new Array2DRowRealMatrix(s, false));
+        double[] singular = svd.getSingularValues();
+        RealMatrix u = svd.getU();
+        RealMatrix v = svd.getV();
+        double[] gamma = new double[k];
+        for (int d = 0; d < singular.length; d++) {
+            if (singular[d] <= singular[0] * TOLERANCE) {
+                continue;
+            }
+            double weight = 0;
+            for (int i = 0; i < m; i++) {
+                weight += u.getEntry(i, d) * b[i];
+            }
+            weight /= singular[d];
+            for (int i = 0; i < k; i++) {
+                gamma[i] += weight * v.getEntry(i, d);
+            }
+        }
+        double[] beta = new double[k + 1];
+        beta[0] = meanY;
+        for (int i = 0; i < k; i++) {
+            beta[i + 1] = scale[i] == 0 ? 0 : gamma[i] / scale[i];
+            beta[0] -= mean[i] * beta[i + 1];
+        }
+        return beta;
+    }
+
+    /** Sum of squared residuals of {@code beta}: |[1 X y] (-beta, 1)|^2, which is |R (-beta, 1)|^2. */
+    public double residualSumOfSquares(double[] beta) {
+        double ss = 0;
+        for (int i = 0; i < q; i++) {
+            double row = a[q - 1][i];
+            for (int j = i; j < q - 1; j++) {
+                row -= a[j][i] * beta[j];
+            }
+            ss += row * row;
+        }
+        return ss;
+    }
+
+    /** Sum of squared deviations of y from its mean: the target column of R below the intercept row. */
+    public double totalSumOfSquares() {
+        double ss = 0;
+        for (int r = 1; r < q; r++) {
+            ss += a[q - 1][r] * a[q - 1][r];
+        }
+        return ss;
+    }
+
+    public double rSquared(double[] beta) {
+        return 1 - residualSumOfSquares(beta) / totalSumOfSquares();
+    }
+
+    /** Adjusted R^2 computed the way {@code calculateAdjustedRSquared()} does. */
+    public double adjustedRSquared(double[] beta) {
+        return 1 - (residualSumOfSquares(beta) * (n - 1)) / (totalSumOfSquares() * (n - (features + 1)));
+    }
+}
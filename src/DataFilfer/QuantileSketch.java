@@ -0,0 +1,178 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Mergeable quantile sketch (KLL). Items sit in levels; an item at level h stands for 2^h
+ * inputs. When a level is over its capacity it is sorted and every other item (from a random
+ * start) moves up a level. Capacities shrink by 2/3 per level below the top, so memory is
+ * O(k) and the rank error is about 1.7/k (1% for the default k = 200). Sketches merge
+ * level by level.
+ *
+ * @author antonio
+ */
+public class QuantileSketch {
+
+    private static final double C = 2.0 / 3.0;
+    private static final int DEFAULT_K = 200;
+
+    private final Random random = new Random(42);
+    private int k;
+    private long n;
+    private double[][] levels = new double[0][];
+    private int[] sizes = new int[0];
+
+    public QuantileSketch() {
+        this(DEFAULT_K);
+    }
+
+    public QuantileSketch(int k) {
+        this.k = k;
+    }
+
+    public long getN() {
+        return n;
+    }
+
+    public void add(double value) {
+        if (levels.length == 0) {
+            grow();
+        }
+        append(0, value);
+        n++;
+        compress();
+    }
+
+    public void merge(QuantileSketch other) {
+        while (levels.length < other.levels.length) {
+            grow();
+        }
+        for (int h = 0; h < other.levels.length; h++) {
+            for (int i = 0; i < other.sizes[h]; i++) {
+                append(h, other.levels[h][i]);
+            }
+        }
+        n += other.n;
+        compress();
+    }
+
+    /** Value at rank {@code q * n}, for q in [0, 1]; NaN when empty. */
+    public double quantile(double q) {
+        int total = 0;
+        for (int size : sizes) {
+            total += size;
+        }
+        if (total == 0) {
+            return Double.NaN;
+        }
+        double[] values = new double[total];
+        long[] weights = new long[total];
+        int i = 0;
+        for (int h = 0; h < levels.length; h++) {
+            for (int j = 0; j < sizes[h]; j++) {
+                values[i] = levels[h][j];
+                weights[i++] = 1L << h;
+            }
+        }
+        Integer[] order = new Integer[total];
+        for (int j = 0; j < total; j++) {
+            order[j] = j;
+        }
+        final double[] v = values;
+        Arrays.sort(order, (a, b) -> Double.compare(v[a], v[b]));
+        long weight = 0;
+        for (long w : weights) {
+            weight += w;
+        }
+        double target = q * weight;
+        long seen = 0;
+        for (int j = 0; j < total; j++) {
+            seen += weights[order[j]];
+            if (seen >= target) {
+                return values[order[j]];
+            }
+        }
+        return values[order[total - 1]];
+    }
+
+    public void clear() {
+        n = 0;
+        levels = new double[0][];
+        sizes = new int[0];
+    }
+
+    private int capacity(int h) {
+        int depth = levels.length - 1 - h;
+        return Math.max(2, (int) Math.ceil(k * Math.pow(C, depth)));
+    }
+
+    private void grow() {
+        int h = levels.length;
+        levels = Arrays.copyOf(levels, h + 1);
+        sizes = Arrays.copyOf(sizes, h + 1);
+        levels[h] = new double[8];
+    }
+
+    private void append(int h, double value) {
+        if (sizes[h] == levels[h].length) {
+            levels[h] = Arrays.copyOf(levels[h], sizes[h] * 2);
+        }
+        levels[h][sizes[h]++] = value;
+    }
+
+    private void compress() {
+        for (int h = 0; h < levels.length; h++) {
+            if (sizes[h] >= capacity(h)) {
+                if (h + 1 == levels.length) {
+                    grow();
+                }
+                compact(h);
+            }
+        }
+    }
+
+    /** Sorts level h and promotes every other item to level h + 1, keeping one back if odd. */
+    private void compact(int h) {
+        double[] items = levels[h];
+        int size = sizes[h];
+        Arrays.sort(items, 0, size);
+        int keep = size & 1;
+        int offset = random.nextBoolean() ? 1 : 0;
+        for (int i = keep + offset; i < size; i += 2) {
+            append(h + 1, items[i]);
+        }
+        sizes[h] = keep;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(k);
+        out.writeLong(n);
+        out.writeInt(levels.length);
+        for (int h = 0; h < levels.length; h++) {
+            out.writeInt(sizes[h]);
+            for (int i = 0; i < sizes[h]; i++) {
+                out.writeDouble(levels[h][i]);
+            }
+        }
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        k = in.readInt();
+        n = in.readLong();
+        int count = in.readInt();
+        levels = new double[count][];
+        sizes = new int[count];
+        for (int h = 0; h < count; h++) {
+            int size = in.readInt();
+            levels[h] = new double[Math.max(8, size)];
+            sizes[h] = size;
+            for (int i = 0; i < size; i++) {
+                levels[h][i] = in.readDouble();
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package DataFilfer;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.WritableComparable;
+import org.apache.hadoop.io.WritableComparator;
+
+/**
+ * 128-bit MurmurHash3 of a record, used as a 16-byte shuffle key in place of the record.
+ * The registered raw comparator orders serialized keys without deserializing them.
+ *
+ * @author antonio
+ */
+public class RecordFingerprint implements WritableComparable<RecordFingerprint> {
+
+    private static final long SEED = 0x5eedL;
+
+    private long high;
+    private long low;
+    private final long[] hash = new long[2];
+
+    public RecordFingerprint() {
+    }
+
+    public RecordFingerprint(long high, long low) {
+        set(high, low);
+    }
+
+    public void set(long high, long low) {
+        this.high = high;
+        this.low = low;
+    }
+
+    /** Fingerprints {@code bytes[offset, offset + length)}. */
+    public RecordFingerprint set(byte[] bytes, int offset, int length) {
+        Murmur3.hash128(bytes, offset, length, SEED, hash);
+        set(hash[0], hash[1]);
+        return this;
+    }
+
+    public long getHigh() {
+        return high;
+    }
+
+    public long getLow() {
+        return low;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(high);
+        out.writeLong(low);
+    }
+
+    public void readFields(DataInput in) throws IOException {
+        high = in.readLong();
+        low = in.readLong();
+    }
+
+    public int compareTo(RecordFingerprint other) {
+        int c = Long.compare(high, other.high);
+        return c != 0 ? c : Long.compare(low, other.low);
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof RecordFingerprint)) {
+            return false;
+        }
+        RecordFingerprint other = (RecordFingerprint) o;
+        return high == other.high && low == other.low;
+    }
+
+    /** Used by HashPartitioner; the hash bits are already uniform. */
+    public int hashCode() {
+        return (int) (high >>> 32) ^ (int) high;
+    }
+
+    public String toString() {
+        return String.format("%016x%016x", high, low);
+    }
+
+    public static class Comparator extends WritableComparator {
+        public Comparator() {
+            super(RecordFingerprint.class);
+        }
+
+        public int compare(byte[] b1, int s1, int l1, byte[] b2, int s2, int l2) {
+            int c = Long.compare(readLong(b1, s1), readLong(b2, s2));
+            return c != 0 ? c : Long.compare(readLong(b1, s1 + 8), readLong(b2, s2 + 8));
+        }
+    }
+
+    static {
+        WritableComparator.define(RecordFingerprint.class, new Comparator());
+    }
+}
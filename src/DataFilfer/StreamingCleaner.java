@@ -0,0 +1,696 @@
+package DataFilfer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.util.GenericOptionsParser;
+
+/**
+ * Cleans listings continuously as they are appended to CSV files in a landing directory
+ * ({@code StreamingCleaner [-D ...] <landing dir> <out>}), with the steps of
+ * {@link CleaningPipeline}: each row is tokenized, dropped if its {@link RecordFingerprint} is
+ * in a {@link FingerprintWindow} of recent rows ({@code stream.dedup.window.rows},
+ * {@code stream.dedup.window.ms}), and projected by the job's {@link ProjectionPlan}. The
+ * cleaned rows are published in micro-batches, {@code <out>/batch-<n>.csv} files with the header,
+ * written under a hidden name and renamed when complete, so the batch jobs can read the directory
+ * at any time.
+ * <p>
+ * Reading, cleaning and writing run on their own threads and hand over batches of reused rows
+ * through bounded queues; with {@code stream.queue.batches} batches in flight the reader stops
+ * until one comes back, so a burst waits in the landing files rather than in memory. A
+ * micro-batch is published when it has {@code stream.batch.rows} rows or its first row has
+ * waited {@code stream.linger.ms}, which bounds the latency from reading a row to publishing it.
+ * Every {@code stream.report.ms} the throughput, that latency's quantiles and the bytes not yet
+ * read are printed; {@link #getMetrics()} has the running totals.
+ * <p>
+ * After each publish the source position is saved in {@code <out>/_checkpoint}, and a restart
+ * resumes from it. Rows between the last checkpoint and a crash are published again, and the
+ * dedup window starts empty.
+ *
+ * @author antonio
+ */
+public class StreamingCleaner {
+
+    /** Rows per batch handed between the threads and per published micro-batch. */
+    public static final String BATCH_ROWS = "stream.batch.rows";
+    /** Longest time a read row waits for its micro-batch to fill, in milliseconds. */
+    public static final String LINGER_MS = "stream.linger.ms";
+    /** Batches in flight between the threads. */
+    public static final String QUEUE_BATCHES = "stream.queue.batches";
+    public static final String WINDOW_ROWS = "stream.dedup.window.rows";
+    public static final String WINDOW_MS = "stream.dedup.window.ms";
+    /** Longest wait of the source for new data before the other timers are checked. */
+    public static final String POLL_MS = "stream.poll.ms";
+    public static final String REPORT_MS = "stream.report.ms";
+    /** Stop after this long without new rows; 0, the default, runs until stopped. */
+    public static final String IDLE_EXIT_MS = "stream.idle.exit.ms";
+
+    public static final String CHECKPOINT = "_checkpoint";
+
+    /** Rows handed between the threads: the raw rows, their cleaned form and when each was read. */
+    public static class Batch {
+        final Text[] rows;
+        final Text[] cleaned;
+        final long[] arrivals;
+        final boolean[] fileStarts;
+        final boolean[] kept;
+        int count;
+        String position;
+
+        public Batch(int capacity) {
+            rows = new Text[capacity];
+            cleaned = new Text[capacity];
+            for (int i = 0; i < capacity; i++) {
+                rows[i] = new Text();
+                cleaned[i] = new Text();
+            }
+            arrivals = new long[capacity];
+            fileStarts = new boolean[capacity];
+            kept = new boolean[capacity];
+        }
+
+        public boolean isFull() {
+            return count == rows.length;
+        }
+
+        /** Adds a row read at {@code arrival} ({@link System#nanoTime()}); {@code fileStart} if it starts a file. */
+        public void add(byte[] bytes, int offset, int length, boolean fileStart, long arrival) {
+            rows[count].set(bytes, offset, length);
+            fileStarts[count] = fileStart;
+            arrivals[count] = arrival;
+            count++;
+        }
+    }
+
+    /** Where rows come from. Used by the reader thread only. */
+    public interface Source extends Closeable {
+        /**
+         * Adds complete rows to {@code batch} until it is full or no more are available, waiting
+         * up to {@code timeoutMillis} for the first one; returns the number added.
+         */
+        int read(Batch batch, long timeoutMillis) throws IOException, InterruptedException;
+
+        /** Where the rows read so far end, for {@link #seek} after a restart. */
+        String position();
+
+        void seek(String position) throws IOException;
+
+        /** Bytes available but not read yet. */
+        long backlog();
+    }
+
+    /** Where cleaned rows go. Used by the writer thread only. */
+    public interface Sink extends Closeable {
+        void write(Text row) throws IOException;
+
+        /** Makes the rows written since the last publish visible and saves {@code position}. */
+        void publish(String position) throws IOException;
+
+        /** The position saved by the last publish, or null. */
+        String resumePosition() throws IOException;
+    }
+
+    /**
+     * Tails every non-hidden file of a local directory, in name order, and wakes up as soon as
+     * the directory changes. A line is read once its newline is there; a file that shrinks is
+     * read again from the start.
+     */
+    public static class DirectorySource implements Source {
+        private final java.nio.file.Path dir;
+        private final WatchService watcher;
+        private final Map<String, Tail> tails = new TreeMap<String, Tail>();
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20);
+        private long backlog;
+
+        private static final class Tail {
+            FileChannel channel;
+            long offset;
+            boolean seen;
+        }
+
+        public DirectorySource(java.nio.file.Path dir) throws IOException {
+            this.dir = dir;
+            this.watcher = dir.getFileSystem().newWatchService();
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+
+        public int read(Batch batch, long timeoutMillis) throws IOException, InterruptedException {
+            int added = scan(batch);
+            if (added == 0 && timeoutMillis > 0) {
+                WatchKey key = watcher.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                    added = scan(batch);
+                }
+            }
+            return added;
+        }
+
+        private int scan(Batch batch) throws IOException {
+            for (Tail tail : tails.values()) {
+                tail.seen = false;
+            }
+            DirectoryStream<java.nio.file.Path> files = Files.newDirectoryStream(dir);
+            try {
+                for (java.nio.file.Path file : files) {
+                    String name = file.getFileName().toString();
+                    if (name.startsWith(".") || name.startsWith("_") || !Files.isRegularFile(file)) {
+                        continue;
+                    }
+                    Tail tail = tails.get(name);
+                    if (tail == null) {
+                        tail = new Tail();
+                        tails.put(name, tail);
+                    }
+                    if (tail.channel == null) {
+                        tail.channel = FileChannel.open(file, StandardOpenOption.READ);
+                    }
+                    tail.seen = true;
+                }
+            } finally {
+                files.close();
+            }
+            int added = 0;
+            backlog = 0;
+            for (Iterator<Tail> it = tails.values().iterator(); it.hasNext(); ) {
+                Tail tail = it.next();
+                if (!tail.seen) {
+                    if (tail.channel != null) {
+                        tail.channel.close();
+                    }
+                    it.remove();
+                    continue;
+                }
+                long size = tail.channel.size();
+                if (size < tail.offset) {
+                    tail.offset = 0;
+                }
+                while (!batch.isFull() && tail.offset < size) {
+                    int lines = readLines(tail, batch);
+                    if (lines < 0) {
+                        break;
+                    }
+                    added += lines;
+                }
+                backlog += size - tail.offset;
+            }
+            return added;
+        }
+
+        /** Reads the complete lines of one buffer; -1 if there is only part of a line. */
+        private int readLines(Tail tail, Batch batch) throws IOException {
+            buffer.clear();
+            int read = tail.channel.read(buffer, tail.offset);
+            if (read <= 0) {
+                return -1;
+            }
+            byte[] bytes = buffer.array();
+            long arrival = System.nanoTime();
+            int start = 0;
+            int lines = 0;
+            for (int i = 0; i < read && !batch.isFull(); i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                int end = i > start && bytes[i - 1] == '\r' ? i - 1 : i;
+                if (end > start) {
+                    batch.add(bytes, start, end - start, tail.offset + start == 0, arrival);
+                    lines++;
+                }
+                start = i + 1;
+            }
+            if (start == 0 && read == buffer.capacity()) {
+                // a line longer than the buffer: hand it on in pieces rather than stall
+                batch.add(bytes, 0, read, tail.offset == 0, arrival);
+                start = read;
+                lines++;
+            }
+            tail.offset += start;
+            return start == 0 ? -1 : lines;
+        }
+
+        public String position() {
+            StringBuilder position = new StringBuilder();
+            for (Map.Entry<String, Tail> tail : tails.entrySet()) {
+                position.append(tail.getKey()).append('\t').append(tail.getValue().offset).append('\n');
+            }
+            return position.toString();
+        }
+
+        public void seek(String position) throws IOException {
+            for (String line : position.split("\n")) {
+                int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    Tail tail = new Tail();
+                    tail.offset = Long.parseLong(line.substring(tab + 1));
+                    tails.put(line.substring(0, tab), tail);
+                }
+            }
+        }
+
+        public long backlog() {
+            return backlog;
+        }
+
+        public void close() throws IOException {
+            for (Tail tail : tails.values()) {
+                if (tail.channel != null) {
+                    tail.channel.close();
+                }
+            }
+            watcher.close();
+        }
+    }
+
+    /** Writes each micro-batch as a {@code batch-<n>.csv} file, header first, in a Hadoop file system. */
+    public static class DirectorySink implements Sink {
+        private static final byte[] NEWLINE = {'\n'};
+
+        private final FileSystem fs;
+        private final Path dir;
+        private final byte[] header;
+        private long sequence;
+        private OutputStream out;
+        private Path pending;
+
+        public DirectorySink(Configuration conf, Path dir, String header) throws IOException {
+            this.fs = dir.getFileSystem(conf);
+            this.dir = dir;
+            this.header = header.getBytes(StandardCharsets.UTF_8);
+            fs.mkdirs(dir);
+            for (FileStatus file : fs.listStatus(dir)) {
+                String name = file.getPath().getName();
+                if (name.matches("batch-\\d+\\.csv")) {
+                    sequence = Math.max(sequence, Long.parseLong(name.substring(6, name.length() - 4)) + 1);
+                }
+            }
+        }
+
+        public void write(Text row) throws IOException {
+            if (out == null) {
+                pending = new Path(dir, String.format("_batch-%09d.csv.tmp", sequence));
+                out = fs.create(pending, true);
+                out.write(header);
+                out.write(NEWLINE);
+            }
+            out.write(row.getBytes(), 0, row.getLength());
+            out.write(NEWLINE);
+        }
+
+        public void publish(String position) throws IOException {
+            if (out != null) {
+                out.close();
+                out = null;
+                if (!fs.rename(pending, new Path(dir, String.format("batch-%09d.csv", sequence++)))) {
+                    throw new IOException("Cannot publish " + pending);
+                }
+            }
+            if (position != null) {
+                Path temporary = new Path(dir, CHECKPOINT + ".tmp");
+                OutputStream checkpoint = fs.create(temporary, true);
+                try {
+                    checkpoint.write(position.getBytes(StandardCharsets.UTF_8));
+                } finally {
+                    checkpoint.close();
+                }
+                Path file = new Path(dir, CHECKPOINT);
+                fs.delete(file, false);
+                if (!fs.rename(temporary, file)) {
+                    throw new IOException("Cannot save " + file);
+                }
+            }
+        }
+
+        public String resumePosition() throws IOException {
+            Path file = new Path(dir, CHECKPOINT);
+            if (!fs.exists(file)) {
+                return null;
+            }
+            InputStream in = fs.open(file);
+            try {
+                byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+                IOUtils.readFully(in, bytes, 0, bytes.length);
+                return new String(bytes, StandardCharsets.UTF_8);
+            } finally {
+                in.close();
+            }
+        }
+
+        public void close() throws IOException {
+            if (out != null) {
+                out.close();
+                fs.delete(pending, false);
+            }
+        }
+    }
+
+    /** Running totals, updated by the threads as they go. */
+    public static class Metrics {
+        final AtomicLong rowsRead = new AtomicLong();
+        final AtomicLong headerRows = new AtomicLong();
+        final AtomicLong duplicates = new AtomicLong();
+        final AtomicLong malformed = new AtomicLong();
+        final AtomicLong rowsPublished = new AtomicLong();
+        final AtomicLong microBatches = new AtomicLong();
+        final AtomicLong evicted = new AtomicLong();
+        volatile long backlogBytes;
+        volatile int batchesInFlight;
+        private final QuantileSketch latency = new QuantileSketch();
+        private double maxLatency;
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getDuplicates() {
+            return duplicates.get();
+        }
+
+        public long getMalformed() {
+            return malformed.get();
+        }
+
+        public long getRowsPublished() {
+            return rowsPublished.get();
+        }
+
+        public long getMicroBatches() {
+            return microBatches.get();
+        }
+
+        /** Bytes in the source not read yet. */
+        public long getBacklogBytes() {
+            return backlogBytes;
+        }
+
+        /** Quantile of the time from reading a row to publishing it, in ms, over all rows so far. */
+        public synchronized double getLatencyMillis(double quantile) {
+            return latency.getN() == 0 ? 0 : latency.quantile(quantile);
+        }
+
+        public synchronized double getMaxLatencyMillis() {
+            return maxLatency;
+        }
+
+        synchronized void addLatency(double millis) {
+            latency.add(millis);
+            maxLatency = Math.max(maxLatency, millis);
+        }
+    }
+
+    private final Source source;
+    private final Sink sink;
+    private final ProjectionPlan plan;
+    private final FingerprintWindow window;
+    private final int batchRows;
+    private final long lingerNanos;
+    private final long pollMillis;
+    private final long reportNanos;
+    private final long idleExitNanos;
+    private final BlockingQueue<Batch> free;
+    private final BlockingQueue<Batch> read;
+    private final BlockingQueue<Batch> cleaned;
+    private final int queueBatches;
+    private final Metrics metrics = new Metrics();
+    private volatile boolean running = true;
+    private volatile Throwable failure;
+
+    public StreamingCleaner(Configuration conf, Source source, Sink sink) {
+        this.source = source;
+        this.sink = sink;
+        plan = ProjectionPlan.compile(conf);
+        window = new FingerprintWindow(conf.getLong(WINDOW_ROWS, 2000000), conf.getLong(WINDOW_MS, 24L * 3600 * 1000));
+        batchRows = conf.getInt(BATCH_ROWS, 10000);
+        lingerNanos = conf.getLong(LINGER_MS, 200) * 1000000L;
+        pollMillis = conf.getLong(POLL_MS, 100);
+        reportNanos = conf.getLong(REPORT_MS, 5000) * 1000000L;
+        idleExitNanos = conf.getLong(IDLE_EXIT_MS, 0) * 1000000L;
+        queueBatches = conf.getInt(QUEUE_BATCHES, 8);
+        if (batchRows < 1 || queueBatches < 1) {
+            throw new IllegalArgumentException(BATCH_ROWS + " and " + QUEUE_BATCHES + " must be positive");
+        }
+        free = new ArrayBlockingQueue<Batch>(queueBatches);
+        read = new ArrayBlockingQueue<Batch>(queueBatches);
+        cleaned = new ArrayBlockingQueue<Batch>(queueBatches);
+        for (int i = 0; i < queueBatches; i++) {
+            free.add(new Batch(batchRows));
+        }
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /** Makes {@link #run} publish what it has and return. */
+    public void stop() {
+        running = false;
+    }
+
+    private void fail(Throwable e) {
+        if (failure == null) {
+            failure = e;
+        }
+        running = false;
+    }
+
+    private void readLoop() {
+        try {
+            Batch batch = null;
+            while (running) {
+                if (batch == null) {
+                    batch = free.poll(pollMillis, TimeUnit.MILLISECONDS);
+                    if (batch == null) {
+                        // every batch is in flight: leave the rows in the source
+                        metrics.backlogBytes = source.backlog();
+                        continue;
+                    }
+                    batch.count = 0;
+                }
+                int rows = source.read(batch, pollMillis);
+                metrics.backlogBytes = source.backlog();
+                if (rows > 0) {
+                    metrics.rowsRead.addAndGet(rows);
+                    batch.position = source.position();
+                    read.put(batch);
+                    batch = null;
+                }
+            }
+            if (batch != null) {
+                free.put(batch);
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    private void cleanLoop(Thread reader) {
+        CsvTokenizer tokens = new CsvTokenizer();
+        RecordFingerprint fingerprint = new RecordFingerprint();
+        try {
+            while (reader.isAlive() || !read.isEmpty()) {
+                Batch batch = read.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    continue;
+                }
+                for (int i = 0; i < batch.count; i++) {
+                    Text row = batch.rows[i];
+                    batch.kept[i] = false;
+                    tokens.reset(row);
+                    if (batch.fileStarts[i] && plan.isHeader(tokens)) {
+                        metrics.headerRows.incrementAndGet();
+                        continue;
+                    }
+                    fingerprint.set(row.getBytes(), 0, row.getLength());
+                    if (!window.add(fingerprint.getHigh(), fingerprint.getLow())) {
+                        metrics.duplicates.incrementAndGet();
+                        continue;
+                    }
+                    try {
+                        plan.project(tokens, batch.cleaned[i]);
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        metrics.malformed.incrementAndGet();
+                        continue;
+                    }
+                    batch.kept[i] = true;
+                }
+                metrics.evicted.set(window.getEvicted());
+                cleaned.put(batch);
+            }
+        } catch (Throwable e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Runs until {@link #stop} or, with {@code stream.idle.exit.ms}, until the source has been
+     * idle that long; the calling thread writes. Rethrows what failed a thread.
+     */
+    public void run() throws IOException, InterruptedException {
+        final Thread reader = new Thread(new Runnable() {
+            public void run() {
+                readLoop();
+            }
+        }, "stream-reader");
+        Thread cleaner = new Thread(new Runnable() {
+            public void run() {
+                cleanLoop(reader);
+            }
+        }, "stream-cleaner");
+        reader.setDaemon(true);
+        cleaner.setDaemon(true);
+        reader.start();
+        cleaner.start();
+
+        long[] arrivals = new long[2 * batchRows];
+        int pending = 0;
+        String position = null;
+        boolean moved = false;
+        long firstArrival = 0;
+        long lastRows = System.nanoTime();
+        long nextReport = lastRows + reportNanos;
+        long reportedRead = 0;
+        long reportedPublished = 0;
+        long rowsReceived = 0;
+        try {
+            while (cleaner.isAlive() || !cleaned.isEmpty()) {
+                long now = System.nanoTime();
+                long wait = pending > 0 ? Math.max(0, (firstArrival + lingerNanos - now) / 1000000L) : pollMillis;
+                Batch batch = cleaned.poll(wait, TimeUnit.MILLISECONDS);
+                if (batch != null) {
+                    for (int i = 0; i < batch.count; i++) {
+                        if (!batch.kept[i]) {
+                            continue;
+                        }
+                        sink.write(batch.cleaned[i]);
+                        if (pending == 0) {
+                            firstArrival = batch.arrivals[i];
+                        }
+                        if (pending == arrivals.length) {
+                            arrivals = Arrays.copyOf(arrivals, 2 * pending);
+                        }
+                        arrivals[pending++] = batch.arrivals[i];
+                    }
+                    rowsReceived += batch.count;
+                    position = batch.position;
+                    moved = true;
+                    lastRows = System.nanoTime();
+                    free.put(batch);
+                }
+                now = System.nanoTime();
+                if (pending >= batchRows || (pending > 0 && now - firstArrival >= lingerNanos)
+                        || (pending == 0 && moved && now - lastRows >= lingerNanos)) {
+                    sink.publish(position);
+                    long published = System.nanoTime();
+                    for (int i = 0; i < pending; i++) {
+                        metrics.addLatency((published - arrivals[i]) / 1e6);
+                    }
+                    if (pending > 0) {
+                        metrics.microBatches.incrementAndGet();
+                        metrics.rowsPublished.addAndGet(pending);
+                    }
+                    pending = 0;
+                    moved = false;
+                }
+                metrics.batchesInFlight = queueBatches - free.size();
+                if (now >= nextReport) {
+                    double seconds = (now - nextReport + reportNanos) / 1e9;
+                    long rowsRead = metrics.getRowsRead();
+                    long rowsPublished = metrics.getRowsPublished();
+                    System.err.printf("stream: %.0f rows/s read, %.0f rows/s published, %d duplicates, %d malformed,"
+                                    + " latency p50 %.1f ms p99 %.1f ms max %.1f ms, backlog %d bytes, %d/%d batches in flight%n",
+                            (rowsRead - reportedRead) / seconds, (rowsPublished - reportedPublished) / seconds,
+                            metrics.getDuplicates(), metrics.getMalformed(), metrics.getLatencyMillis(0.5),
+                            metrics.getLatencyMillis(0.99), metrics.getMaxLatencyMillis(), metrics.getBacklogBytes(),
+                            metrics.batchesInFlight, queueBatches);
+                    reportedRead = rowsRead;
+                    reportedPublished = rowsPublished;
+                    nextReport = now + reportNanos;
+                }
+                if (idleExitNanos > 0 && pending == 0 && now - lastRows >= idleExitNanos
+                        && rowsReceived == metrics.getRowsRead()) {
+                    running = false;
+                }
+            }
+            if (pending > 0 || moved) {
+                sink.publish(position);
+                long published = System.nanoTime();
+                for (int i = 0; i < pending; i++) {
+                    metrics.addLatency((published - arrivals[i]) / 1e6);
+                }
+                if (pending > 0) {
+                    metrics.microBatches.incrementAndGet();
+                    metrics.rowsPublished.addAndGet(pending);
+                }
+            }
+        } finally {
+            running = false;
+            reader.join();
+            cleaner.join();
+            sink.close();
+            source.close();
+        }
+        if (failure != null) {
+            throw new IOException("Streaming failed", failure);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length != 2) {
+            System.err.println("Usage: stream [-D " + LINGER_MS + "=<ms>] [-D " + BATCH_ROWS + "=<rows>] <landing dir> <out>");
+            System.exit(2);
+        }
+        ProjectionPlan plan = ProjectionPlan.compile(conf);
+        DirectorySource source = new DirectorySource(Paths.get(otherArgs[0]));
+        DirectorySink sink = new DirectorySink(conf, new Path(otherArgs[1]), plan.getHeader());
+        String position = sink.resumePosition();
+        if (position != null) {
+            source.seek(position);
+        }
+        final StreamingCleaner cleaner = new StreamingCleaner(conf, source, sink);
+        final Thread main = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                cleaner.stop();
+                try {
+                    main.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        cleaner.run();
+        Metrics metrics = cleaner.getMetrics();
+        System.err.printf("stream: %d rows read, %d published in %d micro-batches, %d duplicates, %d malformed%n",
+                metrics.getRowsRead(), metrics.getRowsPublished(), metrics.getMicroBatches(), metrics.getDuplicates(),
+                metrics.getMalformed());
+    }
+}
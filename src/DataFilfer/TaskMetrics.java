@@ -0,0 +1,191 @@
+package DataFilfer;
+
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.MapContext;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskType;
+
+/**
+ * Instrumentation shared by the mappers and reducers: the row counters every job reports the
+ * same way, and how long each {@link Phase} of a map or reduce call takes. Everything is kept in
+ * plain fields and only added to the task's counters by {@link #close}, so the hot path does no
+ * more than an increment per row.
+ * <p>
+ * Each call starts with {@link #next} and marks the end of each phase with {@link #phase}. Every
+ * {@code metrics.sample.every}-th call (64; 0 turns the timers off) is timed: the time from the
+ * previous mark to each mark goes to that phase's histogram, and the time from the last mark of
+ * a timed call to the next call is {@link Phase#INPUT}, the framework reading the next record or
+ * group. The histograms have fixed buckets, one per decade from 100 ns to 10 ms and one above,
+ * and become counters of the {@link #GROUP} group, e.g. {@code map.PARSE.le.1000},
+ * {@code map.PARSE.le.inf} and {@code map.PARSE.nanos}, so they add up over the tasks like any
+ * counter; {@link JobMetrics} turns them back into histograms. A reducer that also runs as the
+ * combiner times its map-side calls as {@code combine} and counts no rows there.
+ * <p>
+ * A job fails once its tasks make more counters than {@code mapreduce.job.counters.max}
+ * (120), so the timers refuse to start when the counters they can make would not fit under it.
+ *
+ * @author antonio
+ */
+public class TaskMetrics {
+
+    public static final String SAMPLE_EVERY = "metrics.sample.every";
+
+    public static final String GROUP = "DataFilfer.Phases";
+
+    /**
+     * {@code ROWS_IN} counts the calls of mappers, {@code ROWS_OUT} the rows of the job output;
+     * the others count rows that failed to parse, rows with an empty cell and keys seen more than once.
+     */
+    public enum Counters { ROWS_IN, ROWS_OUT, MALFORMED_ROWS, EMPTY_CELL_ROWS, DUPLICATE_GROUPS }
+
+    /** Parts of a map or reduce call, in the order they usually come. */
+    public enum Phase { INPUT, PARSE, CONVERT, WRITE }
+
+    /** Upper bounds of the buckets in nanoseconds; the last bucket holds what is above them. */
+    private static final long[] BOUNDS = {100, 1000, 10000, 100000, 1000000, 10000000};
+
+    static final int BUCKETS = BOUNDS.length + 1;
+
+    private static final Phase[] PHASES = Phase.values();
+
+    /** The most counters a job's tasks make here: the row counters, and buckets and nanos per side and phase. */
+    static final int MAX_COUNTERS = Counters.values().length + 3 * PHASES.length * (BUCKETS + 1);
+
+    private final TaskAttemptContext context;
+    private final String side;
+    private final int sampleEvery;
+    private final long[][] buckets = new long[PHASES.length][BUCKETS];
+    private final long[] nanos = new long[PHASES.length];
+    private long rowsIn;
+    private long rowsOut;
+    private long malformed;
+    private long emptyCellRows;
+    private long duplicateGroups;
+    private int untilSample = 1;
+    private boolean timing;
+    private long mark;
+
+    public TaskMetrics(TaskAttemptContext context) {
+        this.context = context;
+        if (context instanceof MapContext) {
+            side = "map.";
+        } else {
+            side = context.getTaskAttemptID().getTaskType() == TaskType.MAP ? "combine." : "reduce.";
+        }
+        sampleEvery = context.getConfiguration().getInt(SAMPLE_EVERY, 64);
+        if (sampleEvery < 0) {
+            throw new IllegalArgumentException(SAMPLE_EVERY + " must not be negative");
+        }
+        int limit = context.getConfiguration().getInt(MRJobConfig.COUNTERS_MAX_KEY, MRJobConfig.COUNTERS_MAX_DEFAULT);
+        if (sampleEvery > 0 && MAX_COUNTERS > limit) {
+            throw new IllegalArgumentException("The phase timers need up to " + MAX_COUNTERS + " counters, over "
+                    + MRJobConfig.COUNTERS_MAX_KEY + "=" + limit + "; raise it or set " + SAMPLE_EVERY + "=0");
+        }
+    }
+
+    /** The bucket of a duration: the first whose bound is not below it. */
+    static int bucket(long nanos) {
+        int b = 0;
+        while (b < BOUNDS.length && nanos > BOUNDS[b]) {
+            b++;
+        }
+        return b;
+    }
+
+    /** The upper bound of a bucket, in nanoseconds; {@link Long#MAX_VALUE} for the last one. */
+    static long bound(int bucket) {
+        return bucket < BOUNDS.length ? BOUNDS[bucket] : Long.MAX_VALUE;
+    }
+
+    /** The counter suffix of a bucket, {@code le.<bound>} or {@code le.inf}. */
+    static String bucketName(int bucket) {
+        return bucket < BOUNDS.length ? "le." + BOUNDS[bucket] : "le.inf";
+    }
+
+    /** The bucket of a counter suffix, or -1 if it names none. */
+    static int bucket(String name) {
+        for (int b = 0; b < BUCKETS; b++) {
+            if (bucketName(b).equals(name)) {
+                return b;
+            }
+        }
+        return -1;
+    }
+
+    /** Starts a map or reduce call; in a mapper, that is a row in. */
+    public void next() {
+        rowsIn++;
+        if (timing) {
+            long now = System.nanoTime();
+            add(Phase.INPUT, now - mark);
+            timing = false;
+            mark = now;
+        }
+        if (sampleEvery > 0 && --untilSample == 0) {
+            untilSample = sampleEvery;
+            timing = true;
+            mark = System.nanoTime();
+        }
+    }
+
+    /** Ends {@code phase} of the current call. */
+    public void phase(Phase phase) {
+        if (timing) {
+            long now = System.nanoTime();
+            add(phase, now - mark);
+            mark = now;
+        }
+    }
+
+    private void add(Phase phase, long duration) {
+        buckets[phase.ordinal()][bucket(duration)]++;
+        nanos[phase.ordinal()] += duration;
+    }
+
+    /** Counts a row of the job output. */
+    public void output() {
+        rowsOut++;
+    }
+
+    public void output(long rows) {
+        rowsOut += rows;
+    }
+
+    public void malformed() {
+        malformed++;
+    }
+
+    public void emptyCells() {
+        emptyCellRows++;
+    }
+
+    public void duplicateGroup() {
+        duplicateGroups++;
+    }
+
+    /** Adds everything to the task's counters; call once, from {@code cleanup}. */
+    public void close() {
+        if (side.equals("map.")) {
+            context.getCounter(Counters.ROWS_IN).increment(rowsIn);
+        }
+        if (!side.equals("combine.")) {
+            context.getCounter(Counters.ROWS_OUT).increment(rowsOut);
+            context.getCounter(Counters.MALFORMED_ROWS).increment(malformed);
+            context.getCounter(Counters.EMPTY_CELL_ROWS).increment(emptyCellRows);
+            context.getCounter(Counters.DUPLICATE_GROUPS).increment(duplicateGroups);
+        }
+        for (Phase phase : PHASES) {
+            long[] counts = buckets[phase.ordinal()];
+            boolean timed = false;
+            for (int b = 0; b < BUCKETS; b++) {
+                if (counts[b] > 0) {
+                    context.getCounter(GROUP, side + phase + "." + bucketName(b)).increment(counts[b]);
+                    timed = true;
+                }
+            }
+            if (timed) {
+                context.getCounter(GROUP, side + phase + ".nanos").increment(nanos[phase.ordinal()]);
+            }
+        }
+    }
+}
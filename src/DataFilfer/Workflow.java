@@ -0,0 +1,412 @@
+package DataFilfer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocatedFileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.RemoteIterator;
+import org.apache.hadoop.io.IOUtils;
+import org.apache.hadoop.mapreduce.Job;
+import org.apache.hadoop.mapreduce.lib.input.FileInputFormat;
+import org.apache.hadoop.mapreduce.lib.jobcontrol.ControlledJob;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
+import org.apache.hadoop.mapreduce.lib.output.FileOutputFormat;
+import org.apache.hadoop.util.GenericOptionsParser;
+import org.apache.hadoop.util.StringUtils;
+
+/**
+ * Runs the jobs of this package as one DAG
+ * ({@code Workflow [-D workflow.stages=quality,model] <in> [<in>...] <work>}). Each stage is an
+ * existing job, built by its {@code createJob}, reading the raw input or the output of the
+ * stages before it and writing {@code <work>/<stage>}; a stage is submitted as soon as the
+ * stages it reads have succeeded, so stages whose inputs are ready run together, e.g.
+ * {@code duplicates}, {@code empty}, {@code deduped} and {@code records} all start at once on
+ * the raw input.
+ * <p>
+ * A stage is skipped when its output holds the fingerprint of a successful run with the same
+ * inputs and configuration: a SHA-256 over the job name, every configuration entry of the built
+ * job, which include its classes, and the path, length and modification time of every input file. A stage that did run
+ * changes its output files and so re-runs the stages that read them; {@code workflow.force}
+ * runs everything.
+ *
+ * @author antonio
+ */
+public class Workflow {
+
+    /** Stages to run, with the stages they read; all of them by default. */
+    public static final String STAGES = "workflow.stages";
+    /** Run the stages even when they are up to date. */
+    public static final String FORCE = "workflow.force";
+    /** How often stages are looked at, to submit them or notice they finished, in milliseconds. */
+    public static final String POLL_MS = "workflow.poll.ms";
+
+    /** File name of the fingerprint in a stage output. */
+    public static final String FINGERPRINT = "_fingerprint";
+    /** Stage input name of the workflow's own input paths. */
+    public static final String RAW = "raw";
+
+    /** A job of the DAG: its class, the stages it reads and its settings on top of the workflow's. */
+    static final class Stage {
+        final String name;
+        final Class<?> job;
+        final String[] inputs;
+        final String[] settings;
+
+        Stage(String name, Class<?> job, String[] inputs, String... settings) {
+            this.name = name;
+            this.job = job;
+            this.inputs = inputs;
+            this.settings = settings;
+        }
+    }
+
+    /** The stages, each after the stages it reads. */
+    static final Stage[] STAGE_LIST = {
+            new Stage("duplicates", DublicateChecker.class, new String[] {RAW}),
+            new Stage("empty", EmptyFeatues.class, new String[] {RAW}),
+            new Stage("deduped", DublicateRemover.class, new String[] {RAW}),
+            new Stage("records", CleaningPipeline.class, new String[] {RAW}, CleaningPipeline.OUTPUT + "=binary"),
+            new Stage("replicas", DublicateCounter.class, new String[] {"duplicates"}),
+            new Stage("replicated-lines", NumberOfReplicatedLines.class, new String[] {"duplicates"}),
+            new Stage("cleaned", FeatureRemover.class, new String[] {"deduped"}),
+            new Stage("titled", FeatureTitle.class, new String[] {"cleaned"}),
+            new Stage("quality", DataQuality.class, new String[] {"titled"},
+                    DataQuality.COLUMNS + "=" + FeatureTitle.HEADER, DataQuality.NUMERIC + "=1,2,3,4,5,6,8,9,10"),
+            new Stage("model", Linear.class, new String[] {"records"}, Linear.INPUT + "=binary"),
+    };
+
+    /**
+     * A stage of the DAG, with the states and dependencies of a {@link ControlledJob}. The job is
+     * built only when its inputs are ready, then either submitted or, when up to date, marked
+     * successful without running.
+     */
+    static class StageJob extends ControlledJob {
+        private final Stage stage;
+        private final Configuration conf;
+        private final String[] paths;
+        private String fingerprint;
+        private boolean skipped;
+        private boolean recorded;
+        private long started;
+        private long finished;
+
+        StageJob(Stage stage, Configuration conf, String[] paths) throws IOException {
+            super(new Configuration(conf));
+            this.stage = stage;
+            this.conf = conf;
+            this.paths = paths;
+            setJobName(stage.name);
+        }
+
+        protected synchronized void submit() {
+            started = System.nanoTime();
+            try {
+                Job job = createJob(stage.job, conf, paths);
+                job.setJobName(stage.name + ": " + job.getJobName());
+                setJob(job);
+                fingerprint = fingerprint(job);
+                Path output = FileOutputFormat.getOutputPath(job);
+                FileSystem fs = output.getFileSystem(conf);
+                if (!conf.getBoolean(FORCE, false) && fingerprint.equals(readFingerprint(fs, output))) {
+                    skipped = true;
+                    finished = started;
+                    setMessage("up to date");
+                    setJobState(State.SUCCESS);
+                    return;
+                }
+                fs.delete(output, true);
+            } catch (IOException | RuntimeException e) {
+                setMessage(StringUtils.stringifyException(e));
+                setJobState(State.FAILED);
+                return;
+            }
+            super.submit();
+        }
+
+        /**
+         * Moves the stage on: submits it when every stage it reads has succeeded, fails it when
+         * one of them failed, and notices when its job ends. Returns the new state.
+         */
+        synchronized State advance() {
+            State state = getJobState();
+            if (state == State.WAITING) {
+                List<ControlledJob> dependencies = getDependentJobs();
+                for (ControlledJob dependency : dependencies == null ? Collections.<ControlledJob>emptyList() : dependencies) {
+                    State input = dependency.getJobState();
+                    if (input == State.FAILED || input == State.DEPENDENT_FAILED) {
+                        setMessage(((StageJob) dependency).stage.name + " failed");
+                        setJobState(State.DEPENDENT_FAILED);
+                        return getJobState();
+                    }
+                    if (input != State.SUCCESS) {
+                        return state;
+                    }
+                }
+                submit();
+            } else if (state == State.RUNNING) {
+                try {
+                    if (getJob().isComplete()) {
+                        if (getJob().isSuccessful()) {
+                            setJobState(State.SUCCESS);
+                        } else {
+                            setMessage(stage.name + " failed: " + getJob().getStatus().getFailureInfo());
+                            setJobState(State.FAILED);
+                        }
+                    }
+                } catch (IOException e) {
+                    setMessage(StringUtils.stringifyException(e));
+                    setJobState(State.FAILED);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return getJobState();
+        }
+
+        /** Saves the fingerprint once the stage has run; true when this call finished it. */
+        synchronized boolean record() throws IOException {
+            if (recorded || skipped || getJobState() != State.SUCCESS) {
+                return false;
+            }
+            recorded = true;
+            finished = System.nanoTime();
+            Path output = FileOutputFormat.getOutputPath(getJob());
+            writeFingerprint(output.getFileSystem(conf), output, fingerprint);
+            JobMetrics.write(getJob(), (finished - started) / 1000000);
+            return true;
+        }
+    }
+
+    static Job createJob(Class<?> job, Configuration conf, String[] paths) throws IOException {
+        try {
+            return (Job) job.getMethod("createJob", Configuration.class, String[].class).invoke(null, conf, paths);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException("Cannot create " + job.getName(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(job.getName() + " has no createJob(Configuration, String[])", e);
+        }
+    }
+
+    /** The fingerprint of a configured job; see the class comment. */
+    static String fingerprint(Job job) throws IOException {
+        Configuration conf = job.getConfiguration();
+        StringBuilder text = new StringBuilder();
+        text.append(job.getJobName()).append('\n');
+        Map<String, String> entries = new TreeMap<String, String>();
+        for (Map.Entry<String, String> entry : conf) {
+            if (!entry.getKey().startsWith("workflow.")) {
+                entries.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            text.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+        }
+        for (Path input : FileInputFormat.getInputPaths(job)) {
+            FileSystem fs = input.getFileSystem(conf);
+            if (!fs.exists(input)) {
+                text.append(input).append(" missing\n");
+                continue;
+            }
+            RemoteIterator<LocatedFileStatus> files = fs.listFiles(input, true);
+            while (files.hasNext()) {
+                LocatedFileStatus file = files.next();
+                String name = file.getPath().getName();
+                if (!name.startsWith("_") && !name.startsWith(".")) {
+                    text.append(file.getPath()).append(' ').append(file.getLen()).append(' ')
+                            .append(file.getModificationTime()).append('\n');
+                }
+            }
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.toString().getBytes(StandardCharsets.UTF_8));
+            return StringUtils.byteToHexString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** The fingerprint saved in a successful output, or null. */
+    static String readFingerprint(FileSystem fs, Path output) throws IOException {
+        Path file = new Path(output, FINGERPRINT);
+        if (!fs.exists(file) || !fs.exists(new Path(output, FileOutputCommitter.SUCCEEDED_FILE_NAME))) {
+            return null;
+        }
+        InputStream in = fs.open(file);
+        try {
+            byte[] bytes = new byte[(int) fs.getFileStatus(file).getLen()];
+            IOUtils.readFully(in, bytes, 0, bytes.length);
+            return new String(bytes, StandardCharsets.US_ASCII).trim();
+        } finally {
+            in.close();
+        }
+    }
+
+    static void writeFingerprint(FileSystem fs, Path output, String fingerprint) throws IOException {
+        OutputStream out = fs.create(new Path(output, FINGERPRINT), true);
+        try {
+            out.write((fingerprint + "\n").getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            out.close();
+        }
+    }
+
+    /** The requested stages and the stages they read, in {@link #STAGE_LIST} order. */
+    static List<Stage> select(Configuration conf) {
+        Map<String, Stage> byName = new LinkedHashMap<String, Stage>();
+        for (Stage stage : STAGE_LIST) {
+            byName.put(stage.name, stage);
+        }
+        String[] requested = conf.getTrimmedStrings(STAGES);
+        if (requested.length == 0) {
+            return new ArrayList<Stage>(byName.values());
+        }
+        List<String> needed = new ArrayList<String>();
+        List<String> pending = new ArrayList<String>(Arrays.asList(requested));
+        while (!pending.isEmpty()) {
+            String name = pending.remove(pending.size() - 1);
+            Stage stage = byName.get(name);
+            if (stage == null) {
+                throw new IllegalArgumentException("Unknown stage " + name + " in " + STAGES + ", not one of "
+                        + byName.keySet());
+            }
+            if (!needed.contains(name)) {
+                needed.add(name);
+                for (String input : stage.inputs) {
+                    if (!input.equals(RAW)) {
+                        pending.add(input);
+                    }
+                }
+            }
+        }
+        List<Stage> stages = new ArrayList<Stage>();
+        for (Stage stage : STAGE_LIST) {
+            if (needed.contains(stage.name)) {
+                stages.add(stage);
+            }
+        }
+        return stages;
+    }
+
+    /**
+     * Builds the DAG; {@code paths} are the raw input paths followed by the work directory. The
+     * stages are added in {@link #STAGE_LIST} order, so a chain of up-to-date stages is skipped
+     * in a single pass of {@link #run}.
+     */
+    public static List<StageJob> createStages(Configuration conf, String[] paths) throws IOException {
+        String[] raw = Arrays.copyOf(paths, paths.length - 1);
+        Path work = new Path(paths[paths.length - 1]);
+        Map<String, StageJob> jobs = new LinkedHashMap<String, StageJob>();
+        for (Stage stage : select(conf)) {
+            Configuration stageConf = new Configuration(conf);
+            for (String setting : stage.settings) {
+                int equals = setting.indexOf('=');
+                stageConf.set(setting.substring(0, equals), setting.substring(equals + 1));
+            }
+            List<String> stagePaths = new ArrayList<String>();
+            List<StageJob> dependencies = new ArrayList<StageJob>();
+            for (String input : stage.inputs) {
+                if (input.equals(RAW)) {
+                    stagePaths.addAll(Arrays.asList(raw));
+                } else {
+                    stagePaths.add(new Path(work, input).toString());
+                    dependencies.add(jobs.get(input));
+                }
+            }
+            stagePaths.add(new Path(work, stage.name).toString());
+            StageJob job = new StageJob(stage, stageConf, stagePaths.toArray(new String[stagePaths.size()]));
+            for (StageJob dependency : dependencies) {
+                job.addDependingJob(dependency);
+            }
+            jobs.put(stage.name, job);
+        }
+        return new ArrayList<StageJob>(jobs.values());
+    }
+
+    /**
+     * Runs the stages and returns true if all of them succeeded. Every {@code workflow.poll.ms}
+     * (200) each stage is moved on in DAG order, so a stage starts in the same pass as the last
+     * stage it reads finishes. Interrupted, it kills the stages that are running.
+     */
+    public static boolean run(Configuration conf, List<StageJob> stages) throws IOException, InterruptedException {
+        long poll = conf.getLong(POLL_MS, 200);
+        try {
+            boolean pending = true;
+            while (pending) {
+                pending = false;
+                for (StageJob stage : stages) {
+                    ControlledJob.State state = stage.advance();
+                    if (stage.record()) {
+                        System.err.printf("%s done in %.1f s%n", stage.stage.name, (stage.finished - stage.started) / 1e9);
+                    }
+                    if (state == ControlledJob.State.WAITING || state == ControlledJob.State.RUNNING) {
+                        pending = true;
+                    }
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (pending) {
+                    Thread.sleep(poll);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (StageJob stage : stages) {
+                if (stage.getJobState() == ControlledJob.State.RUNNING) {
+                    stage.killJob();
+                }
+            }
+            throw e;
+        }
+        boolean succeeded = true;
+        for (StageJob stage : stages) {
+            stage.record();
+            ControlledJob.State state = stage.getJobState();
+            String result = stage.skipped ? "SKIPPED (up to date)" : state.toString();
+            if (state == ControlledJob.State.SUCCESS && !stage.skipped) {
+                result += String.format(" in %.1f s", (stage.finished - stage.started) / 1e9);
+            }
+            System.err.printf("%-18s %s%n", stage.stage.name, result);
+            if (state != ControlledJob.State.SUCCESS) {
+                succeeded = false;
+                if (stage.getMessage() != null) {
+                    System.err.println(stage.getMessage());
+                }
+            }
+        }
+        return succeeded;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Configuration conf = new Configuration();
+        String[] otherArgs = new GenericOptionsParser(conf, args).getRemainingArgs();
+        if (otherArgs.length < 2) {
+            System.err.println("Usage: workflow [-D " + STAGES + "=<stage>,...] [-D " + FORCE + "=true] <in> [<in>...] <work>");
+            System.exit(2);
+        }
+        long started = System.nanoTime();
+        boolean done = run(conf, createStages(conf, otherArgs));
+        System.err.printf("Workflow %s in %.1f s%n", done ? "done" : "failed", (System.nanoTime() - started) / 1e9);
+        System.exit(done ? 0 : 1);
+    }
+}